@@ -0,0 +1,105 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http;
+
+import com.eclipsesource.json.Json;
+import com.eclipsesource.json.JsonArray;
+import com.eclipsesource.json.JsonObject;
+import com.eclipsesource.json.JsonValue;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the two ways of reading the IDs of a paginated list of posts (see {@code Area.loadQueuedPosts}):
+ * parsing the whole response with minimal-json, or streaming it with {@link JsonListReader}.
+ *
+ * <p>Run with {@code ./gradlew jmh}; use {@code -prof gc} to compare the allocation rates.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class ResultsParsingBenchmark {
+
+    /**
+     * The number of posts in the response.
+     */
+    @Param({"10", "100", "1000"})
+    public int posts;
+
+    private byte[] response;
+
+    @Setup
+    public void setup() {
+        JsonArray results = new JsonArray();
+
+        for (int i = 0; i < posts; i++) {
+            JsonArray comments = new JsonArray();
+            for (int c = 0; c < 5; c++)
+                comments.add(new JsonObject()
+                    .add("id", c)
+                    .add("author", new JsonObject().add("user", c).add("name", "user" + c))
+                    .add("created", "2019-05-05T12:00:00.000000Z")
+                    .add("text", "This is the comment number " + c + " of the post number " + i));
+
+            results.add(new JsonObject()
+                .add("id", String.valueOf(i))
+                .add("author", new JsonObject().add("user", 2).add("name", "user"))
+                .add("text", "This is the text of the post number " + i + ", \"quoted\" and long enough to matter.")
+                .add("anonym", false)
+                .add("subscribed", true)
+                .add("created", "2019-05-05T12:00:00.000000Z")
+                .add("active", true)
+                .add("image", Json.NULL)
+                .add("comments", comments));
+        }
+
+        response = new JsonObject()
+            .add("count", posts)
+            .add("next", Json.NULL)
+            .add("previous", Json.NULL)
+            .add("results", results)
+            .toString()
+            .getBytes(Request.CHARSET);
+    }
+
+    @Benchmark
+    public List<Long> tree() throws IOException {
+        JsonObject json = Json.parse(new InputStreamReader(new ByteArrayInputStream(response), Request.CHARSET))
+            .asObject();
+
+        List<Long> ids = new ArrayList<>();
+        for (JsonValue post : json.get("results").asArray())
+            ids.add(Long.parseLong(post.asObject().get("id").asString()));
+        return ids;
+    }
+
+    @Benchmark
+    public List<Long> streaming() throws IOException {
+        List<Long> ids = new ArrayList<>();
+        try (JsonListReader reader = new JsonListReader(new ByteArrayInputStream(response))) {
+            for (String id : reader.readField("id"))
+                ids.add(Long.parseLong(id));
+        }
+        return ids;
+    }
+}
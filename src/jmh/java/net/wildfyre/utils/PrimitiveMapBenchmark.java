@@ -0,0 +1,132 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.utils;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the maps used to index cached entities by ID: a {@link HashMap} of boxed keys, and the open-addressing
+ * {@link IntObjectMap} and {@link LongObjectMap} (see {@code CacheManager.newIntCache}).
+ *
+ * <p>Run with {@code ./gradlew jmh}. The {@code build} benchmarks fill a map of {@link #entries} entries; with
+ * {@code -prof gc}, their {@code gc.alloc.rate.norm} divided by the number of entries is the memory per entry
+ * (the boxed keys the HashMap needs are included). The {@code get} benchmarks measure a lookup of a present key.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class PrimitiveMapBenchmark {
+
+    /**
+     * The number of entries in the map.
+     */
+    @Param({"100", "10000", "1000000"})
+    public int entries;
+
+    private static final Object VALUE = new Object();
+
+    private int[] ids;
+    private int next;
+
+    private Map<Integer, Object> intHashMap;
+    private IntObjectMap<Object> intObjectMap;
+    private Map<Long, Object> longHashMap;
+    private LongObjectMap<Object> longObjectMap;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        ids = new int[entries];
+        for (int i = 0; i < entries; i++)
+            ids[i] = random.nextInt(Integer.MAX_VALUE); // IDs are not sequential once entries expire
+
+        intHashMap = buildIntHashMap();
+        intObjectMap = buildIntObjectMap();
+        longHashMap = buildLongHashMap();
+        longObjectMap = buildLongObjectMap();
+    }
+
+    private int nextId() {
+        int id = ids[next];
+        next = next + 1 == ids.length ? 0 : next + 1;
+        return id;
+    }
+
+    //region Memory
+
+    @Benchmark
+    public Map<Integer, Object> buildIntHashMap() {
+        Map<Integer, Object> map = new HashMap<>();
+        for (int id : ids)
+            map.put(id, VALUE);
+        return map;
+    }
+
+    @Benchmark
+    public IntObjectMap<Object> buildIntObjectMap() {
+        IntObjectMap<Object> map = new IntObjectMap<>();
+        for (int id : ids)
+            map.put(id, VALUE);
+        return map;
+    }
+
+    @Benchmark
+    public Map<Long, Object> buildLongHashMap() {
+        Map<Long, Object> map = new HashMap<>();
+        for (int id : ids)
+            map.put((long) id, VALUE);
+        return map;
+    }
+
+    @Benchmark
+    public LongObjectMap<Object> buildLongObjectMap() {
+        LongObjectMap<Object> map = new LongObjectMap<>();
+        for (int id : ids)
+            map.put((long) id, VALUE);
+        return map;
+    }
+
+    //endregion
+    //region Lookups
+
+    @Benchmark
+    public Object getIntHashMap() {
+        return intHashMap.get(nextId());
+    }
+
+    @Benchmark
+    public Object getIntObjectMap() {
+        return intObjectMap.get(nextId());
+    }
+
+    @Benchmark
+    public Object getLongHashMap() {
+        return longHashMap.get((long) nextId());
+    }
+
+    @Benchmark
+    public Object getLongObjectMap() {
+        return longObjectMap.get((long) nextId());
+    }
+
+    //endregion
+}
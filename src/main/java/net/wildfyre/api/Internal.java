@@ -22,14 +22,35 @@ import com.eclipsesource.json.WriterConfig;
 import net.wildfyre.areas.Areas;
 import net.wildfyre.descriptors.Descriptor;
 import net.wildfyre.descriptors.NoSuchEntityException;
+import net.wildfyre.http.Deadline;
+import net.wildfyre.http.DeadlineAction;
 import net.wildfyre.http.IssueInTransferException;
 import net.wildfyre.http.Request;
+import net.wildfyre.http.Span;
+import net.wildfyre.http.TracedAction;
+import net.wildfyre.http.Tracing;
 import net.wildfyre.users.Users;
 import net.wildfyre.utils.InvalidCredentialsException;
 
-import java.util.concurrent.Executors;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.function.Consumer;
+import java.util.function.Function;
 
 import static net.wildfyre.http.Method.POST;
 
@@ -56,7 +77,8 @@ public class Internal {
 
     /**
      * Cleans the cache -- that is, removes every object that is not valid anymore from it (see
-     * {@link Descriptor#isValid()}).
+     * {@link Descriptor#isValid()}). Expired objects are also removed in the background, about once a second, so
+     * calling this method is only needed to free them right away.
      * @see #clear() Remove all data, not only the expired data
      */
     public static void clean(){
@@ -89,13 +111,28 @@ public class Internal {
     //endregion
     //region Concurrent execution
 
+    /**
+     * The maximum number of threads of the {@link #executor}.
+     */
+    public static final int EXECUTOR_THREADS = Math.max(4, Runtime.getRuntime().availableProcessors());
+
     /**
      * Contains the ThreadPool that will execute any refresh request (when applicable).
      * <p>
-     * The executor is configured with {@link Executors#newCachedThreadPool()}, which means it'll spawn new threads
-     * as needed.
+     * The executor has at most {@link #EXECUTOR_THREADS} threads; when they are all busy, tasks wait in a queue instead
+     * of spawning new threads. Threads stop after a minute without work.
+     * <p>
+     * The number of requests sent at the same time is further limited by {@link Request#getConcurrencyLimiter()}.
      */
-    static ThreadPoolExecutor executor = (ThreadPoolExecutor) Executors.newCachedThreadPool();
+    static ThreadPoolExecutor executor = new ThreadPoolExecutor(
+        EXECUTOR_THREADS, EXECUTOR_THREADS,
+        1, TimeUnit.MINUTES,
+        new LinkedBlockingQueue<>()
+    );
+
+    static {
+        executor.allowCoreThreadTimeOut(true);
+    }
 
     //region NoSuchEntityException
 
@@ -172,18 +209,121 @@ public class Internal {
 
     /**
      * Submits a new task to be executed concurrently, that updates a Descriptor.
+     * <p>The update is traced as a child of the current span of the calling thread (see {@link Tracing}). If an update
+     * of this descriptor is already queued, this method does nothing (see {@link Descriptor#queueRefresh()}).</p>
      * @param descriptor the descriptor to be updated concurrently.
      */
     public static <D extends Descriptor> void submitUpdate(D descriptor) {
-        executor.submit(() -> {
+        if(!descriptor.queueRefresh())
+            return; // The queued update will fetch the latest data anyway
+
+        Span parent = Tracing.current();
+        String name = "update " + descriptor.getClass().getSimpleName();
+
+        executor.submit(() -> Tracing.inSpan(name, parent, (TracedAction<Void, RuntimeException>) () -> {
             try {
-                descriptor.update();
+                descriptor.runQueuedRefresh();
             } catch (NoSuchEntityException e) {
+                Tracing.current().end(e.toString());
                 throwNoSuchEntity(e);
             } catch (Request.CantConnectException e) {
+                Tracing.current().end(e.toString());
                 throwCantConnect(e);
             }
-        });
+            return null;
+        }));
+    }
+
+    //endregion
+    //region Fan-out
+
+    private static volatile int fanOut = 8;
+
+    /**
+     * The default maximum number of entities loaded at the same time by the bulk queries, such as
+     * {@link Users#getAll(Collection)}.
+     * @return The maximum number of entities loaded at the same time.
+     */
+    public static int getFanOut(){
+        return fanOut;
+    }
+
+    /**
+     * Sets the default maximum number of entities loaded at the same time by the bulk queries.
+     * @param fanOut the maximum number of entities loaded at the same time, at least 1.
+     * @see #getFanOut()
+     */
+    public static void setFanOut(int fanOut){
+        if(fanOut < 1)
+            throw new IllegalArgumentException("The fan-out should be at least 1: " + fanOut);
+
+        Internal.fanOut = fanOut;
+    }
+
+    /**
+     * Calls {@code load} on each item, with at most {@code maxConcurrency} calls running at the same time, and waits
+     * for all of them.
+     *
+     * <p>The calling thread loads items too, and helpers are started on the {@link #executor}; loading always makes
+     * progress, even when the executor is busy (or when this method is called from the executor). Helpers run with the
+     * {@link Deadline} and the trace (see {@link Tracing}) of the calling thread.</p>
+     *
+     * <p>This method is NOT part of the public API.</p>
+     *
+     * @param items the items to load
+     * @param load loads an item; it is called concurrently from several threads
+     * @param maxConcurrency the maximum number of items loaded at the same time
+     * @return The results of {@code load}, in the order of {@code items}.
+     * @throws RuntimeException if {@code load} throws an exception (the first one is rethrown once all items are
+     * loaded).
+     */
+    public static <T, R> List<R> loadAll(List<T> items, Function<T, R> load, int maxConcurrency){
+        if(maxConcurrency < 1)
+            throw new IllegalArgumentException("The concurrency should be at least 1: " + maxConcurrency);
+
+        int size = items.size();
+        AtomicReferenceArray<R> results = new AtomicReferenceArray<>(size);
+        AtomicInteger next = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(size);
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+
+        Runnable worker = () -> {
+            for(int i = next.getAndIncrement(); i < size; i = next.getAndIncrement()) {
+                try {
+                    results.set(i, load.apply(items.get(i)));
+                } catch (RuntimeException e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    done.countDown();
+                }
+            }
+        };
+
+        Deadline deadline = Deadline.current();
+        Span parent = Tracing.current();
+        for(int helper = 1; helper < Math.min(maxConcurrency, size); helper++)
+            executor.execute(() -> Deadline.withDeadline(deadline, (DeadlineAction<Void, RuntimeException>) () ->
+                Tracing.inSpan("fan-out", parent, (TracedAction<Void, RuntimeException>) () -> {
+                    worker.run();
+                    return null;
+                })));
+
+        worker.run(); // The calling thread helps too
+
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for the entities to load.", e);
+        }
+
+        if(failure.get() != null)
+            throw failure.get();
+
+        List<R> list = new ArrayList<>(size);
+        for(int i = 0; i < size; i++)
+            list.add(results.get(i));
+        return list;
     }
 
     //endregion
@@ -246,12 +386,96 @@ public class Internal {
     /**
      * Connects to the server & tries to access the logged-user's ID. This is needed so the API can identify whether a
      * post is owned or not by the user.
+     * <p>If {@link #getWarmUpConnections() warm-up} is enabled, connections to the server are opened in parallel with
+     * these requests. The time spent in each phase is available with {@link #initTimings()}.</p>
      * @throws Request.CantConnectException if the API cannot connect to the server
      */
     public static void init() throws Request.CantConnectException {
+        long start = System.nanoTime();
         Internal.clear();
+
+        AtomicLong warmUpNanos = new AtomicLong();
+        Future<?> warmUp = warmUpConnections > 0 ? startWarmUp(warmUpConnections, warmUpNanos) : null;
+
+        long users = System.nanoTime();
         Users.init();
+        long areas = System.nanoTime();
         Areas.INSTANCE.init();
+        long end = System.nanoTime();
+
+        if(warmUp != null)
+            awaitWarmUp(warmUp);
+
+        Map<String, Long> timings = new LinkedHashMap<>();
+        if(warmUp != null)
+            timings.put("warm-up", warmUpNanos.get());
+        timings.put("users", areas - users);
+        timings.put("areas", end - areas);
+        timings.put("total", System.nanoTime() - start);
+        initTimings = Collections.unmodifiableMap(timings);
+    }
+
+    //endregion
+    //region Warm-up
+
+    private static volatile int warmUpConnections = 0;
+
+    private static volatile Map<String, Long> initTimings = Collections.emptyMap();
+
+    /**
+     * The number of connections opened by {@link #init()}, in parallel with its requests, so that the first requests
+     * after connecting do not pay for opening them (DNS, TCP and TLS). 0 (the default) disables the warm-up.
+     * @return The number of connections opened during the initialization.
+     * @see Request#warmUp(int)
+     */
+    public static int getWarmUpConnections(){
+        return warmUpConnections;
+    }
+
+    /**
+     * Sets the number of connections opened by {@link #init()}, see {@link #getWarmUpConnections()}.
+     * @param connections the number of connections, or 0 to disable the warm-up.
+     */
+    public static void setWarmUpConnections(int connections){
+        if(connections < 0)
+            throw new IllegalArgumentException("The number of connections cannot be negative: " + connections);
+
+        warmUpConnections = connections;
+    }
+
+    /**
+     * The time spent in each phase of the last {@link #init()}, in nanoseconds, in order: {@code warm-up} (if enabled),
+     * {@code users}, {@code areas} and {@code total}.
+     * <p>Since the warm-up runs in parallel with the other phases, the time it saved is roughly the sum of the phases
+     * minus the total.</p>
+     * @return The time spent in each phase, or an empty map if {@link #init()} was never called.
+     */
+    public static Map<String, Long> initTimings(){
+        return initTimings;
+    }
+
+    private static Future<?> startWarmUp(int connections, AtomicLong nanos){
+        return executor.submit(() -> {
+            long start = System.nanoTime();
+            try {
+                Request.warmUp(connections);
+            } catch (IOException e) {
+                // The warm-up is an optimization; the requests will open their own connections
+                System.err.println("Warning: could not open connections to the server in advance: " + e);
+            } finally {
+                nanos.set(System.nanoTime() - start);
+            }
+        });
+    }
+
+    private static void awaitWarmUp(Future<?> warmUp){
+        try {
+            warmUp.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new RuntimeException("The warm-up failed unexpectedly.", e.getCause());
+        }
     }
 
     //endregion
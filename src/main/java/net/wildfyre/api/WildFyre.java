@@ -29,7 +29,7 @@ public class WildFyre {
     /**
      * Connects to the server with the specified user.
      * This method is NOT executed concurrently, because no action can be taken by the client while the cache is empty
-     * anyway.
+     * anyway. Connections to the server can be opened in advance, see {@link Internal#setWarmUpConnections(int)}.
      * @param username the user's username
      * @param password the user's password
      * @return Your own user. See also {@link Users#me()}.
@@ -45,7 +45,7 @@ public class WildFyre {
     /**
      * Connects to the server with the specified token.
      * This method is NOT executed concurrently, because no action can be taken by the client while the cache is empty
-     * anyway.
+     * anyway. Connections to the server can be opened in advance, see {@link Internal#setWarmUpConnections(int)}.
      * @param token the token
      * @return Your own user. See also {@link Users#me()}.
      */
@@ -16,20 +16,22 @@
 
 package net.wildfyre.areas
 
-import com.eclipsesource.json.JsonObject
 import com.eclipsesource.json.WriterConfig
 import net.wildfyre.api.Internal
 import net.wildfyre.descriptors.CacheManager
 import net.wildfyre.descriptors.Descriptor
 import net.wildfyre.descriptors.NoSuchEntityException
+import net.wildfyre.http.Deadline
+import net.wildfyre.http.DeadlineAction
 import net.wildfyre.http.IssueInTransferException
 import net.wildfyre.http.Method.GET
 import net.wildfyre.http.Request
 import net.wildfyre.posts.Draft
 import net.wildfyre.posts.Post
-import net.wildfyre.utils.LazyMap
+import net.wildfyre.utils.LongObjectMap
 import net.wildfyre.utils.ProgrammingException
 import java.util.*
+import java.util.function.LongFunction
 
 /**
  * This class represents an Area.
@@ -93,9 +95,9 @@ class Area internal constructor (
         }
     private var _spread: Int = -1
 
-    private val posts = LazyMap<Long, Post>()
+    private val posts = Post.getCacheManager().newLongCache<Post>()
 
-    private val drafts: MutableMap<Long, Draft> = LazyMap()
+    private val drafts = LongObjectMap<Draft>()
 
     private var ownPostsIDs = emptyList<Long>()
 
@@ -108,10 +110,17 @@ class Area internal constructor (
     @Throws(Request.CantConnectException::class, NoSuchEntityException::class)
     override fun update() {
         try {
-            val json = Request(GET, "/areas/$ID/rep/")
+            val response = Request(GET, "/areas/{area}/rep/", ID)
                 .addToken(Internal.token())
-                .getJson()
-                .asObject()
+                .revalidate(validators())
+                .getJsonIfModified()
+
+            if (!response.isModified) { // Nothing changed since the last update
+                use()
+                return
+            }
+
+            val json = response.json!!.asObject()
 
             _reputation = json["reputation"]?.asInt()
                 ?: throw ProgrammingException("Missing reputation.\n" + json.toString(WriterConfig.PRETTY_PRINT))
@@ -119,9 +128,11 @@ class Area internal constructor (
             _spread = json["spread"]?.asInt()
                 ?: throw ProgrammingException("Missing spread.\n" + json.toString(WriterConfig.PRETTY_PRINT))
 
+            setValidators(response.validators)
+
         } catch (e: IssueInTransferException) {
             // TODO: cleanup
-            if (e.json?.asObject()?.get("detail")?.asString() == "Not found.") {
+            if (e.isNotFound) {
                 Areas.areas.remove(this.ID)
                 throw NoSuchEntityException("This Area was deleted server-side.", this)
             } else
@@ -161,14 +172,13 @@ class Area internal constructor (
      * @return The post that corresponds to the given ID, or an empty optional if no such post exist.
      */
     fun post(id: Long): Post? {
-        val post = cachedPost(id) ?: Post(id, this.ID)
+        val post = posts.computeIfAbsent(id, LongFunction { Post(it, this.ID) })
 
-        // If there is no post in the cache, stall & query server
+        // If there is no post in the cache, or it is too stale, stall & query server (or wait for the thread that
+        // already does)
         try {
-            if (post.isNew) {
-                posts[id] = post
-                post.update() // in this thread
-            }
+            post.loadIfNew() // in this thread
+            post.refreshIfStale() // in this thread
 
         } catch (e: NoSuchEntityException) {
             return null // this post doesn't exists server-side
@@ -178,8 +188,9 @@ class Area internal constructor (
             return null
         }
 
-        // If there is an expired post in the cache
-        if (!post.isValid)
+        // If there is an expired post in the cache, or it should be refreshed ahead of time
+        val time = System.currentTimeMillis()
+        if (!post.isValid(time) || post.shouldRefresh(time))
             Internal.submitUpdate(post) // in a new thread
 
         post.use()
@@ -187,6 +198,65 @@ class Area internal constructor (
         return post
     }
 
+    /**
+     * Same as [post], but gives up if the post cannot be loaded in [budgetMillis] milliseconds (see [Deadline]),
+     * including the time spent waiting for another thread that is already loading it; in that case, the
+     * CantConnectException handler is called (see [Internal.setCantConnectHandler]).
+     *
+     * @param id the ID of the post
+     * @param budgetMillis how long loading the post can take, in milliseconds
+     * @return The post that corresponds to the given ID, or `null` if no such post exist or it could not be loaded in
+     * time.
+     */
+    fun post(id: Long, budgetMillis: Long): Post? =
+        Deadline.within(budgetMillis, DeadlineAction<Post?, RuntimeException> { post(id) })
+
+    /**
+     * Gets several posts from the cache, or from the server, see [post].
+     *
+     * Posts that are cached are returned without waiting; the others are requested from the server in parallel, at
+     * most [maxConcurrency] at a time. This method returns once all of them are loaded.
+     *
+     * @param ids the IDs of the posts
+     * @param maxConcurrency the maximum number of posts requested at the same time
+     * @return The posts that exist, in the order of [ids].
+     */
+    @JvmOverloads
+    fun posts(ids: Collection<Long>, maxConcurrency: Int = Internal.getFanOut()): List<Post> {
+        // Posts that are not cached (or too stale) are added to the cache in this thread, then updated in parallel
+        val now = System.currentTimeMillis()
+        val missing = LinkedHashMap<Long, Post>()
+        for (id in ids) {
+            val post = posts.computeIfAbsent(id, LongFunction { Post(it, this.ID) })
+            if (post.isNew || post.isStale(now))
+                missing[id] = post
+        }
+
+        val loaded = Internal.loadAll(missing.values.toList(), { post: Post ->
+            try {
+                post.loadIfNew()
+                post.refreshIfStale()
+                post
+            } catch (e: NoSuchEntityException) {
+                null // this post doesn't exists server-side
+            } catch (e: Request.CantConnectException) {
+                Internal.throwCantConnect(e)
+                null
+            }
+        }, maxConcurrency)
+        val results = missing.keys.zip(loaded).toMap()
+
+        return ids.mapNotNull { id ->
+            val post = if (id in results) results[id] else cachedPost(id)
+
+            // If there is an expired post in the cache, or it should be refreshed ahead of time
+            if (post != null && (!post.isValid(now) || post.shouldRefresh(now)))
+                Internal.submitUpdate(post) // in a new thread
+
+            post?.apply { use() }
+        }
+    }
+
     /**
      * Gets the post with the given ID from the cache. This method will not attempt any call to the API, and therefore
      * executes in constant time.
@@ -204,12 +274,10 @@ class Area internal constructor (
     @Throws(Request.CantConnectException::class)
     fun loadDrafts() = try {
         drafts.clear()
-        Request(GET, "/areas/$ID/drafts/")
+        Request(GET, "/areas/{area}/drafts/", ID)
             .addToken(Internal.token())
-            .getJsonObject()["results"].asArray().asSequence()
-            .map { it as JsonObject }
-            .map { it["id"]?.asString() }
-            .filterNotNull()
+            .getResultsField("id")
+            .asSequence()
             .map { Draft(it.toLong(), ID) }
             .forEach { Internal.submitUpdate(it); this.cachedDraft(it) }
     } catch (e: IssueInTransferException) {
@@ -226,7 +294,7 @@ class Area internal constructor (
      * @param draft the Draft
      */
     fun cachedDraft(draft: Draft) {
-        drafts[draft.ID()] = draft
+        drafts.put(draft.ID(), draft)
     }
 
     /**
@@ -263,14 +331,10 @@ class Area internal constructor (
     @Throws(Request.CantConnectException::class)
     fun loadOwnPosts() {
         try {
-            ownPostsIDs = Request(GET, "/areas/$ID/own/")
+            ownPostsIDs = Request(GET, "/areas/{area}/own/", ID)
                 .addToken(Internal.token())
-                .getJsonObject()["results"].asArray().asSequence()
-                .map { it as JsonObject }
-                .map { it["id"] }
-                .filterNotNull()
-                .map { it.asString().toLong() }
-                .toList()
+                .getResultsField("id")
+                .map { it.toLong() }
         } catch (e: IssueInTransferException) {
             throw ProgrammingException("This request shouldn't fail.", e)
         }
@@ -283,16 +347,11 @@ class Area internal constructor (
      * empty Stream.
      *
      * This method internally translates the stored list of IDs to a list of posts. During this process, posts are
-     * queried using [post]; see its documentation for more information about the use of threads.
+     * queried using [posts]; see its documentation for more information about the use of threads.
      *
      * @return A Stream of the posts the user owns.
      */
-    fun ownPosts(): List<Post> {
-        return ownPostsIDs.asSequence()
-            .map { post(it) }
-            .filterNotNull()
-            .toList()
-    }
+    fun ownPosts(): List<Post> = posts(ownPostsIDs)
 
     /**
      * Queries the server for the list of posts that are queued. Note that the posts themselves
@@ -304,14 +363,10 @@ class Area internal constructor (
     @Throws(Request.CantConnectException::class)
     fun loadQueuedPosts(count: Int) {
         try {
-            queuedPostsIDs = Request(GET, "/areas/$ID/?limit=$count")
+            queuedPostsIDs = Request(GET, "/areas/{area}/?limit={limit}", ID, count)
                 .addToken(Internal.token())
-                .getJsonObject()["results"].asArray().asSequence()
-                .map { it as JsonObject }
-                .map { it["id"] }
-                .filterNotNull()
-                .map { it.asString().toLong() }
-                .toList()
+                .getResultsField("id")
+                .map { it.toLong() }
         } catch (e: IssueInTransferException) {
             throw ProgrammingException("This request shouldn't fail.", e)
         }
@@ -320,13 +375,10 @@ class Area internal constructor (
     /**
      * The queue of the next posts in this area
      * 
+     * The posts are queried using [posts]; see its documentation for more information about the use of threads.
+     *
      * @return A Stream of the posts that should be shown to the user
      */
-    fun queuedPosts(): List<Post> {
-        return queuedPostsIDs.asSequence()
-            .map { post(it) }
-            .filterNotNull()
-            .toList()
-    }
+    fun queuedPosts(): List<Post> = posts(queuedPostsIDs)
 
 }
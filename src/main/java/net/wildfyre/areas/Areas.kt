@@ -24,14 +24,14 @@ import net.wildfyre.api.Internal
 import net.wildfyre.descriptors.CacheManager
 import net.wildfyre.http.Method
 import net.wildfyre.http.Request
-import net.wildfyre.utils.LazyMap
+import net.wildfyre.posts.Post
 import java.util.*
 import kotlin.collections.HashMap
 import kotlin.collections.set
 
 /**
  * This class is a singleton that represents the available areas.
- * @see net.wildfyre.utils.LazyMap Implementation details
+ * @see net.wildfyre.utils.StripedCache Implementation details
  */
 @SuppressFBWarnings(
     value = ["ST_WRITE_TO_STATIC_FROM_INSTANCE_METHOD"],
@@ -39,6 +39,7 @@ import kotlin.collections.set
 )
 object Areas {
 
+    @Volatile
     internal var areas: MutableMap<String, Area> = HashMap(0)
 
     private val manager = CacheManager().setExpirationTime((1000 * 60 * 60).toLong()) // 1 hour
@@ -71,7 +72,7 @@ object Areas {
                 .addToken(Internal.token())
                 .getJsonArray()
 
-        areas = LazyMap(json.size()) // exact number of areas for better memory optimization
+        areas = manager.newPermanentCache() // Areas are only listed here, they would not come back if they expired
 
         json.forEach { area: JsonValue ->
             val it = area as JsonObject
@@ -123,13 +124,13 @@ object Areas {
     }
 
     /**
-     * Removes the areas that are not valid anymore.
+     * Removes the expired posts of every area. This is also done in the background (see [CacheManager.expire]).
+     *
+     * Areas are not removed: they stay until the next call to [load].
      *
      * @see .cacheManager
      */
     fun clean() {
-        val time = System.currentTimeMillis()
-
-        areas.values.removeIf { !it.isValid(time) }
+        Post.getCacheManager().expire()
     }
 }
@@ -16,14 +16,30 @@
 
 package net.wildfyre.descriptors;
 
+import net.wildfyre.utils.BoundedCache;
+import net.wildfyre.utils.IntStripedCache;
+import net.wildfyre.utils.LongStripedCache;
+import net.wildfyre.utils.StripedCache;
 import org.jetbrains.annotations.NotNull;
 
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
 /**
- * Specifies for how long an object is kept in the local cache.
+ * Specifies for how long an object is kept in the local cache, and how many objects can be kept.
+ *
+ * <p>Expired objects are removed in the background, about once a second (see {@link #expire()}).</p>
  */
 public class CacheManager {
 
     private long expiresAfter;
+    private volatile double jitter = 0.1;
+    private volatile long refreshAfter = Long.MAX_VALUE;
+    private volatile long maximumStaleness = Long.MAX_VALUE;
+
+    private volatile long maximumWeight = Long.MAX_VALUE;
+    private volatile boolean weighted = false;
 
     public CacheManager(){
         expiresAfter = 1000 * 60 * 30; // 30 min
@@ -52,4 +68,230 @@ public class CacheManager {
         return expiresAfter;
     }
 
+    /**
+     * How long a given object is kept in the cache.
+     * @param spread where the object is in the jitter range, between -1 and 1 (see {@link #setJitter(double)})
+     * @return How long the object is kept in the cache, in milliseconds.
+     */
+    public long objectsExpireAfter(double spread){
+        return expiresAfter + (long) (expiresAfter * jitter * spread);
+    }
+
+    /**
+     * Spreads the expiration times of objects, so objects loaded at the same time (for example during
+     * {@link net.wildfyre.api.Internal#init()}) do not all expire, and get loaded again, at the same time.
+     * @param fraction each object is kept {@link #objectsExpireAfter()}, plus or minus this fraction of it; between 0
+     *                 (no jitter) and 1. Defaults to 0.1.
+     * @return This object, to allow method-chaining.
+     */
+    public @NotNull CacheManager setJitter(double fraction){
+        if(fraction < 0 || fraction > 1)
+            throw new IllegalArgumentException("The jitter should be between 0 and 1: " + fraction);
+
+        jitter = fraction;
+        return this;
+    }
+
+    /**
+     * How much the expiration times of objects are spread.
+     * @return The fraction of {@link #objectsExpireAfter()}.
+     * @see #setJitter(double)
+     */
+    public double jitter(){
+        return jitter;
+    }
+
+    /**
+     * Refreshes objects ahead of time: when an object whose data is older than {@code millis} is read from the cache,
+     * it is returned right away, and updated in the background. Objects that are read often are then kept up to date,
+     * instead of all being updated when they expire.
+     * @param millis the age after which objects are refreshed, in milliseconds, or {@link Long#MAX_VALUE} to disable
+     *               it (the default).
+     * @return This object, to allow method-chaining.
+     * @see #setMaximumStaleness(long) Wait for the new data when it is too old
+     */
+    public @NotNull CacheManager setRefreshAfter(long millis){
+        if(millis <= 0)
+            throw new IllegalArgumentException("The time 'millis' should be positive: " + millis);
+
+        refreshAfter = millis;
+        return this;
+    }
+
+    /**
+     * After how long objects are refreshed in the background, when they are read.
+     * @return The age, in milliseconds, or {@link Long#MAX_VALUE} if objects are not refreshed ahead of time.
+     * @see #setRefreshAfter(long)
+     */
+    public long refreshAfter(){
+        return refreshAfter;
+    }
+
+    /**
+     * Bounds the staleness of objects: when an object whose data is older than {@code millis} is read from the cache,
+     * the reader waits for it to be updated. This should be longer than {@link #refreshAfter()}, so objects that are
+     * read often are refreshed in the background before they become too stale.
+     * @param millis the maximum age of objects, in milliseconds, or {@link Long#MAX_VALUE} for no limit (the default).
+     * @return This object, to allow method-chaining.
+     */
+    public @NotNull CacheManager setMaximumStaleness(long millis){
+        if(millis <= 0)
+            throw new IllegalArgumentException("The time 'millis' should be positive: " + millis);
+
+        maximumStaleness = millis;
+        return this;
+    }
+
+    /**
+     * How old the data of an object can be before readers wait for it to be updated.
+     * @return The maximum age, in milliseconds, or {@link Long#MAX_VALUE} if there is no limit.
+     * @see #setMaximumStaleness(long)
+     */
+    public long maximumStaleness(){
+        return maximumStaleness;
+    }
+
+    /**
+     * Sets the maximum number of objects kept in each cache handled by this manager. When a cache is full, the objects
+     * that are the least likely to be used again are removed (see {@link BoundedCache}).
+     * @param entries the maximum number of objects, or {@link Long#MAX_VALUE} for no limit.
+     * @return This object, to allow method-chaining.
+     * @see #setMaximumWeight(long) Limit the memory instead of the number of objects
+     */
+    public @NotNull CacheManager setMaximumSize(long entries){
+        if(entries < 0)
+            throw new IllegalArgumentException("The maximum size should not be negative: " + entries);
+
+        weighted = false;
+        maximumWeight = entries;
+        return this;
+    }
+
+    /**
+     * Sets the maximum total weight of the objects kept in each cache handled by this manager, where each object
+     * weighs {@link Descriptor#weight()}. When a cache is full, the objects that are the least likely to be used again
+     * are removed (see {@link BoundedCache}).
+     * @param weight the maximum weight, or {@link Long#MAX_VALUE} for no limit.
+     * @return This object, to allow method-chaining.
+     * @see #setMaximumSize(long) Limit the number of objects instead
+     */
+    public @NotNull CacheManager setMaximumWeight(long weight){
+        if(weight < 0)
+            throw new IllegalArgumentException("The maximum weight should not be negative: " + weight);
+
+        weighted = true;
+        maximumWeight = weight;
+        return this;
+    }
+
+    /**
+     * The maximum number of objects (or their maximum weight, see {@link #isWeighted()}) in each cache.
+     * @return The maximum, or {@link Long#MAX_VALUE} if there is no limit.
+     */
+    public long maximum(){
+        return maximumWeight;
+    }
+
+    /**
+     * Is the maximum of the caches a weight (see {@link #setMaximumWeight(long)}) or a number of objects?
+     * @return {@code true} if the maximum is a weight.
+     */
+    public boolean isWeighted(){
+        return weighted;
+    }
+
+    /**
+     * Creates a cache that follows the limits of this manager; changes to the limits apply to existing caches. The
+     * cache can be used by several threads at the same time (see {@link StripedCache}). Objects that were never loaded
+     * ({@link Descriptor#isNew()}) are not evicted, so they stay in the cache while they are loaded.
+     * <p>This method is NOT part of the public API.</p>
+     * @param <K> the type of the keys
+     * @param <V> the type of the objects
+     * @return A new, empty cache.
+     */
+    public <K, V extends Descriptor> StripedCache<K, V> newCache(){
+        return register(new StripedCache<>(StripedCache.DEFAULT_CONCURRENCY, this::maximum, this::weigh,
+            Descriptor::expiresAt, Descriptor::isNew));
+    }
+
+    /**
+     * Same as {@link #newCache()}, for objects identified by an {@code int}; the keys are not boxed in the cache, nor
+     * to find objects (see {@link IntStripedCache}).
+     * <p>This method is NOT part of the public API.</p>
+     * @param <V> the type of the objects
+     * @return A new, empty cache.
+     */
+    public <V extends Descriptor> IntStripedCache<V> newIntCache(){
+        return register(StripedCache.withIntKeys(StripedCache.DEFAULT_CONCURRENCY, this::maximum, this::weigh,
+            Descriptor::expiresAt, Descriptor::isNew));
+    }
+
+    /**
+     * Same as {@link #newCache()}, for objects identified by a {@code long}; the keys are not boxed in the cache, nor
+     * to find objects (see {@link LongStripedCache}).
+     * <p>This method is NOT part of the public API.</p>
+     * @param <V> the type of the objects
+     * @return A new, empty cache.
+     */
+    public <V extends Descriptor> LongStripedCache<V> newLongCache(){
+        return register(StripedCache.withLongKeys(StripedCache.DEFAULT_CONCURRENCY, this::maximum, this::weigh,
+            Descriptor::expiresAt, Descriptor::isNew));
+    }
+
+    /**
+     * Same as {@link #newCache()}, but the objects never expire: they stay in the cache until they are evicted or
+     * removed. This is meant for objects that are not loaded again when they are missing (for example, the areas,
+     * which are only listed by {@link net.wildfyre.areas.Areas#load()}).
+     * <p>This method is NOT part of the public API.</p>
+     * @param <K> the type of the keys
+     * @param <V> the type of the objects
+     * @return A new, empty cache.
+     */
+    public <K, V extends Descriptor> StripedCache<K, V> newPermanentCache(){
+        return new StripedCache<>(StripedCache.DEFAULT_CONCURRENCY, this::maximum, this::weigh, null,
+            Descriptor::isNew);
+    }
+
+    private int weigh(Descriptor descriptor){
+        return weighted ? descriptor.weight() : 1;
+    }
+
+    private <C extends StripedCache<?, ?>> C register(C cache){
+        synchronized (caches) {
+            caches.add(new WeakReference<>(cache));
+        }
+        ExpiryScheduler.register(this);
+        return cache;
+    }
+
+    //region Expiration
+
+    private final List<WeakReference<StripedCache<?, ?>>> caches = new ArrayList<>();
+
+    /**
+     * Removes the expired objects from the caches created by this manager. This is done in the background, so calling
+     * this method is only needed to remove them right away.
+     * @return The number of objects removed.
+     */
+    public int expire(){
+        long now = System.currentTimeMillis();
+
+        List<StripedCache<?, ?>> live = new ArrayList<>();
+        synchronized (caches) {
+            caches.removeIf(reference -> {
+                StripedCache<?, ?> cache = reference.get();
+                if(cache != null)
+                    live.add(cache);
+                return cache == null;
+            });
+        }
+
+        int removed = 0;
+        for(StripedCache<?, ?> cache : live)
+            removed += cache.expire(now);
+        return removed;
+    }
+
+    //endregion
+
 }
@@ -16,8 +16,14 @@
 
 package net.wildfyre.descriptors;
 
+import net.wildfyre.http.CacheValidators;
+import net.wildfyre.http.Deadline;
 import net.wildfyre.http.Request;
 
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
 /**
  * Descriptors represent the raw data from the server, and are used by the internal cache.
  *
@@ -27,8 +33,10 @@ public abstract class Descriptor {
 
     //region Data validation
 
-    private long lastUsage;
-    private boolean isNew;
+    private volatile long lastUsage;
+    private volatile boolean isNew;
+    private final ReentrantLock loading = new ReentrantLock();
+    private final double jitter = ThreadLocalRandom.current().nextDouble(-1, 1);
 
     {   // Initializer that calls the method just before any new object gets created.
         use();
@@ -42,7 +50,17 @@ public abstract class Descriptor {
      * @see #isValid() Shortcut without the currentTime parameter
      */
     public boolean isValid(long currentTime){
-        return currentTime - lastUsage < cacheManager().objectsExpireAfter();
+        return currentTime < expiresAt();
+    }
+
+    /**
+     * When this descriptor expires, if it is not used until then. The time to live is spread around
+     * {@link CacheManager#objectsExpireAfter()} (see {@link CacheManager#setJitter(double)}), so descriptors loaded
+     * together do not expire together.
+     * @return The time in milliseconds, as provided by {@link System#currentTimeMillis()}.
+     */
+    public long expiresAt(){
+        return lastUsage + cacheManager().objectsExpireAfter(jitter);
     }
 
     /**
@@ -63,6 +81,25 @@ public abstract class Descriptor {
         return isNew;
     }
 
+    /**
+     * Updates this descriptor if it was never loaded, in the current thread. If several threads call this method at
+     * the same time, only the first one queries the server; the others wait for it (at most until the
+     * {@link Deadline} of their thread, if any), then return.
+     * @see #update() Update even if this descriptor was already loaded
+     */
+    public final void loadIfNew() throws NoSuchEntityException, Request.CantConnectException {
+        if(!isNew)
+            return;
+
+        Deadline.lock(loading, "wait for the object to be loaded");
+        try {
+            if(isNew)
+                refresh();
+        } finally {
+            loading.unlock();
+        }
+    }
+
     /**
      * Marks this descriptors' last usage as now.
      */
@@ -70,6 +107,15 @@ public abstract class Descriptor {
         lastUsage = System.currentTimeMillis(); isNew = false;
     }
 
+    /**
+     * How much memory this descriptor uses, relative to the others, for caches bounded by weight (see
+     * {@link CacheManager#setMaximumWeight(long)}).
+     * @return The weight of this descriptor, 1 by default.
+     */
+    public int weight(){
+        return 1;
+    }
+
     /**
      * The Cache Manager that handles this object.
      * @return This object.
@@ -79,12 +125,131 @@ public abstract class Descriptor {
     //endregion
     //region Updating
 
+    private volatile CacheValidators validators;
+    private volatile long lastUpdate = System.currentTimeMillis();
+    private final AtomicBoolean refreshQueued = new AtomicBoolean();
+    private boolean fetched; // Guarded by 'loading'
+
     /**
      * Updates this Descriptor.
-     * <p>The update is always executed in the current thread.</p>
+     * <p>The update is always executed in the current thread. If it returns without asking the server for the data, it
+     * should call {@link #updateSkipped()}.</p>
+     * @see #refresh() Same, but remembers when the data was updated
      */
     public abstract void update() throws NoSuchEntityException, Request.CantConnectException;
 
+    /**
+     * Updates this descriptor in the current thread (see {@link #update()}), and remembers when, to know how stale its
+     * data is (see {@link #age(long)}). Refreshes of the same descriptor are executed one after the other.
+     */
+    public final void refresh() throws NoSuchEntityException, Request.CantConnectException {
+        Deadline.lock(loading, "wait for the object to be refreshed");
+        try {
+            long start = System.currentTimeMillis(); // The data is at least as recent as the request
+            fetched = true;
+            update();
+            if(fetched)
+                lastUpdate = start;
+        } finally {
+            loading.unlock();
+        }
+    }
+
+    /**
+     * Tells {@link #refresh()} that {@link #update()} returned without asking the server for the data, so the data is
+     * not any fresher than before.
+     */
+    protected final void updateSkipped(){
+        fetched = false;
+    }
+
+    /**
+     * Runs the refresh queued by {@link #queueRefresh()}, then removes the mark so another refresh can be queued.
+     * <p>This method is NOT part of the public API.</p>
+     */
+    public final void runQueuedRefresh() throws NoSuchEntityException, Request.CantConnectException {
+        try {
+            refresh();
+        } finally {
+            refreshQueued.set(false);
+        }
+    }
+
+    /**
+     * Updates this descriptor in the current thread if its data is older than
+     * {@link CacheManager#maximumStaleness()}. If several threads call this method at the same time, only the first
+     * one queries the server; the others wait for it (at most until the {@link Deadline} of their thread, if any),
+     * then return.
+     */
+    public final void refreshIfStale() throws NoSuchEntityException, Request.CantConnectException {
+        if(!isStale(System.currentTimeMillis()))
+            return;
+
+        Deadline.lock(loading, "wait for the object to be refreshed");
+        try {
+            if(isStale(System.currentTimeMillis()))
+                refresh();
+        } finally {
+            loading.unlock();
+        }
+    }
+
+    /**
+     * How old the data of this descriptor is.
+     * @param currentTime the current time in milliseconds, as provided by {@link System#currentTimeMillis()}.
+     * @return The time since the last {@link #refresh()} (or since this object was created), in milliseconds.
+     */
+    public final long age(long currentTime){
+        return currentTime - lastUpdate;
+    }
+
+    /**
+     * Should this descriptor be refreshed in the background, because its data is older than
+     * {@link CacheManager#refreshAfter()}?
+     * @param currentTime the current time in milliseconds, as provided by {@link System#currentTimeMillis()}.
+     * @return {@code true} if this descriptor should be refreshed.
+     */
+    public final boolean shouldRefresh(long currentTime){
+        return age(currentTime) >= cacheManager().refreshAfter();
+    }
+
+    /**
+     * Is the data of this descriptor too old to be used, that is, older than {@link CacheManager#maximumStaleness()}?
+     * @param currentTime the current time in milliseconds, as provided by {@link System#currentTimeMillis()}.
+     * @return {@code true} if this descriptor is too stale.
+     * @see #refreshIfStale()
+     */
+    public final boolean isStale(long currentTime){
+        return age(currentTime) >= cacheManager().maximumStaleness();
+    }
+
+    /**
+     * Marks that a refresh of this descriptor was queued, to avoid queuing several refreshes for the same data. The
+     * mark is removed once the queued refresh is over (see {@link #runQueuedRefresh()}).
+     * <p>This method is NOT part of the public API.</p>
+     * @return {@code true} if no refresh was queued yet; {@code false} if one already was.
+     */
+    public final boolean queueRefresh(){
+        return refreshQueued.compareAndSet(false, true);
+    }
+
+    /**
+     * The validators the server sent along the data of this descriptor, used to ask the server whether that data
+     * changed instead of downloading it again (see {@link Request#revalidate(CacheValidators)}).
+     * @return The validators, or {@code null} if the server did not send any.
+     */
+    protected final CacheValidators validators(){
+        return validators;
+    }
+
+    /**
+     * Stores the validators sent by the server along the data of this descriptor.
+     * @param validators the validators, or {@code null} if the server did not send any.
+     */
+    protected final void setValidators(CacheValidators validators){
+        this.validators = validators;
+    }
+
     //endregion
 
 }
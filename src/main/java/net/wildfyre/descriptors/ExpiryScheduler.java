@@ -0,0 +1,72 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.descriptors;
+
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Removes the expired objects of every {@link CacheManager} that created a cache, about once a second, on a daemon
+ * thread named "wildfyre-expiry". The thread is started with the first cache.
+ *
+ * This class is NOT part of the public API.
+ */
+final class ExpiryScheduler {
+
+    static final long TICK_MILLIS = 1000;
+
+    private static final Set<CacheManager> managers = new CopyOnWriteArraySet<>();
+    private static volatile ScheduledExecutorService scheduler;
+
+    private ExpiryScheduler(){}
+
+    static void register(CacheManager manager){
+        managers.add(manager);
+
+        if(scheduler == null)
+            synchronized (ExpiryScheduler.class) {
+                if(scheduler == null)
+                    scheduler = start();
+            }
+    }
+
+    private static ScheduledExecutorService start(){
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "wildfyre-expiry");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        executor.scheduleWithFixedDelay(ExpiryScheduler::tick, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+        return executor;
+    }
+
+    private static void tick(){
+        for(CacheManager manager : managers) {
+            try {
+                manager.expire();
+            } catch (RuntimeException e) {
+                // A failure would cancel the schedule; the other managers should still be cleaned
+                System.err.println("ExpiryScheduler: failed to remove the expired objects: " + e);
+            }
+        }
+    }
+
+}
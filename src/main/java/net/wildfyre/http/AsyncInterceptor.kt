@@ -0,0 +1,43 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http
+
+import java.util.concurrent.CompletableFuture
+
+/**
+ * An [Interceptor] that can also handle a request without blocking the current thread, used by the asynchronous
+ * getters of [Request] (such as [Request.getJsonAsync]).
+ *
+ * The built-in stages implement this interface. When the pipeline reaches an interceptor that does not, it is run on
+ * the [TransportExecutor], and the stages after it are run synchronously on that thread.
+ *
+ * This class is NOT part of the public API.
+ */
+internal interface AsyncInterceptor : Interceptor {
+
+    /**
+     * Same as [intercept], but returns as soon as the request is on its way: the rest of the pipeline is called with
+     * [InterceptorChain.proceedAsync], and waits are scheduled instead of blocking the thread.
+     *
+     * The [Deadline] and the current [Span] of the caller are only attached to the current thread while this method
+     * runs; callbacks should use [InterceptorChain.deadline] and [InterceptorChain.span].
+     *
+     * @param chain the request, and the rest of the pipeline
+     * @return The response, or a future that fails with an [java.io.IOException] if the server cannot be reached.
+     */
+    fun interceptAsync(chain: InterceptorChain): CompletableFuture<RawResponse>
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http
+
+import java.util.concurrent.ArrayBlockingQueue
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * A [LogSink] that hands the events to another sink, on a background thread.
+ *
+ * Up to [capacity] events wait in a queue for the [delegate]; [accept] returns at once, even while the delegate is
+ * busy. An event that arrives when the queue is full is lost (see [dropped]); older events are not overwritten.
+ *
+ * @param delegate the sink that receives the events, always from the same background thread
+ * @param capacity how many events can wait for the background thread
+ */
+class AsyncLogSink @JvmOverloads constructor(
+    private val delegate: LogSink,
+    val capacity: Int = 1024
+) : LogSink, AutoCloseable {
+
+    private val buffer = ArrayBlockingQueue<LogEvent>(capacity)
+    private val droppedEvents = AtomicLong()
+
+    @Volatile private var running = true
+
+    private val worker = Thread({
+        while (running || buffer.isNotEmpty()) {
+            val event = try {
+                buffer.poll(100, TimeUnit.MILLISECONDS) ?: continue
+            } catch (e: InterruptedException) {
+                continue // Check whether we are still running
+            }
+
+            try {
+                delegate.accept(event)
+            } catch (e: RuntimeException) {
+                System.err.println("AsyncLogSink: the delegate failed to log $event")
+                e.printStackTrace()
+            }
+        }
+    }, "wildfyre-log").apply {
+        isDaemon = true
+        start()
+    }
+
+    override fun accept(event: LogEvent) {
+        if (!buffer.offer(event))
+            droppedEvents.incrementAndGet()
+    }
+
+    /**
+     * How many events were dropped because the delegate was too far behind.
+     */
+    val dropped: Long
+        get() = droppedEvents.get()
+
+    /**
+     * Stops the background thread, after the events that are still waiting are handed to the delegate.
+     */
+    override fun close() {
+        running = false
+        worker.interrupt()
+        worker.join()
+    }
+}
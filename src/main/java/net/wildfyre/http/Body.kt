@@ -0,0 +1,46 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http
+
+import java.io.IOException
+import java.io.OutputStream
+
+/**
+ * The body of a request, as it will be written to the server.
+ *
+ * Bodies may be written more than once (for example if the transport needs to retry on a new connection), so
+ * implementations should not consume their source when they are written.
+ */
+interface Body {
+
+    /**
+     * The value of the `Content-Type` header of this body.
+     */
+    val contentType: String
+
+    /**
+     * The size of this body, in bytes, or `-1` if it is not known in advance.
+     */
+    val contentLength: Long
+
+    /**
+     * Writes this body.
+     * @param output where the body should be written. The stream should not be closed by this method.
+     */
+    @Throws(IOException::class)
+    fun writeTo(output: OutputStream)
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http
+
+import java.util.concurrent.ArrayBlockingQueue
+
+/**
+ * A small pool of byte arrays used to copy data to and from the network, so that large transfers do not allocate
+ * memory proportional to their size.
+ *
+ * This class is NOT part of the public API.
+ */
+internal object BufferPool {
+
+    /** The size of each buffer. */
+    const val BUFFER_SIZE = 16 * 1024
+
+    private val buffers = ArrayBlockingQueue<ByteArray>(maxOf(4, Runtime.getRuntime().availableProcessors() * 2))
+
+    /**
+     * Gets a buffer of [BUFFER_SIZE] bytes. It should be given back with [release] after use.
+     */
+    fun acquire(): ByteArray = buffers.poll() ?: ByteArray(BUFFER_SIZE)
+
+    /**
+     * Gives back a buffer; if the pool is full, it is left to the garbage collector.
+     */
+    fun release(buffer: ByteArray) {
+        if (buffer.size == BUFFER_SIZE)
+            buffers.offer(buffer)
+    }
+
+    /**
+     * Calls [action] with a buffer from the pool.
+     */
+    inline fun <T> use(action: (ByteArray) -> T): T {
+        val buffer = acquire()
+        try {
+            return action(buffer)
+        } finally {
+            release(buffer)
+        }
+    }
+}
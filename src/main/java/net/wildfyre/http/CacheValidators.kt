@@ -0,0 +1,44 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http
+
+/**
+ * The validators sent by the server along a response, which allow to ask later whether that response is still
+ * up-to-date (see [Request.revalidate]).
+ *
+ * @param etag the value of the `ETag` header, if any
+ * @param lastModified the value of the `Last-Modified` header, if any
+ */
+data class CacheValidators(
+    val etag: String?,
+    val lastModified: String?
+) {
+
+    companion object {
+
+        /**
+         * Reads the validators of a response.
+         * @return The validators, or `null` if the server did not send any.
+         */
+        internal fun of(response: RawResponse): CacheValidators? {
+            val etag = response.header("ETag")
+            val lastModified = response.header("Last-Modified")
+
+            return if (etag != null || lastModified != null) CacheValidators(etag, lastModified) else null
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http
+
+import java.util.concurrent.TimeUnit
+
+/**
+ * Stops sending requests to a host that keeps failing, so it is not flooded as soon as it comes back.
+ *
+ * The breaker starts [CLOSED][State.CLOSED]: requests are sent normally. After [failureThreshold] failures in a row,
+ * it becomes [OPEN][State.OPEN]: requests fail immediately, without reaching the server. After [openMillis], a single
+ * request is let through ([HALF_OPEN][State.HALF_OPEN]); if it succeeds, the breaker closes, otherwise it opens again.
+ *
+ * @param failureThreshold the number of failures in a row that open the breaker
+ * @param openMillis how long the breaker stays open before a request is let through
+ * @see Request.circuitBreakers
+ */
+class CircuitBreaker @JvmOverloads constructor(
+    val failureThreshold: Int = 5,
+    val openMillis: Long = 10_000
+) {
+
+    init {
+        require(failureThreshold > 0) { "The failure threshold should be positive: $failureThreshold" }
+        require(openMillis >= 0) { "The open duration should not be negative: $openMillis" }
+    }
+
+    /**
+     * The states of a [CircuitBreaker].
+     */
+    enum class State {
+        /** Requests are sent normally. */
+        CLOSED,
+
+        /** Requests fail without being sent. */
+        OPEN,
+
+        /** A single request is sent, to check whether the host is back. */
+        HALF_OPEN
+    }
+
+    private var current = State.CLOSED
+    private var failures = 0
+    private var openedAt = 0L
+    private var probing = false
+    private var rejectedCount = 0L
+
+    /**
+     * The current state of this breaker.
+     */
+    val state: State
+        @Synchronized get() =
+            if (current == State.OPEN && elapsedMillis() >= openMillis) State.HALF_OPEN
+            else current
+
+    /**
+     * The number of failures in a row.
+     */
+    val consecutiveFailures: Int
+        @Synchronized get() = failures
+
+    /**
+     * The number of requests that failed because this breaker was open.
+     */
+    val rejected: Long
+        @Synchronized get() = rejectedCount
+
+    /**
+     * Can a request be sent now? If so, its outcome should be reported with [onSuccess] or [onFailure].
+     */
+    @Synchronized
+    fun tryAcquire(): Boolean {
+        val allowed = when (state) {
+            State.CLOSED -> true
+            State.OPEN -> false
+            State.HALF_OPEN -> if (probing) false else {
+                current = State.HALF_OPEN
+                probing = true
+                true
+            }
+        }
+
+        if (!allowed)
+            rejectedCount++
+        return allowed
+    }
+
+    /**
+     * The host answered.
+     */
+    @Synchronized
+    fun onSuccess() {
+        current = State.CLOSED
+        failures = 0
+        probing = false
+    }
+
+    /**
+     * The host could not be reached, or is unavailable.
+     */
+    @Synchronized
+    fun onFailure() {
+        failures++
+        if (current == State.HALF_OPEN || failures >= failureThreshold) {
+            current = State.OPEN
+            openedAt = System.nanoTime()
+        }
+        probing = false
+    }
+
+    /**
+     * The request was not sent, for a reason that has nothing to do with the host.
+     */
+    @Synchronized
+    internal fun onIgnored() {
+        probing = false
+    }
+
+    private fun elapsedMillis() = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - openedAt)
+
+    override fun toString() = "CircuitBreaker(state=$state, consecutiveFailures=$consecutiveFailures)"
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http
+
+import java.io.IOException
+import java.util.concurrent.CompletableFuture
+
+/**
+ * Fails requests without sending them while the [CircuitBreaker] of their host is open, and reports the outcome of
+ * the others to it.
+ *
+ * This class is NOT part of the public API.
+ */
+internal class CircuitBreakerInterceptor(private val breakers: CircuitBreakers) : AsyncInterceptor {
+
+    @Throws(IOException::class)
+    override fun intercept(chain: Interceptor.Chain): RawResponse {
+        val breaker = acquire(chain.request)
+
+        val response = try {
+            chain.proceed(chain.request)
+        } catch (e: Throwable) {
+            onFailure(breaker, e)
+            throw e
+        }
+        return onResponse(breaker, response)
+    }
+
+    override fun interceptAsync(chain: InterceptorChain): CompletableFuture<RawResponse> {
+        val breaker = acquire(chain.request)
+
+        return chain.proceedAsync(chain.request).andThen { response, error ->
+            if (error != null) {
+                onFailure(breaker, error)
+                throw error
+            }
+            onResponse(breaker, response!!)
+        }
+    }
+
+    @Throws(CircuitOpenException::class)
+    private fun acquire(request: RawRequest): CircuitBreaker {
+        val host = request.url.host
+        val breaker = breakers.of(host)
+
+        if (!breaker.tryAcquire())
+            throw CircuitOpenException(host)
+        return breaker
+    }
+
+    private fun onResponse(breaker: CircuitBreaker, response: RawResponse): RawResponse {
+        if (response.status in RetryPolicy.TRANSIENT_STATUSES) breaker.onFailure()
+        else breaker.onSuccess()
+        return response
+    }
+
+    private fun onFailure(breaker: CircuitBreaker, error: Throwable) = when (error) {
+        is DeadlineExceededException -> breaker.onIgnored() // The caller ran out of time, the host did nothing wrong
+        is IOException -> breaker.onFailure()
+        else -> breaker.onIgnored()
+    }
+}
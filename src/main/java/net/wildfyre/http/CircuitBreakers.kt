@@ -0,0 +1,50 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http
+
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * The [CircuitBreaker] of each host.
+ *
+ * @param failureThreshold see [CircuitBreaker.failureThreshold]
+ * @param openMillis see [CircuitBreaker.openMillis]
+ * @see Request.circuitBreakers
+ */
+class CircuitBreakers @JvmOverloads constructor(
+    val failureThreshold: Int = 5,
+    val openMillis: Long = 10_000
+) {
+
+    private val breakers = ConcurrentHashMap<String, CircuitBreaker>()
+
+    /**
+     * The breaker of a host; it is created if needed.
+     */
+    fun of(host: String): CircuitBreaker =
+        breakers.computeIfAbsent(host.toLowerCase()) { CircuitBreaker(failureThreshold, openMillis) }
+
+    /**
+     * The state of the breaker of every host a request was sent to.
+     */
+    fun states(): Map<String, CircuitBreaker.State> = breakers.mapValues { it.value.state }
+
+    /**
+     * Forgets every breaker (they are all closed again).
+     */
+    fun reset() = breakers.clear()
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http
+
+import java.io.FilterInputStream
+import java.io.IOException
+import java.io.InputStream
+import java.util.zip.GZIPInputStream
+import java.util.zip.InflaterInputStream
+
+/**
+ * Negotiates the compression of responses: transports advertise the encodings listed in [ACCEPT_ENCODING], and
+ * decompress the body of responses with [decode].
+ *
+ * This class is NOT part of the public API.
+ */
+internal object Compression {
+
+    /**
+     * The value of the `Accept-Encoding` header sent by the transports.
+     */
+    const val ACCEPT_ENCODING = "gzip, deflate"
+
+    /**
+     * Adds the `Accept-Encoding` header, unless the request already specifies one.
+     */
+    fun advertise(request: RawRequest): Map<String, String> =
+        if (request.headers.keys.any { it.equals("Accept-Encoding", ignoreCase = true) })
+            request.headers
+        else
+            request.headers + ("Accept-Encoding" to ACCEPT_ENCODING)
+
+    /**
+     * Wraps the body of a response so it is decompressed while it is read, and counts the bytes (see
+     * [RawResponse.transferStats]).
+     */
+    fun decode(response: RawResponse): RawResponse {
+        val stats = TransferStats()
+
+        val encoding = response.header("Content-Encoding")?.trim()?.toLowerCase()
+        val decoder: ((InputStream) -> InputStream)? = when (encoding) {
+            "gzip", "x-gzip" -> { input -> GZIPInputStream(input, BufferPool.BUFFER_SIZE) }
+            "deflate" -> { input -> InflaterInputStream(input) }
+            else -> null
+        }
+
+        val body =
+            if (decoder == null)
+                CountingInputStream(response.body) { stats.compressedBytes += it; stats.uncompressedBytes += it }
+            else
+                CountingInputStream(
+                    DecodingInputStream(CountingInputStream(response.body) { stats.compressedBytes += it }, decoder)
+                ) { stats.uncompressedBytes += it }
+
+        return RawResponse(response.status, response.headers, body, stats)
+    }
+}
+
+/**
+ * Calls [onRead] with the number of bytes read, every time some bytes are read.
+ */
+internal class CountingInputStream(input: InputStream, private val onRead: (Int) -> Unit) : FilterInputStream(input) {
+
+    override fun read(): Int = super.read().also { if (it != -1) onRead(1) }
+
+    override fun read(b: ByteArray, off: Int, len: Int): Int =
+        super.read(b, off, len).also { if (it > 0) onRead(it) }
+
+    override fun skip(n: Long): Long = super.skip(n).also { if (it > 0) onRead(it.toInt()) }
+
+    override fun markSupported() = false
+}
+
+/**
+ * Decompresses a stream; the decoder is only created when the body is first read (it reads a header as soon as it
+ * is created, which fails on empty bodies).
+ *
+ * When the decoder reaches the end of the compressed data, the rest of the underlying stream is read, so the
+ * transport sees the end of the body and can reuse the connection.
+ */
+internal class DecodingInputStream(
+    private val wire: InputStream,
+    private val decoder: (InputStream) -> InputStream
+) : InputStream() {
+
+    private var decoded: InputStream? = null
+    private var finished = false
+
+    private fun decoded() = decoded ?: decoder(wire).also { decoded = it }
+
+    override fun read(): Int {
+        if (finished) return -1
+        return decoded().read().also { if (it == -1) finish() }
+    }
+
+    override fun read(b: ByteArray, off: Int, len: Int): Int {
+        if (finished) return -1
+        return decoded().read(b, off, len).also { if (it == -1) finish() }
+    }
+
+    override fun available() = if (finished) 0 else decoded?.available() ?: 0
+
+    private fun finish() {
+        finished = true
+        BufferPool.use { buffer ->
+            @Suppress("ControlFlowWithEmptyBody")
+            while (wire.read(buffer) != -1) { }
+        }
+    }
+
+    @Throws(IOException::class)
+    override fun close() = wire.close()
+}
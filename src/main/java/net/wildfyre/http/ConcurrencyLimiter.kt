@@ -0,0 +1,227 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http
+
+import java.io.InterruptedIOException
+import java.util.*
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.TimeoutException
+import java.util.concurrent.atomic.AtomicBoolean
+
+/**
+ * Limits the number of requests that are sent at the same time, and adapts that limit to how the server behaves.
+ *
+ * The limit grows by one every time a request succeeds quickly while the limit is in use, and is multiplied by
+ * [backoffRatio] every time a request fails, is rejected by the server (HTTP 429, 502, 503 or 504), or takes longer
+ * than [latencyThresholdMillis] (additive increase, multiplicative decrease). Requests above the limit wait in a
+ * queue, in order, instead of being sent.
+ *
+ * @param initialLimit the limit before any request was sent
+ * @param minLimit the smallest the limit can become
+ * @param maxLimit the largest the limit can become
+ * @param latencyThresholdMillis requests slower than this are considered a sign that the server is overloaded
+ * @param backoffRatio how much the limit is reduced when the server seems overloaded, between 0 and 1
+ * @see Request.concurrencyLimiter
+ */
+class ConcurrencyLimiter @JvmOverloads constructor(
+    initialLimit: Int = 16,
+    val minLimit: Int = 1,
+    val maxLimit: Int = 64,
+    val latencyThresholdMillis: Long = 2_000,
+    val backoffRatio: Double = 0.9
+) {
+
+    init {
+        require(minLimit > 0) { "The minimum limit should be positive: $minLimit" }
+        require(maxLimit >= minLimit) { "The maximum limit should be at least $minLimit: $maxLimit" }
+        require(initialLimit in minLimit..maxLimit) { "The initial limit should be in $minLimit..$maxLimit" }
+        require(backoffRatio > 0 && backoffRatio < 1) { "The backoff ratio should be between 0 and 1" }
+    }
+
+    private val lock = Any()
+    private var currentLimit = initialLimit.toDouble()
+    private var inFlightCount = 0
+    private val waiting = ArrayDeque<CompletableFuture<Permit>>()
+
+    /**
+     * The current number of requests that can be sent at the same time.
+     */
+    val limit: Int
+        get() = synchronized(lock) { currentLimit.toInt() }
+
+    /**
+     * The number of requests that are currently sent.
+     */
+    val inFlight: Int
+        get() = synchronized(lock) { inFlightCount }
+
+    /**
+     * The number of requests that are waiting to be sent.
+     */
+    val queued: Int
+        get() = synchronized(lock) { waiting.size }
+
+    /**
+     * Waits until a request can be sent.
+     *
+     * @param timeoutMillis how long to wait, in milliseconds (0 means forever)
+     * @return The permission to send the request, which must be released once the server answered.
+     * @throws InterruptedIOException if the thread is interrupted while waiting, or if the timeout expires
+     */
+    @JvmOverloads
+    @Throws(InterruptedIOException::class)
+    fun acquire(timeoutMillis: Long = 0): Permit {
+        val permit = acquireAsync()
+        try {
+            return if (timeoutMillis == 0L) permit.get()
+            else permit.get(timeoutMillis, TimeUnit.MILLISECONDS)
+
+        } catch (e: InterruptedException) {
+            if (!cancel(permit))
+                permit.join().ignore() // It was granted in the meantime
+            Thread.currentThread().interrupt()
+            throw InterruptedIOException("Interrupted while waiting to send a request")
+
+        } catch (e: TimeoutException) {
+            if (!cancel(permit))
+                return permit.join() // It was granted in the meantime
+            throw InterruptedIOException("Could not send a request within ${timeoutMillis}ms ($limit requests are " +
+                "already sent)")
+
+        } catch (e: ExecutionException) {
+            throw IllegalStateException("Permits are never completed exceptionally", e)
+        }
+    }
+
+    /**
+     * Same as [acquire], but does not block the current thread.
+     *
+     * @param timeoutMillis how long to wait, in milliseconds (0 means forever)
+     * @return The permission to send the request. If the timeout expires first, the future completes exceptionally
+     * with an [InterruptedIOException].
+     */
+    @JvmOverloads
+    fun acquireAsync(timeoutMillis: Long = 0): CompletableFuture<Permit> {
+        val result = CompletableFuture<Permit>()
+
+        synchronized(lock) {
+            if (inFlightCount >= currentLimit.toInt() || waiting.isNotEmpty()) {
+                waiting.add(result)
+                if (timeoutMillis > 0)
+                    TransportExecutor.delay(timeoutMillis).thenRun { expire(result, timeoutMillis) }
+                return result
+            }
+            inFlightCount++
+        }
+
+        return result.apply { complete(Permit(limit)) }
+    }
+
+    /**
+     * Fails a request that is still waiting once its timeout expired; if it was granted in the meantime, does nothing.
+     */
+    private fun expire(permit: CompletableFuture<Permit>, timeoutMillis: Long) {
+        if (synchronized(lock) { waiting.remove(permit) })
+            permit.completeExceptionally(InterruptedIOException("Could not send a request within ${timeoutMillis}ms " +
+                "($limit requests are already sent)"))
+    }
+
+    private fun cancel(permit: CompletableFuture<Permit>): Boolean {
+        synchronized(lock) { waiting.remove(permit) }
+        return permit.cancel(false)
+    }
+
+    private fun release(latencyNanos: Long, outcome: Outcome, limitWhenAcquired: Int) {
+        val granted = ArrayList<CompletableFuture<Permit>>()
+        val newLimit: Int
+
+        synchronized(lock) {
+            inFlightCount--
+
+            val slow = TimeUnit.NANOSECONDS.toMillis(latencyNanos) > latencyThresholdMillis
+            when {
+                outcome == Outcome.DROPPED || (outcome == Outcome.SUCCESS && slow) ->
+                    currentLimit = maxOf(minLimit.toDouble(), currentLimit * backoffRatio)
+                outcome == Outcome.SUCCESS && inFlightCount + 1 >= limitWhenAcquired / 2 ->
+                    currentLimit = minOf(maxLimit.toDouble(), currentLimit + 1)
+            }
+
+            while (inFlightCount < currentLimit.toInt()) {
+                val next = waiting.poll() ?: break
+                if (!next.isCancelled) {
+                    inFlightCount++
+                    granted.add(next)
+                }
+            }
+            newLimit = currentLimit.toInt()
+        }
+
+        // Outside of the lock, as this runs the callbacks of the waiting requests
+        granted.forEach {
+            val permit = Permit(newLimit)
+            if (!it.complete(permit))
+                permit.ignore() // Cancelled after it was granted
+        }
+    }
+
+    override fun toString() = "ConcurrencyLimiter(limit=$limit, inFlight=$inFlight, queued=$queued)"
+
+    private enum class Outcome { SUCCESS, DROPPED, IGNORED }
+
+    /**
+     * The permission to send a request. Exactly one of its methods should be called once the request is over.
+     */
+    inner class Permit internal constructor(private val limitWhenAcquired: Int) {
+        private val start = System.nanoTime()
+        private val released = AtomicBoolean()
+
+        private fun release(outcome: Outcome) {
+            if (released.compareAndSet(false, true))
+                release(System.nanoTime() - start, outcome, limitWhenAcquired)
+        }
+
+        /**
+         * The server answered; its latency is taken into account.
+         */
+        fun onSuccess() = release(Outcome.SUCCESS)
+
+        /**
+         * The server could not be reached, or refused the request because it is overloaded.
+         */
+        fun onDropped() = release(Outcome.DROPPED)
+
+        /**
+         * The request was not sent; the limit does not change.
+         */
+        fun ignore() = release(Outcome.IGNORED)
+
+        /**
+         * Releases the permit according to the status of the response.
+         */
+        fun onResponse(status: Int) = if (status in OVERLOADED_STATUSES) onDropped() else onSuccess()
+    }
+
+    companion object {
+
+        /**
+         * The statuses that mean the server is overloaded.
+         */
+        private val OVERLOADED_STATUSES = setOf(429, 502, 503, 504)
+    }
+}
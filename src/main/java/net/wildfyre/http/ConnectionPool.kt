@@ -0,0 +1,335 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http
+
+import java.io.BufferedInputStream
+import java.io.BufferedOutputStream
+import java.io.IOException
+import java.net.InetSocketAddress
+import java.net.Socket
+import java.net.SocketTimeoutException
+import java.net.URL
+import java.util.*
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Semaphore
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicReference
+import javax.net.ssl.SSLSocket
+import javax.net.ssl.SSLSocketFactory
+
+/**
+ * Keeps connections alive so they can be reused by later requests.
+ *
+ * Connections are grouped by host (scheme, name and port); at most [maxConnectionsPerHost] connections can be
+ * leased at the same time for a single host, other requests wait for one to be released. Connections that stayed
+ * idle for more than [idleTimeoutMillis] are closed.
+ *
+ * This class is NOT part of the public API, see [PooledTransport].
+ */
+internal class ConnectionPool(
+    val maxConnectionsPerHost: Int,
+    val idleTimeoutMillis: Long,
+    private val leaseTimeoutMillis: Long
+) {
+
+    //region Routes & connections
+
+    /**
+     * The address of a server, for which connections are interchangeable.
+     */
+    data class Route(val secure: Boolean, val host: String, val port: Int) {
+        override fun toString() = (if (secure) "https://" else "http://") + "$host:$port"
+
+        companion object {
+            fun of(url: URL) = Route(
+                url.protocol.equals("https", ignoreCase = true),
+                url.host,
+                if (url.port != -1) url.port else url.defaultPort
+            )
+        }
+    }
+
+    /**
+     * A socket to a [Route], and its buffered streams.
+     */
+    class Connection(val route: Route, private val socket: Socket) {
+        val input = BufferedInputStream(socket.getInputStream(), BUFFER_SIZE)
+        val output = BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE)
+
+        /** When this connection was last released to the pool. */
+        internal var idleSince = 0L
+
+        /** How many requests were sent on this connection. */
+        internal var uses = 0
+
+        /** How long to wait for the server to send data, in milliseconds (0 means forever). */
+        internal var readTimeout: Long
+            get() = socket.soTimeout.toLong()
+            set(value) { socket.soTimeout = value.toInt() }
+
+        /**
+         * Checks that the server did not close this connection while it was idle.
+         */
+        internal fun isHealthy(now: Long): Boolean {
+            if (socket.isClosed || socket.isInputShutdown || socket.isOutputShutdown)
+                return false
+
+            if (now - idleSince < HEALTH_CHECK_AFTER)
+                return true // Recently used, the check is not worth its cost
+
+            val timeout = socket.soTimeout
+            return try {
+                socket.soTimeout = 1
+                input.mark(1)
+                if (input.read() == -1) false
+                else { input.reset(); true }
+
+            } catch (e: SocketTimeoutException) {
+                true // Nothing to read, but the socket is still open
+
+            } catch (e: IOException) {
+                false
+
+            } finally {
+                try { socket.soTimeout = timeout } catch (e: IOException) { /* The connection is closed anyway */ }
+            }
+        }
+
+        internal fun close() = try {
+            socket.close()
+        } catch (e: IOException) {
+            // The connection is discarded anyway
+        }
+    }
+
+    private inner class HostPool {
+        val permits = Semaphore(maxConnectionsPerHost, true)
+        val idle = ArrayDeque<Connection>() // guarded by 'this'
+    }
+
+    //endregion
+    //region State
+
+    private val hosts = ConcurrentHashMap<Route, HostPool>()
+
+    private val leased = AtomicInteger()
+    private val created = AtomicLong()
+    private val reused = AtomicLong()
+
+    @Volatile private var closed = false
+
+    //endregion
+    //region Leasing
+
+    /**
+     * Gets a connection to the given route, reusing an idle one if possible.
+     *
+     * Every leased connection must be given back with [release].
+     *
+     * @param connectTimeoutMillis how long to wait if a new connection is opened (0 means forever)
+     * @throws IOException if no connection is available in time, or if a new connection cannot be opened.
+     */
+    @Throws(IOException::class)
+    fun lease(route: Route, connectTimeoutMillis: Long = 0): Connection {
+        if (closed)
+            throw IOException("This connection pool is closed.")
+
+        val host = hosts.computeIfAbsent(route) { HostPool() }
+        try {
+            if (!host.permits.tryAcquire(leaseTimeoutMillis, TimeUnit.MILLISECONDS))
+                throw IOException("No connection to $route was released in ${leaseTimeoutMillis}ms " +
+                    "($maxConnectionsPerHost connections are leased).")
+        } catch (e: InterruptedException) {
+            Thread.currentThread().interrupt()
+            throw IOException("Interrupted while waiting for a connection to $route.", e)
+        }
+
+        try {
+            val connection = pollIdle(host) ?: open(route, connectTimeoutMillis).also { created.incrementAndGet() }
+            connection.uses++
+            leased.incrementAndGet()
+            return connection
+
+        } catch (e: IOException) {
+            host.permits.release()
+            throw e
+        }
+    }
+
+    private fun pollIdle(host: HostPool): Connection? {
+        val now = System.currentTimeMillis()
+
+        while (true) {
+            val connection = synchronized(host) { host.idle.pollFirst() } ?: return null
+
+            if (now - connection.idleSince < idleTimeoutMillis && connection.isHealthy(now)) {
+                reused.incrementAndGet()
+                return connection
+            } else
+                connection.close()
+        }
+    }
+
+    /**
+     * Makes sure that [count] connections to a route are open (at most [maxConnectionsPerHost]), opening the missing
+     * ones in parallel.
+     *
+     * @param connectTimeoutMillis how long opening each connection can take (0 means forever)
+     * @return The number of connections that were opened.
+     * @throws IOException if a connection cannot be opened (the connections that could be opened are kept).
+     */
+    @Throws(IOException::class)
+    fun warmUp(route: Route, count: Int, connectTimeoutMillis: Long = 0): Int {
+        val leases = minOf(count, maxConnectionsPerHost)
+        val opened = AtomicInteger()
+        val failure = AtomicReference<IOException>()
+        val done = CountDownLatch(leases)
+
+        // Leasing several connections at once forces the pool to open the missing ones
+        val connections = ConcurrentLinkedQueue<Connection>()
+        repeat(leases) {
+            TransportExecutor.execute {
+                try {
+                    val connection = lease(route, connectTimeoutMillis)
+                    if (connection.uses == 1) opened.incrementAndGet()
+                    connections.add(connection)
+                } catch (e: IOException) {
+                    failure.compareAndSet(null, e)
+                } finally {
+                    done.countDown()
+                }
+            }
+        }
+
+        // Opening a connection is bounded by its timeout; the connections must all be released, even if interrupted
+        var interrupted = false
+        while (true) {
+            try {
+                done.await()
+                break
+            } catch (e: InterruptedException) {
+                interrupted = true
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt()
+
+        // The connections are only released once they have all been leased, otherwise they would be reused
+        for (connection in connections)
+            release(connection, reusable = true)
+
+        failure.get()?.let { throw it }
+        return opened.get()
+    }
+
+    /**
+     * Gives back a connection to the pool.
+     *
+     * @param connection the connection, as returned by [lease]
+     * @param reusable `true` if the response was fully read and the server allows to keep the connection alive
+     */
+    fun release(connection: Connection, reusable: Boolean) {
+        val host = hosts[connection.route]
+            ?: throw IllegalStateException("The connection to ${connection.route} does not belong to this pool.")
+
+        if (reusable && !closed) {
+            connection.idleSince = System.currentTimeMillis()
+            synchronized(host) { host.idle.offerFirst(connection) } // LIFO, the most recent ones are the healthiest
+        } else
+            connection.close()
+
+        leased.decrementAndGet()
+        host.permits.release()
+    }
+
+    /**
+     * Opens a new connection to a route.
+     */
+    @Throws(IOException::class)
+    private fun open(route: Route, connectTimeoutMillis: Long): Connection {
+        val socket = Socket()
+        try {
+            socket.tcpNoDelay = true
+            socket.connect(InetSocketAddress(route.host, route.port), connectTimeoutMillis.toInt())
+            socket.soTimeout = connectTimeoutMillis.toInt() // For the TLS handshake
+
+            if (!route.secure)
+                return Connection(route, socket)
+
+            val factory = SSLSocketFactory.getDefault() as SSLSocketFactory
+            val ssl = factory.createSocket(socket, route.host, route.port, true) as SSLSocket
+            ssl.sslParameters = ssl.sslParameters.apply { endpointIdentificationAlgorithm = "HTTPS" }
+            ssl.startHandshake()
+            return Connection(route, ssl)
+
+        } catch (e: IOException) {
+            try { socket.close() } catch (ignored: IOException) { /* Already failing */ }
+            throw e
+        }
+    }
+
+    //endregion
+    //region Maintenance
+
+    /**
+     * Closes the connections that have been idle for too long.
+     */
+    fun evictIdle() {
+        val now = System.currentTimeMillis()
+
+        for (host in hosts.values) {
+            val expired = synchronized(host) {
+                host.idle.filter { now - it.idleSince >= idleTimeoutMillis }
+                    .also { host.idle.removeAll(it) }
+            }
+            expired.forEach { it.close() }
+        }
+    }
+
+    /**
+     * Closes every idle connection; connections that are currently leased are closed when they are released.
+     */
+    fun close() {
+        closed = true
+
+        for (host in hosts.values)
+            synchronized(host) {
+                host.idle.forEach { it.close() }
+                host.idle.clear()
+            }
+    }
+
+    fun stats() = PoolStats(
+        leased = leased.get(),
+        idle = hosts.values.sumBy { synchronized(it) { it.idle.size } },
+        created = created.get(),
+        reused = reused.get()
+    )
+
+    //endregion
+
+    companion object {
+        internal const val BUFFER_SIZE = 8192
+
+        /** Connections idle for less than this many milliseconds are not checked before being reused. */
+        private const val HEALTH_CHECK_AFTER = 1000L
+    }
+}
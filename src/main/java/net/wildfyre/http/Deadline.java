@@ -0,0 +1,164 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * The moment by which a call, and every request it sends, should be over.
+ *
+ * <p>The deadline is attached to the current thread by {@link #within(long, DeadlineAction)}: every {@link Request}
+ * sent from that thread (including the ones sent by nested calls) shares the remaining budget. Its timeouts are
+ * shortened to fit in it, retries that would end after it are not attempted, and once it has passed, requests fail
+ * immediately with a {@link Request.CantConnectException} caused by a {@link DeadlineExceededException}.</p>
+ *
+ * <p>The asynchronous methods of {@link Request} keep the deadline of the thread that called them. Background
+ * updates (see {@link net.wildfyre.api.Internal#submitUpdate}) do not.</p>
+ */
+public final class Deadline {
+
+    private static final ThreadLocal<Deadline> current = new ThreadLocal<>();
+
+    private final long expiresAt; // System.nanoTime()
+
+    private Deadline(long expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+
+    //region Getters
+
+    /**
+     * The time left.
+     * @return The time left in milliseconds, or 0 if the deadline has passed.
+     */
+    public long remainingMillis() {
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(expiresAt - System.nanoTime()));
+    }
+
+    /**
+     * Has this deadline passed?
+     * @return {@code true} if it has passed.
+     */
+    public boolean isExpired() {
+        return expiresAt - System.nanoTime() <= 0;
+    }
+
+    /**
+     * Throws if this deadline has passed.
+     * @param what what cannot be done anymore, for the message of the exception
+     * @throws DeadlineExceededException if the deadline has passed.
+     */
+    public void check(String what) throws DeadlineExceededException {
+        if (isExpired())
+            throw new DeadlineExceededException("The deadline has passed, cannot " + what + ".");
+    }
+
+    /**
+     * The earliest of two deadlines.
+     * @param other the other deadline, or {@code null}
+     * @return The deadline that comes first.
+     */
+    public Deadline min(Deadline other) {
+        return other == null || expiresAt - other.expiresAt <= 0 ? this : other;
+    }
+
+    @Override
+    public String toString() {
+        return "Deadline(remainingMillis=" + remainingMillis() + ")";
+    }
+
+    //endregion
+    //region Thread
+
+    /**
+     * The deadline of the current thread.
+     * @return The deadline, or {@code null} if the current thread has none.
+     */
+    public static Deadline current() {
+        return current.get();
+    }
+
+    /**
+     * Creates a deadline in the given time.
+     * @param millis the time left, in milliseconds
+     * @return The deadline.
+     */
+    public static Deadline after(long millis) {
+        return new Deadline(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    /**
+     * Runs an action that should be over in the given time. If the current thread already has an earlier deadline,
+     * it is kept.
+     * @param budgetMillis the time the action can take, in milliseconds
+     * @param action the action
+     * @return The result of the action.
+     * @throws E if the action fails.
+     */
+    public static <T, E extends Exception> T within(long budgetMillis, DeadlineAction<T, E> action) throws E {
+        return withDeadline(after(budgetMillis).min(current()), action);
+    }
+
+    /**
+     * Runs an action with the given deadline attached to the current thread (for example, the deadline of another
+     * thread), then restores the previous one.
+     * @param deadline the deadline, or {@code null} for none
+     * @param action the action
+     * @return The result of the action.
+     * @throws E if the action fails.
+     */
+    public static <T, E extends Exception> T withDeadline(Deadline deadline, DeadlineAction<T, E> action) throws E {
+        Deadline previous = current.get();
+        current.set(deadline);
+        try {
+            return action.run();
+        } finally {
+            if (previous == null) current.remove();
+            else current.set(previous);
+        }
+    }
+
+    /**
+     * Acquires a lock, waiting at most until the deadline of the current thread, if it has one.
+     * <p>This method is NOT part of the public API.</p>
+     * @param lock the lock
+     * @param what why the lock is needed, for the message of the exception
+     * @throws Request.CantConnectException if the deadline passes first (caused by a
+     * {@link DeadlineExceededException}), or if the thread is interrupted while waiting.
+     */
+    public static void lock(Lock lock, String what) throws Request.CantConnectException {
+        Deadline deadline = current();
+        if (deadline == null) {
+            lock.lock();
+            return;
+        }
+
+        try {
+            if (lock.tryLock(deadline.remainingMillis(), TimeUnit.MILLISECONDS))
+                return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new Request.CantConnectException("Interrupted while trying to " + what + ".", e);
+        }
+        throw new Request.CantConnectException("Cannot connect to the server.",
+            new DeadlineExceededException("The deadline passed while trying to " + what + "."));
+    }
+
+    //endregion
+
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http;
+
+/**
+ * An action that runs within a {@link Deadline}.
+ *
+ * @param <T> what the action returns
+ * @param <E> the exception the action can throw
+ * @see Deadline#within(long, DeadlineAction)
+ */
+@FunctionalInterface
+public interface DeadlineAction<T, E extends Exception> {
+
+    /**
+     * Runs the action.
+     * @return The result of the action.
+     * @throws E if the action fails.
+     */
+    T run() throws E;
+
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http
+
+import java.io.IOException
+import java.util.concurrent.CompletableFuture
+
+/**
+ * Fits each attempt in the [Deadline] of the current thread: fails it if the deadline has passed, and shortens its
+ * [Timeouts] to the time left otherwise.
+ *
+ * This class is NOT part of the public API.
+ */
+internal object DeadlineInterceptor : AsyncInterceptor {
+
+    @Throws(IOException::class)
+    override fun intercept(chain: Interceptor.Chain): RawResponse =
+        chain.proceed(fit(chain.request, Deadline.current()))
+
+    override fun interceptAsync(chain: InterceptorChain): CompletableFuture<RawResponse> =
+        chain.proceedAsync(fit(chain.request, chain.deadline))
+
+    @Throws(IOException::class)
+    private fun fit(request: RawRequest, deadline: Deadline?): RawRequest {
+        if (deadline == null)
+            return request
+
+        deadline.check("send ${request.method} ${request.url.path}")
+        return request.copy(timeouts = request.timeouts.atMost(deadline.remainingMillis()))
+    }
+}
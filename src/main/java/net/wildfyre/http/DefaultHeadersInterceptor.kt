@@ -0,0 +1,41 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http
+
+import java.util.concurrent.CompletableFuture
+
+/**
+ * Adds the headers every request sends: the `From` header, and those needed by the [Method].
+ *
+ * This class is NOT part of the public API.
+ */
+internal object DefaultHeadersInterceptor : AsyncInterceptor {
+
+    override fun intercept(chain: Interceptor.Chain): RawResponse = chain.proceed(withDefaults(chain.request))
+
+    override fun interceptAsync(chain: InterceptorChain): CompletableFuture<RawResponse> =
+        chain.proceedAsync(withDefaults(chain.request))
+
+    private fun withDefaults(request: RawRequest): RawRequest {
+        val headers = HashMap(request.headers)
+
+        headers.putIfAbsent("From", "lib-java")
+        request.method.prepare(headers)
+
+        return request.copy(headers = headers)
+    }
+}
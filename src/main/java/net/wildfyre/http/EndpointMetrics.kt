@@ -0,0 +1,58 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http
+
+import com.eclipsesource.json.JsonObject
+
+/**
+ * What happened to the requests of an endpoint, since the [MetricsRegistry] was created or reset.
+ *
+ * @param endpoint the method and the template of the address, for example `GET /areas/{area}/{post}/`
+ * @param requests the number of requests
+ * @param failures the number of requests that did not reach the server (see [Request.CantConnectException])
+ * @param errorsByStatus the number of requests refused by the server, by HTTP status (400 and above)
+ * @param bytesSent the number of bytes sent in bodies (when their size is known in advance)
+ * @param bytesReceived the number of bytes of response bodies read, after decompression
+ * @param latency the time between sending a request and receiving the headers of its response, retries included
+ */
+data class EndpointMetrics(
+    val endpoint: String,
+    val requests: Long,
+    val failures: Long,
+    val errorsByStatus: Map<Int, Long>,
+    val bytesSent: Long,
+    val bytesReceived: Long,
+    val latency: LatencySnapshot
+) {
+
+    /**
+     * The number of requests that were refused by the server, or did not reach it.
+     */
+    val errors: Long
+        get() = failures + errorsByStatus.values.sum()
+
+    /**
+     * Exports these metrics as JSON.
+     */
+    fun toJson(): JsonObject = JsonObject()
+        .add("requests", requests)
+        .add("failures", failures)
+        .add("errors", JsonObject().apply { errorsByStatus.toSortedMap().forEach { (k, v) -> add(k.toString(), v) } })
+        .add("bytesSent", bytesSent)
+        .add("bytesReceived", bytesReceived)
+        .add("latency", latency.toJson())
+}
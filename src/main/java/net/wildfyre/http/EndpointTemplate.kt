@@ -0,0 +1,53 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http
+
+import java.net.URLEncoder
+
+/**
+ * Turns the templates of addresses (for example, `/areas/{area}/{post}/`) into addresses, and back.
+ *
+ * This class is NOT part of the public API.
+ */
+internal object EndpointTemplate {
+
+    private val PLACEHOLDER = Regex("\\{[^/{}]*}")
+    private val NUMERIC_SEGMENT = Regex("(?<=/)\\d+(?=/|$)")
+
+    /**
+     * Replaces each placeholder of the template by the next parameter (URL-encoded).
+     */
+    fun expand(template: String, params: Array<out Any>): String {
+        var next = 0
+        val address = PLACEHOLDER.replace(template) {
+            require(next < params.size) { "Missing a value for ${it.value} in $template" }
+            URLEncoder.encode(params[next++].toString(), Request.CHARSET.name()).replace("+", "%20")
+        }
+        require(next == params.size) { "$template has $next placeholders, but ${params.size} values were given" }
+        return address
+    }
+
+    /**
+     * Guesses the template of an address, by replacing its numeric IDs: `/users/12/` becomes `/users/{id}/`.
+     */
+    fun of(address: String): String = NUMERIC_SEGMENT.replace(withoutQuery(address), "{id}")
+
+    /**
+     * Removes the query of an address (`?limit=10`), which does not change the endpoint.
+     */
+    fun withoutQuery(address: String): String = address.substringBefore('?')
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http
+
+import java.io.BufferedWriter
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+import java.io.OutputStreamWriter
+import java.util.concurrent.ArrayBlockingQueue
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * A [SpanExporter] that appends the spans to a file, one JSON object per line (see [Span.toJson]), on a background
+ * thread.
+ *
+ * [export] only offers the span to a bounded queue of [capacity] spans, which the background thread drains; it never
+ * waits for the disk. When the queue is full, the span is discarded and counted in [dropped], and the spans already
+ * queued are kept. The file is flushed whenever the queue is empty.
+ *
+ * @param file the file; it is created if needed, and spans are appended to it
+ * @param capacity how many spans can wait for the background thread
+ */
+class FileSpanExporter @JvmOverloads constructor(
+    val file: File,
+    val capacity: Int = 1024
+) : SpanExporter, AutoCloseable {
+
+    private val buffer = ArrayBlockingQueue<Span>(capacity)
+    private val droppedSpans = AtomicLong()
+
+    @Volatile private var running = true
+
+    private var failing = false
+
+    private val output = BufferedWriter(OutputStreamWriter(FileOutputStream(file, true), Request.CHARSET))
+
+    private val worker = Thread({
+        while (running || buffer.isNotEmpty()) {
+            val span = try {
+                buffer.poll(100, TimeUnit.MILLISECONDS)
+            } catch (e: InterruptedException) {
+                continue // Check whether we are still running
+            }
+
+            try {
+                if (span == null) {
+                    output.flush() // Nothing to do, a good time to write
+                    continue
+                }
+
+                output.write(span.toJson().toString())
+                output.newLine()
+                failing = false
+
+            } catch (e: IOException) {
+                if (!failing) // Once until a span is written again, instead of once per span
+                    RequestLog.warn(-1) { "FileSpanExporter: cannot write to $file ($e)" }
+                failing = true
+            }
+        }
+    }, "wildfyre-traces").apply {
+        isDaemon = true
+        start()
+    }
+
+    override fun export(span: Span) {
+        if (!buffer.offer(span))
+            droppedSpans.incrementAndGet()
+    }
+
+    /**
+     * How many spans were dropped because the queue was full.
+     */
+    val dropped: Long
+        get() = droppedSpans.get()
+
+    /**
+     * Stops the background thread, after the spans that are already queued are written, and closes the file.
+     */
+    override fun close() {
+        running = false
+        worker.interrupt()
+        worker.join()
+        output.close()
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http
+
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CompletionException
+
+/**
+ * Helpers to chain [CompletableFuture]s without wrapping their exceptions in [CompletionException]s.
+ *
+ * This file is NOT part of the public API.
+ */
+
+/**
+ * The exception that made a future fail, without the [CompletionException] that wraps it in dependent futures.
+ */
+internal fun unwrap(error: Throwable): Throwable =
+    if (error is CompletionException && error.cause != null) error.cause!! else error
+
+/**
+ * A future that already failed with [error].
+ */
+internal fun <T> failedFuture(error: Throwable): CompletableFuture<T> =
+    CompletableFuture<T>().apply { completeExceptionally(error) }
+
+/**
+ * Once this future completes, calls [action] with its value or its (unwrapped) exception. The returned future
+ * completes with the result of [action], or fails with what it throws.
+ */
+internal fun <A, B> CompletableFuture<A>.andThen(action: (A?, Throwable?) -> B): CompletableFuture<B> {
+    val result = CompletableFuture<B>()
+    whenComplete { value, error ->
+        try {
+            result.complete(action(value, error?.let(::unwrap)))
+        } catch (e: Throwable) {
+            result.completeExceptionally(e)
+        }
+    }
+    return result
+}
+
+/**
+ * Same as [andThen], when [action] returns a future: the returned future completes with it.
+ */
+internal fun <A, B> CompletableFuture<A>.andThenCompose(
+    action: (A?, Throwable?) -> CompletableFuture<B>
+): CompletableFuture<B> {
+    val result = CompletableFuture<B>()
+    whenComplete { value, error ->
+        val next = try {
+            action(value, error?.let(::unwrap))
+        } catch (e: Throwable) {
+            failedFuture<B>(e)
+        }
+
+        next.whenComplete { nextValue, nextError ->
+            if (nextError != null) result.completeExceptionally(unwrap(nextError))
+            else result.complete(nextValue)
+        }
+    }
+    return result
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http
+
+import java.io.IOException
+import java.io.InputStream
+import java.io.OutputStream
+
+//
+// Streams used to frame HTTP/1.1 messages on a kept-alive connection.
+// None of them close the underlying stream, since it belongs to the connection.
+//
+
+/**
+ * Reads a line terminated by `\n` (the `\r` is dropped), or returns `null` if the stream ended before any byte.
+ */
+@Throws(IOException::class)
+internal fun InputStream.readHttpLine(): String? {
+    val line = StringBuilder()
+    while (true) {
+        val c = read()
+        when {
+            c == -1 -> return if (line.isEmpty()) null else throw IOException("Unexpected end of stream: '$line'")
+            c == '\n'.toInt() -> return line.trimEnd('\r').toString()
+            line.length >= MAX_LINE_LENGTH -> throw IOException("The server sent a line that is too long.")
+            else -> line.append(c.toChar())
+        }
+    }
+}
+
+private const val MAX_LINE_LENGTH = 16 * 1024
+
+/**
+ * A body of known length.
+ */
+internal class FixedLengthInputStream(
+    private val input: InputStream,
+    private var remaining: Long
+) : InputStream() {
+
+    override fun read(): Int {
+        if (remaining <= 0) return -1
+        val b = input.read()
+        if (b == -1) throw IOException("The server closed the connection before the end of the body.")
+        remaining--
+        return b
+    }
+
+    override fun read(b: ByteArray, off: Int, len: Int): Int {
+        if (remaining <= 0) return -1
+        val read = input.read(b, off, minOf(len.toLong(), remaining).toInt())
+        if (read == -1) throw IOException("The server closed the connection before the end of the body.")
+        remaining -= read
+        return read
+    }
+
+    override fun available() = minOf(input.available().toLong(), remaining).toInt()
+
+    override fun close() {
+        // The underlying stream belongs to the connection
+    }
+}
+
+/**
+ * A body sent with `Transfer-Encoding: chunked`.
+ */
+internal class ChunkedInputStream(private val input: InputStream) : InputStream() {
+
+    private var chunkRemaining = 0L
+    private var finished = false
+
+    private fun nextChunk(): Boolean {
+        if (finished) return false
+
+        if (chunkRemaining == 0L) {
+            val line = input.readHttpLine() ?: throw IOException("Missing chunk size.")
+            val size = line.substringBefore(';').trim()
+            chunkRemaining = size.toLongOrNull(16) ?: throw IOException("Invalid chunk size: '$size'")
+
+            if (chunkRemaining == 0L) {
+                // Last chunk: skip the trailers
+                while (input.readHttpLine()?.isNotEmpty() == true) { /* ignored */ }
+                finished = true
+                return false
+            }
+        }
+        return true
+    }
+
+    private fun endOfChunk() {
+        if (chunkRemaining == 0L && input.readHttpLine() == null) // CRLF after the data
+            throw IOException("Unexpected end of stream after a chunk.")
+    }
+
+    override fun read(): Int {
+        if (!nextChunk()) return -1
+        val b = input.read()
+        if (b == -1) throw IOException("The server closed the connection in the middle of a chunk.")
+        chunkRemaining--
+        endOfChunk()
+        return b
+    }
+
+    override fun read(b: ByteArray, off: Int, len: Int): Int {
+        if (!nextChunk()) return -1
+        val read = input.read(b, off, minOf(len.toLong(), chunkRemaining).toInt())
+        if (read == -1) throw IOException("The server closed the connection in the middle of a chunk.")
+        chunkRemaining -= read
+        endOfChunk()
+        return read
+    }
+
+    override fun available() = if (finished) 0 else minOf(input.available().toLong(), chunkRemaining).toInt()
+
+    override fun close() {
+        // The underlying stream belongs to the connection
+    }
+}
+
+/**
+ * Calls [onEnd] exactly once: when the end of the body is reached (with `true`), or when this stream is closed
+ * before that (with `true` if the rest of the body could be skipped, `false` otherwise).
+ */
+internal class ReleasingInputStream(
+    private val body: InputStream,
+    private val onEnd: (Boolean) -> Unit
+) : InputStream() {
+
+    private var released = false
+
+    private fun release(fully: Boolean) {
+        if (!released) {
+            released = true
+            onEnd(fully)
+        }
+    }
+
+    override fun read(): Int = guard { body.read().also { if (it == -1) release(true) } }
+
+    override fun read(b: ByteArray, off: Int, len: Int): Int =
+        guard { body.read(b, off, len).also { if (it == -1) release(true) } }
+
+    override fun available() = if (released) 0 else body.available()
+
+    override fun close() {
+        if (released) return
+
+        // Skipping a small leftover is cheaper than opening a new connection
+        val skipped = try {
+            var total = 0L
+            val buffer = ByteArray(ConnectionPool.BUFFER_SIZE)
+            while (total < MAX_SKIP) {
+                val read = body.read(buffer)
+                if (read == -1) break
+                total += read
+            }
+            total < MAX_SKIP
+        } catch (e: IOException) {
+            false
+        }
+        release(skipped)
+    }
+
+    private inline fun guard(action: () -> Int): Int {
+        if (released) return -1
+        try {
+            return action()
+        } catch (e: IOException) {
+            release(false)
+            throw e
+        }
+    }
+
+    companion object {
+        private const val MAX_SKIP = 64 * 1024L
+    }
+}
+
+/**
+ * Prevents a [Body] from closing the connection it is written to.
+ */
+internal class NonClosingOutputStream(private val output: OutputStream) : OutputStream() {
+    override fun write(b: Int) = output.write(b)
+    override fun write(b: ByteArray, off: Int, len: Int) = output.write(b, off, len)
+    override fun flush() = output.flush()
+    override fun close() = output.flush()
+}
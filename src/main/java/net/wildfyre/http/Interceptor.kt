@@ -0,0 +1,68 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http
+
+import java.io.IOException
+
+/**
+ * A stage of the pipeline that sends a [Request].
+ *
+ * Interceptors are called in order, each one around the next: an interceptor receives the request, can rewrite it,
+ * passes it to the rest of the pipeline with [Chain.proceed] (possibly several times, to retry it), and can rewrite
+ * or observe the response. It can also answer without calling [Chain.proceed] at all (for example, from a cache).
+ *
+ * The pipeline of a request is:
+ *  1. the interceptors added with [Request.addInterceptor], then those of [Request.interceptors],
+ *  2. the built-in stages: default headers, logging, metrics, retries, circuit breaker, concurrency limits, deadline,
+ *  3. the interceptors of [Request.networkInterceptors], which are called for every attempt,
+ *  4. the [Transport].
+ *
+ * The time spent in each stage is recorded in [Request.timings].
+ */
+interface Interceptor {
+
+    /**
+     * Handles a request.
+     *
+     * @param chain the request, and the rest of the pipeline
+     * @return The response.
+     * @throws IOException if the server cannot be reached
+     */
+    @Throws(IOException::class)
+    fun intercept(chain: Chain): RawResponse
+
+    /**
+     * The rest of the pipeline, seen from an [Interceptor].
+     */
+    interface Chain {
+
+        /**
+         * The request, as received by this stage.
+         */
+        val request: RawRequest
+
+        /**
+         * Sends a request through the rest of the pipeline.
+         *
+         * @param request the request, which can differ from [Chain.request]
+         * @return The response.
+         * @throws IOException if the server cannot be reached
+         */
+        @Throws(IOException::class)
+        fun proceed(request: RawRequest): RawResponse
+    }
+}
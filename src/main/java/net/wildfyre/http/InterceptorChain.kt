@@ -0,0 +1,143 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http
+
+import java.io.IOException
+import java.util.concurrent.CompletableFuture
+
+/**
+ * Runs the [Interceptor]s of a request, in order, and records the time spent in each of them.
+ *
+ * This class is NOT part of the public API.
+ *
+ * @param stages the interceptors and their names; the last one should not call [proceed]
+ * @param timings where the time spent in each stage is added
+ * @param deadline the [Deadline] of the thread that sent the request, for the asynchronous stages
+ * @param span the current [Span] of the thread that sent the request, for the asynchronous stages
+ */
+internal class InterceptorChain(
+    private val stages: List<Pair<String, Interceptor>>,
+    private val index: Int,
+    override val request: RawRequest,
+    private val timings: StageTimings,
+    val deadline: Deadline? = null,
+    val span: Span? = null
+) : Interceptor.Chain {
+
+    /**
+     * The total time spent in [proceed] (which includes the time spent in the stages after this one).
+     */
+    @Volatile
+    private var elapsedNanos = 0L
+
+    @Throws(IOException::class)
+    override fun proceed(request: RawRequest): RawResponse {
+        check(index < stages.size) { "The last stage of the pipeline should not call proceed()" }
+
+        val (name, interceptor) = stages[index]
+        val next = InterceptorChain(stages, index + 1, request, timings, deadline, span)
+
+        timings.add(name, 0) // So the stages are listed in the order they start
+        val start = System.nanoTime()
+        try {
+            return interceptor.intercept(next)
+
+        } finally {
+            val elapsed = System.nanoTime() - start
+            elapsedNanos += elapsed
+            timings.add(name, elapsed - next.elapsedNanos)
+        }
+    }
+
+    /**
+     * Same as [proceed], without blocking the current thread (see [AsyncInterceptor]).
+     *
+     * @param request the request, which can differ from [Chain.request][Interceptor.Chain.request]
+     * @return The response, or a future that fails with an [IOException] if the server cannot be reached.
+     */
+    fun proceedAsync(request: RawRequest): CompletableFuture<RawResponse> {
+        check(index < stages.size) { "The last stage of the pipeline should not call proceed()" }
+
+        val (name, interceptor) = stages[index]
+        val next = InterceptorChain(stages, index + 1, request, timings, deadline, span)
+
+        timings.add(name, 0)
+        val start = System.nanoTime()
+        val response = if (interceptor is AsyncInterceptor)
+            try {
+                inContext { interceptor.interceptAsync(next) }
+            } catch (e: Throwable) {
+                failedFuture<RawResponse>(e)
+            }
+        else
+            blocking(interceptor, next)
+
+        return response.whenComplete { _, _ ->
+            val elapsed = System.nanoTime() - start
+            elapsedNanos += elapsed
+            timings.add(name, elapsed - next.elapsedNanos)
+        }
+    }
+
+    /**
+     * Runs an interceptor that can only block on the [TransportExecutor], with the context of the caller.
+     */
+    private fun blocking(interceptor: Interceptor, next: InterceptorChain): CompletableFuture<RawResponse> {
+        val result = CompletableFuture<RawResponse>()
+
+        TransportExecutor.execute {
+            try {
+                result.complete(inContext { interceptor.intercept(next) })
+            } catch (e: Throwable) {
+                result.completeExceptionally(e)
+            }
+        }
+
+        return result
+    }
+
+    /**
+     * Runs [action] with the [deadline] and the [span] of the thread that sent the request.
+     */
+    private fun <T> inContext(action: () -> T): T =
+        Deadline.withDeadline(deadline, DeadlineAction<T, IOException> {
+            Tracing.withCurrent(span, TracedAction<T, IOException> { action() })
+        })
+
+    companion object {
+
+        /**
+         * Sends a request through a pipeline.
+         */
+        @Throws(IOException::class)
+        fun execute(stages: List<Pair<String, Interceptor>>, request: RawRequest, timings: StageTimings) =
+            InterceptorChain(stages, 0, request, timings).proceed(request)
+
+        /**
+         * Sends a request through a pipeline without blocking the current thread; the stages see the [Deadline] and
+         * the current [Span] of this thread.
+         */
+        fun executeAsync(stages: List<Pair<String, Interceptor>>, request: RawRequest, timings: StageTimings) =
+            InterceptorChain(stages, 0, request, timings, Deadline.current(), Tracing.current()).proceedAsync(request)
+
+        /**
+         * The name of an interceptor in the [StageTimings].
+         */
+        fun nameOf(interceptor: Interceptor): String =
+            interceptor.javaClass.simpleName.takeIf { it.isNotEmpty() } ?: interceptor.javaClass.name
+    }
+}
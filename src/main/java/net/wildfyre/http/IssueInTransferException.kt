@@ -21,40 +21,109 @@ import com.eclipsesource.json.JsonValue
 import com.eclipsesource.json.ParseException
 import com.eclipsesource.json.WriterConfig
 import net.wildfyre.descriptors.NoSuchEntityException
+import java.io.ByteArrayOutputStream
 import java.io.IOException
 import java.io.InputStream
-import java.io.InputStreamReader
+import java.util.regex.Pattern
 
 /**
  * Signifies that the server refused the data. More information about the problem can be found using [json].
+ *
+ * The body of the response is captured when the exception is created (at most [MAX_BODY_SIZE] bytes), but only
+ * parsed when [json] or [message] is used; the usual `{"detail": "..."}` answers are recognised without parsing (see
+ * [detail]).
  */
 class IssueInTransferException : IOException {
+
     /**
-     * The JSON data sent by the server (if any).
+     * The HTTP status of the response, or -1 if the issue is not a response of the server.
      */
-    var json: JsonValue? = null
+    val status: Int
+
+    private var body: ByteArray? = null
+
+    /**
+     * `true` if the body of the response was larger than [MAX_BODY_SIZE], and was truncated.
+     */
+    var isTruncated = false
         private set
 
+    /**
+     * The JSON data sent by the server (if any).
+     */
+    val json: JsonValue? by lazy {
+        body?.let {
+            try {
+                Json.parse(String(it, Request.CHARSET))
+            } catch (ex: ParseException) {
+                Json.value("Cannot read JSON.")
+            }
+        }
+    }
+
+    /**
+     * The `detail` field of the [JSON data][json] sent by the server, or `null` if there is none.
+     */
+    val detail: String? by lazy {
+        val text = body?.let { String(it, Request.CHARSET) } ?: return@lazy null
+
+        val simple = SIMPLE_DETAIL.matcher(text)
+        if (simple.matches())
+            simple.group(1) // The common case, no need to build a JSON tree
+        else
+            json?.takeIf { it.isObject }?.asObject()?.get("detail")?.takeIf { it.isString }?.asString()
+    }
+
+    /**
+     * `true` if the server answered that the requested entity does not exist.
+     */
+    val isNotFound: Boolean
+        get() = (status == -1 || status == HTTP_NOT_FOUND) && detail == NOT_FOUND
+
     /**
      * Creates a new IssueInTransferException.
      * @param msg the message
-     * @param input the response from the server, that will be parsed as JSON if possible
+     * @param status the HTTP status of the response
+     * @param input the response from the server, that will be parsed as JSON if needed
      */
-    constructor(msg: String, input: InputStream) : super(msg) {
-        json = try {
-            Json.parse(InputStreamReader(input, Request.CHARSET))
-        } catch (ex: ParseException) {
-            Json.value("Cannot read JSON.")
+    constructor(msg: String, status: Int, input: InputStream) : super(msg) {
+        this.status = status
+
+        val captured = ByteArrayOutputStream()
+        var truncated = false
+        input.use {
+            BufferPool.use { buffer ->
+                while (true) {
+                    val read = it.read(buffer, 0, minOf(buffer.size, MAX_BODY_SIZE + 1 - captured.size()))
+                    if (read <= 0) break
+                    captured.write(buffer, 0, read)
+
+                    if (captured.size() > MAX_BODY_SIZE) {
+                        truncated = true
+                        break
+                    }
+                }
+            }
         }
+
+        body = captured.toByteArray().let { if (truncated) it.copyOf(MAX_BODY_SIZE) else it }
+        isTruncated = truncated
     }
 
+    /**
+     * Creates a new IssueInTransferException.
+     * @param msg the message
+     * @param input the response from the server, that will be parsed as JSON if needed
+     */
+    constructor(msg: String, input: InputStream) : this(msg, -1, input)
+
     /**
      * Creates a new IssueInTransferException.
      * @param msg the message
      * @param cause what caused the issue
      */
     constructor(msg: String, cause: Exception) : super(msg, cause) {
-        json = null
+        status = -1
     }
 
     /**
@@ -69,12 +138,10 @@ class IssueInTransferException : IOException {
     @Throws(NoSuchEntityException::class)
     @JvmOverloads
     fun ifDetailsAre(detail: String, action: ExceptionRunnable, otherwiseDo: ExceptionRunnable? = null) {
-        json!!.let {
-            if (it.asObject()["detail"]?.asString() == detail)
-                action.run()
-            else
-                otherwiseDo?.run()
-        }
+        if (this.detail == detail)
+            action.run()
+        else
+            otherwiseDo?.run()
     }
 
     /**
@@ -92,7 +159,27 @@ class IssueInTransferException : IOException {
 
     override val message: String?
         get() = if (json != null)
-            "${super.message}\n${json!!.toString(WriterConfig.PRETTY_PRINT)}"
+            "${super.message}\n${json!!.toString(WriterConfig.PRETTY_PRINT)}" + if (isTruncated) "\n(truncated)" else ""
         else
             super.message
+
+    companion object {
+
+        /**
+         * The maximum number of bytes of the body of a response that are kept.
+         */
+        const val MAX_BODY_SIZE = 64 * 1024
+
+        /**
+         * The detail sent by the server when an entity does not exist.
+         */
+        const val NOT_FOUND = "Not found."
+
+        private const val HTTP_NOT_FOUND = 404
+
+        /**
+         * A JSON object with a single `detail` string without escape sequences, such as `{"detail": "Not found."}`.
+         */
+        private val SIMPLE_DETAIL = Pattern.compile("\\s*\\{\\s*\"detail\"\\s*:\\s*\"([^\"\\\\]*)\"\\s*}\\s*")
+    }
 }
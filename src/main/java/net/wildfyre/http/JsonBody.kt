@@ -0,0 +1,50 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http
+
+import com.eclipsesource.json.JsonValue
+import java.io.OutputStream
+
+/**
+ * A body made of JSON data, encoded with [Request.CHARSET].
+ *
+ * The data is encoded once, when the body is created (see [encode]), so its size is known and transports can send it
+ * with a fixed length instead of buffering it.
+ */
+internal class JsonBody(json: JsonValue) : Body {
+
+    private val bytes = encode(json)
+
+    override val contentType: String
+        get() = DataType.JSON.toString()
+
+    override val contentLength: Long
+        get() = bytes.size.toLong()
+
+    override fun writeTo(output: OutputStream) = output.write(bytes)
+
+    companion object {
+
+        /**
+         * Encodes JSON data to UTF-8, directly into pooled buffers (see [Utf8Writer]).
+         */
+        fun encode(json: JsonValue): ByteArray = Utf8Writer().use { writer ->
+            json.writeTo(writer)
+            writer.toByteArray()
+        }
+    }
+}
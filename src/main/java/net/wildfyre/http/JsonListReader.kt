@@ -0,0 +1,388 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http
+
+import java.io.Closeable
+import java.io.IOException
+import java.io.InputStream
+import java.io.InputStreamReader
+import java.io.Reader
+
+/**
+ * Reads a list of JSON objects one element at a time, without building a JSON tree.
+ *
+ * Paginated endpoints answer with an object that contains the list in a field (by default `results`):
+ * ```
+ * { "count": 2, "next": null, "results": [ { "id": 1, ... }, { "id": 2, ... } ] }
+ * ```
+ * This class walks that list, and only keeps the fields that are requested; everything else is skipped as it is
+ * read. Compared to [com.eclipsesource.json.Json.parse], memory usage does not depend on the size of the response.
+ *
+ * Usage:
+ * ```
+ * val fields = arrayOf("id", "text")
+ * val values = arrayOfNulls<String>(fields.size)
+ * JsonListReader(input).use { reader ->
+ *     while (reader.next(fields, values))
+ *         println("${values[0]}: ${values[1]}")
+ * }
+ * ```
+ *
+ * Scalar values are returned as text: strings are unescaped, numbers and booleans are returned as written by the
+ * server, and `null` is returned as `null`. Objects and arrays are returned as raw JSON text.
+ *
+ * @param input the response of the server
+ * @param listField the name of the field that contains the list
+ */
+class JsonListReader @JvmOverloads constructor(
+    input: InputStream,
+    private val listField: String = "results"
+) : Closeable {
+
+    //region State
+
+    private val reader: Reader = InputStreamReader(input, Request.CHARSET)
+    private val buffer = CharArray(4096)
+    private var position = 0
+    private var limit = 0
+
+    private val key = StringBuilder(16)
+
+    private var state = STATE_START
+
+    //endregion
+    //region Public API
+
+    /**
+     * Reads the next element of the list.
+     *
+     * @param fields the names of the fields that should be read
+     * @param values where the value of each field is stored (same index as in [fields]); fields that are missing
+     * from the element are set to `null`
+     * @return `true` if an element was read, `false` if the end of the list was reached (or if there is no list).
+     * @throws IOException if the stream cannot be read, or if it is not valid JSON.
+     */
+    @Throws(IOException::class)
+    fun next(fields: Array<out String>, values: Array<String?>): Boolean {
+        require(values.size >= fields.size) {
+            "There should be a slot for every field: ${values.size} < ${fields.size}"
+        }
+
+        if (state == STATE_START)
+            seekList()
+
+        if (state == STATE_END)
+            return false
+
+        var c = skipWhitespace()
+        if (state == STATE_NEXT) {
+            when (c) {
+                ',' -> c = skipWhitespace(1)
+                ']' -> { state = STATE_END; return false }
+                else -> throw unexpected(c, "',' or ']'")
+            }
+        } else if (c == ']') { // Empty list
+            state = STATE_END
+            return false
+        }
+        state = STATE_NEXT
+
+        values.fill(null, 0, fields.size)
+
+        if (c != '{') { // Not an object, it has no fields
+            skipValue(null)
+            return true
+        }
+        position++
+
+        c = skipWhitespace()
+        if (c == '}') {
+            position++
+            return true
+        }
+
+        while (true) {
+            readKey()
+            expect(':')
+
+            val index = indexOfKey(fields)
+            if (index != -1)
+                values[index] = readValue()
+            else
+                skipValue(null)
+
+            when (val separator = skipWhitespace()) {
+                ',' -> position++
+                '}' -> { position++; return true }
+                else -> throw unexpected(separator, "',' or '}'")
+            }
+            skipWhitespace()
+        }
+    }
+
+    /**
+     * Reads a single field of every remaining element of the list.
+     *
+     * Elements in which the field is missing or `null` are ignored.
+     *
+     * @param field the name of the field
+     * @return The values of the field, in the order of the list.
+     */
+    @Throws(IOException::class)
+    fun readField(field: String): List<String> {
+        val fields = arrayOf(field)
+        val values = arrayOfNulls<String>(1)
+        val result = ArrayList<String>()
+
+        while (next(fields, values))
+            values[0]?.let { result.add(it) }
+
+        return result
+    }
+
+    override fun close() = reader.close()
+
+    //endregion
+    //region Navigation
+
+    /**
+     * Reads the start of the top-level object, until the beginning of the list.
+     */
+    private fun seekList() {
+        expect('{')
+
+        if (skipWhitespace() == '}') {
+            state = STATE_END
+            return
+        }
+
+        while (true) {
+            readKey()
+            expect(':')
+
+            if (listField.contentEquals(key)) {
+                when (val c = skipWhitespace()) {
+                    '[' -> { position++; state = STATE_FIRST; return }
+                    'n' -> { skipValue(null) } // null list
+                    else -> throw unexpected(c, "'['")
+                }
+            } else
+                skipValue(null)
+
+            when (val c = skipWhitespace()) {
+                ',' -> position++
+                '}' -> { state = STATE_END; return }
+                else -> throw unexpected(c, "',' or '}'")
+            }
+            skipWhitespace()
+        }
+    }
+
+    private fun indexOfKey(fields: Array<out String>): Int {
+        for (i in fields.indices)
+            if (fields[i].contentEquals(key))
+                return i
+        return -1
+    }
+
+    //endregion
+    //region Values
+
+    private fun readKey() {
+        val c = skipWhitespace()
+        if (c != '"') throw unexpected(c, "a key")
+        position++
+
+        key.setLength(0)
+        readString(key)
+    }
+
+    /**
+     * Reads the value of a requested field.
+     */
+    private fun readValue(): String? = when (val c = skipWhitespace()) {
+        '"' -> {
+            position++
+            val value = StringBuilder()
+            readString(value)
+            value.toString()
+        }
+        '{', '[' -> StringBuilder().also { skipValue(it) }.toString()
+        else -> {
+            val literal = StringBuilder(20)
+            readLiteral(literal)
+            literal.toString().takeUnless { c == 'n' && it == "null" }
+        }
+    }
+
+    /**
+     * Skips a value, and copies it in [copy] if it is not `null`.
+     */
+    private fun skipValue(copy: StringBuilder?) {
+        var depth = 0
+
+        do {
+            val c = skipWhitespace()
+            when (c) {
+                '{', '[' -> { depth++; position++; copy?.append(c) }
+                '}', ']' -> { depth--; position++; copy?.append(c) }
+                ',', ':' -> { position++; copy?.append(c) }
+                '"' -> {
+                    position++
+                    if (copy == null) skipString()
+                    else {
+                        copy.append('"')
+                        copyRawString(copy)
+                    }
+                }
+                else -> readLiteral(copy)
+            }
+        } while (depth > 0)
+    }
+
+    /**
+     * Reads a number, `true`, `false` or `null`.
+     */
+    private fun readLiteral(into: StringBuilder?) {
+        var read = 0
+        while (true) {
+            if (position == limit && !fill()) break
+            val c = buffer[position]
+            if (c == ',' || c == '}' || c == ']' || c.isWhitespace()) break
+            into?.append(c)
+            position++
+            read++
+        }
+
+        if (read == 0)
+            throw unexpected(if (position < limit) buffer[position] else null, "a value")
+    }
+
+    /**
+     * Reads the content of a string (the opening quote is already consumed), and unescapes it.
+     */
+    private fun readString(into: StringBuilder) {
+        while (true) {
+            val c = nextChar()
+            when (c) {
+                '"' -> return
+                '\\' -> when (val escaped = nextChar()) {
+                    '"', '\\', '/' -> into.append(escaped)
+                    'b' -> into.append('\b')
+                    'f' -> into.append('\u000C')
+                    'n' -> into.append('\n')
+                    'r' -> into.append('\r')
+                    't' -> into.append('\t')
+                    'u' -> {
+                        var code = 0
+                        repeat(4) { code = code * 16 + hex(nextChar()) }
+                        into.append(code.toChar())
+                    }
+                    else -> throw unexpected(escaped, "an escape sequence")
+                }
+                else -> into.append(c)
+            }
+        }
+    }
+
+    /**
+     * Copies a string as-is (the opening quote is already consumed, the closing one is copied).
+     */
+    private fun copyRawString(into: StringBuilder) {
+        while (true) {
+            val c = nextChar()
+            into.append(c)
+            when (c) {
+                '"' -> return
+                '\\' -> into.append(nextChar())
+            }
+        }
+    }
+
+    private fun skipString() {
+        while (true) {
+            if (position == limit && !fill())
+                throw IOException("Unexpected end of the JSON data, in a string.")
+
+            // Fast path: scan the buffer without copying anything
+            while (position < limit) {
+                when (buffer[position++]) {
+                    '"' -> return
+                    '\\' -> nextChar()
+                }
+            }
+        }
+    }
+
+    private fun hex(c: Char): Int = when (c) {
+        in '0'..'9' -> c - '0'
+        in 'a'..'f' -> c - 'a' + 10
+        in 'A'..'F' -> c - 'A' + 10
+        else -> throw unexpected(c, "an hexadecimal digit")
+    }
+
+    //endregion
+    //region Buffer
+
+    private fun fill(): Boolean {
+        limit = reader.read(buffer)
+        position = 0
+        if (limit == -1) {
+            limit = 0
+            return false
+        }
+        return true
+    }
+
+    private fun nextChar(): Char {
+        if (position == limit && !fill())
+            throw IOException("Unexpected end of the JSON data.")
+        return buffer[position++]
+    }
+
+    /**
+     * Skips [skip] characters then any whitespace, and returns the next character without consuming it.
+     */
+    private fun skipWhitespace(skip: Int = 0): Char {
+        position += skip
+        while (true) {
+            if (position == limit && !fill())
+                throw IOException("Unexpected end of the JSON data.")
+            val c = buffer[position]
+            if (!c.isWhitespace()) return c
+            position++
+        }
+    }
+
+    private fun expect(expected: Char) {
+        val c = skipWhitespace()
+        if (c != expected) throw unexpected(c, "'$expected'")
+        position++
+    }
+
+    private fun unexpected(found: Char?, expected: String) =
+        IOException("Invalid JSON data: expected $expected but found ${found?.let { "'$it'" } ?: "the end"}.")
+
+    //endregion
+
+    companion object {
+        private const val STATE_START = 0
+        private const val STATE_FIRST = 1
+        private const val STATE_NEXT = 2
+        private const val STATE_END = 3
+    }
+}
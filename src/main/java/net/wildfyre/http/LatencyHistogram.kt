@@ -0,0 +1,101 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http
+
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicLongArray
+
+/**
+ * Counts latencies in buckets of exponentially growing width, so percentiles can be estimated with a fixed amount of
+ * memory and without locking.
+ *
+ * Latencies are recorded in microseconds; each power of two is split in [SUB_BUCKETS] buckets, so the estimated
+ * percentiles are at most about 6% above the real ones.
+ *
+ * This class is NOT part of the public API.
+ */
+internal class LatencyHistogram {
+
+    private val counts = AtomicLongArray(BUCKETS)
+    private val total = AtomicLong()
+    private val sumMicros = AtomicLong()
+    private val maxMicros = AtomicLong()
+
+    fun record(nanos: Long) {
+        val micros = maxOf(0, TimeUnit.NANOSECONDS.toMicros(nanos))
+
+        counts.incrementAndGet(indexOf(micros))
+        total.incrementAndGet()
+        sumMicros.addAndGet(micros)
+
+        var max = maxMicros.get()
+        while (micros > max && !maxMicros.compareAndSet(max, micros))
+            max = maxMicros.get()
+    }
+
+    fun snapshot(): LatencySnapshot {
+        val copy = LongArray(BUCKETS) { counts.get(it) }
+        val count = copy.sum() // Consistent with the buckets, unlike 'total'
+        val max = maxMicros.get()
+
+        fun percentile(quantile: Double): Long {
+            if (count == 0L) return 0
+            val rank = maxOf(1, Math.ceil(quantile * count).toLong())
+            var seen = 0L
+            for (i in copy.indices) {
+                seen += copy[i]
+                if (seen >= rank)
+                    return minOf(upperBoundOf(i), max)
+            }
+            return max
+        }
+
+        return LatencySnapshot(
+            count,
+            percentile(0.5),
+            percentile(0.9),
+            percentile(0.99),
+            max,
+            total.get().let { if (it == 0L) 0 else sumMicros.get() / it }
+        )
+    }
+
+    companion object {
+        private const val SUB_BITS = 4
+        private const val SUB_BUCKETS = 1 shl SUB_BITS
+        private const val BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS
+
+        fun indexOf(micros: Long): Int {
+            if (micros < SUB_BUCKETS)
+                return micros.toInt()
+
+            val log = 63 - java.lang.Long.numberOfLeadingZeros(micros)
+            val mantissa = (micros ushr (log - SUB_BITS)).toInt() // Between SUB_BUCKETS and 2 * SUB_BUCKETS - 1
+            return (log - SUB_BITS + 1) * SUB_BUCKETS + mantissa - SUB_BUCKETS
+        }
+
+        fun upperBoundOf(index: Int): Long {
+            if (index < SUB_BUCKETS)
+                return index.toLong()
+
+            val log = index / SUB_BUCKETS + SUB_BITS - 1
+            val mantissa = (index % SUB_BUCKETS + SUB_BUCKETS).toLong()
+            return ((mantissa + 1) shl (log - SUB_BITS)) - 1
+        }
+    }
+}
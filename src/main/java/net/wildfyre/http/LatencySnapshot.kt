@@ -0,0 +1,52 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http
+
+import com.eclipsesource.json.JsonObject
+
+/**
+ * The distribution of the latencies of an endpoint, in microseconds.
+ *
+ * Percentiles are estimated (see [MetricsRegistry]): they can be slightly above the real values, never below.
+ *
+ * @param count the number of latencies recorded
+ * @param p50Micros the median latency
+ * @param p90Micros the latency under which 90% of the requests were answered
+ * @param p99Micros the latency under which 99% of the requests were answered
+ * @param maxMicros the highest latency
+ * @param meanMicros the average latency
+ */
+data class LatencySnapshot(
+    val count: Long,
+    val p50Micros: Long,
+    val p90Micros: Long,
+    val p99Micros: Long,
+    val maxMicros: Long,
+    val meanMicros: Long
+) {
+
+    /**
+     * Exports this snapshot as JSON, with the latencies in milliseconds.
+     */
+    fun toJson(): JsonObject = JsonObject()
+        .add("count", count)
+        .add("p50", p50Micros / 1000.0)
+        .add("p90", p90Micros / 1000.0)
+        .add("p99", p99Micros / 1000.0)
+        .add("max", maxMicros / 1000.0)
+        .add("mean", meanMicros / 1000.0)
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http
+
+import java.io.IOException
+import java.io.InterruptedIOException
+import java.util.concurrent.CompletableFuture
+
+/**
+ * Waits for the [RateLimiter] and the [ConcurrencyLimiter] before sending a request.
+ *
+ * Asynchronous requests chain on the permit futures (see [ConcurrencyLimiter.acquireAsync]) instead of waiting on a
+ * thread.
+ *
+ * This class is NOT part of the public API.
+ */
+internal class LimitInterceptor(
+    private val limiter: ConcurrencyLimiter?,
+    private val rateLimiter: RateLimiter?
+) : AsyncInterceptor {
+
+    @Throws(IOException::class)
+    override fun intercept(chain: Interceptor.Chain): RawResponse {
+        val deadline = Deadline.current()
+
+        val permit = try {
+            rateLimiter?.acquire(timeout(deadline))
+            limiter?.acquire(timeout(deadline))
+
+        } catch (e: InterruptedIOException) {
+            if (deadline == null || Thread.currentThread().isInterrupted) throw e
+            throw tooLate(e)
+        }
+
+        if (permit == null)
+            return chain.proceed(chain.request)
+
+        val response = try {
+            chain.proceed(chain.request)
+        } catch (e: Throwable) {
+            release(permit, e)
+            throw e
+        }
+        return response.also { permit.onResponse(it.status) }
+    }
+
+    override fun interceptAsync(chain: InterceptorChain): CompletableFuture<RawResponse> {
+        val deadline = chain.deadline
+        val rate = rateLimiter?.acquireAsync(timeout(deadline)) ?: CompletableFuture.completedFuture(Unit)
+
+        val permit = rate.thenCompose {
+            limiter?.acquireAsync(timeout(deadline)) ?: CompletableFuture.completedFuture(null)
+        }
+
+        return permit.andThenCompose<ConcurrencyLimiter.Permit?, RawResponse> { granted, error ->
+            if (error is InterruptedIOException && deadline != null)
+                throw tooLate(error)
+            else if (error != null)
+                throw error
+
+            if (granted == null)
+                chain.proceedAsync(chain.request)
+            else
+                chain.proceedAsync(chain.request).andThen { response, failure ->
+                    if (failure != null) {
+                        release(granted, failure)
+                        throw failure
+                    }
+                    response!!.also { granted.onResponse(it.status) }
+                }
+        }
+    }
+
+    /**
+     * How long to wait for the limiters: until the [deadline], or forever (0) if there is none.
+     */
+    private fun timeout(deadline: Deadline?) = if (deadline == null) 0 else maxOf(1, deadline.remainingMillis())
+
+    private fun tooLate(e: InterruptedIOException) =
+        DeadlineExceededException("The deadline passed while waiting to send the request: ${e.message}")
+
+    private fun release(permit: ConcurrencyLimiter.Permit, error: Throwable) =
+        if (error is IOException) permit.onDropped() else permit.ignore()
+}
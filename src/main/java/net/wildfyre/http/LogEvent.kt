@@ -0,0 +1,37 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http
+
+/**
+ * Something that happened while a [Request] was executed.
+ *
+ * @param timestamp when it happened, as given by [System.currentTimeMillis]
+ * @param level how important it is
+ * @param requestId the ID of the request it concerns (IDs are unique within the process), or `-1` if it does not
+ * concern a single request
+ * @param thread the name of the thread that executed the request
+ * @param message what happened
+ */
+data class LogEvent(
+    val timestamp: Long,
+    val level: LogLevel,
+    val requestId: Int,
+    val thread: String,
+    val message: String
+) {
+    override fun toString() = "$timestamp $level [$thread] #$requestId $message"
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http
+
+/**
+ * How important a [LogEvent] is. Levels are declared from the most to the least important.
+ *
+ * @see RequestLog.level
+ */
+enum class LogLevel {
+    /** Nothing is logged. */
+    OFF,
+
+    /** Requests that failed. */
+    ERROR,
+
+    /** Requests that were refused by the server. */
+    WARN,
+
+    /** One line per request. */
+    INFO,
+
+    /** The steps of every request. */
+    DEBUG,
+
+    /** Everything, including the headers (secrets are redacted). */
+    TRACE
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http
+
+import java.io.PrintStream
+
+/**
+ * Where the [LogEvent]s are sent.
+ *
+ * Sinks are called from the thread that executes the request; sinks that do I/O should be wrapped in an
+ * [AsyncLogSink] so they do not slow the requests down.
+ *
+ * @see RequestLog.sink
+ */
+interface LogSink {
+
+    /**
+     * Handles an event.
+     * @param event the event
+     */
+    fun accept(event: LogEvent)
+
+    /**
+     * A sink that prints every event on its own line.
+     * @param output where the events are printed
+     */
+    class Printer(private val output: PrintStream) : LogSink {
+        override fun accept(event: LogEvent) = output.println(event)
+    }
+}
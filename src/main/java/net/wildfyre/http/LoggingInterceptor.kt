@@ -0,0 +1,57 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http
+
+import java.util.concurrent.CompletableFuture
+
+/**
+ * Logs the requests and the status of their response (see [RequestLog]).
+ *
+ * This class is NOT part of the public API.
+ *
+ * @param id the number of the request in the logs
+ */
+internal class LoggingInterceptor(private val id: Int) : AsyncInterceptor {
+
+    override fun intercept(chain: Interceptor.Chain): RawResponse {
+        logRequest(chain.request)
+        return chain.proceed(chain.request).also { logResponse(chain.request, it) }
+    }
+
+    override fun interceptAsync(chain: InterceptorChain): CompletableFuture<RawResponse> {
+        logRequest(chain.request)
+        return chain.proceedAsync(chain.request).andThen { response, error ->
+            if (error != null) throw error
+            response!!.also { logResponse(chain.request, it) }
+        }
+    }
+
+    private fun logRequest(request: RawRequest) {
+        RequestLog.debug(id) { "${request.method} ${request.url} HTTP/1.1" }
+
+        if (RequestLog.isEnabled(LogLevel.TRACE)) {
+            for ((header, value) in request.headers)
+                RequestLog.trace(id) { "$header: ${RequestLog.redact(header, value)}" }
+            request.body?.let { RequestLog.trace(id) { "Content-Type: ${it.contentType}" } }
+        }
+    }
+
+    private fun logResponse(request: RawRequest, response: RawResponse) {
+        RequestLog.debug(id) { "Done sending." }
+        RequestLog.info(id) { "${request.method} ${request.url.path}: HTTP ${response.status}" }
+    }
+}
@@ -16,50 +16,56 @@
 
 package net.wildfyre.http
 
-import java.net.HttpURLConnection
-import java.net.ProtocolException
-
 /**
  * The HTTP method used to connect to the server.
  *
  * This class is NOT part of the public API.
  */
-enum class Method {
+enum class Method(
+    /**
+     * Can this method be sent several times without changing the result? Only these methods are retried after a
+     * failure (see [RetryPolicy]).
+     */
+    val isIdempotent: Boolean
+) {
     /** Change parts of the resource.  */
-    PATCH {
-        override fun setMethod(conn: HttpURLConnection, req: Request) {
-            PUT.setMethod(conn, req)
+    PATCH(false) {
+        // HttpURLConnection does not support PATCH, so it is tunneled through PUT.
+        override val verb: String
+            get() = PUT.verb
 
-            req.headers["X-HTTP-Method-Override"] = name
+        override fun prepare(headers: MutableMap<String, String>) {
+            headers["X-HTTP-Method-Override"] = name
         }
     },
 
     /** Get a resource. */
-    GET,
+    GET(true),
 
     /** Put a new resource. */
-    PUT,
+    PUT(true),
 
     /** Get the list of options from the request. */
-    OPTIONS,
+    OPTIONS(true),
 
     /** Delete a resource. */
-    DELETE,
+    DELETE(true),
 
     /** Send a new resource. */
-    POST;
+    POST(false);
 
     override fun toString(): String = name
 
     /**
-     * Sets the method of a [HttpURLConnection] to one of the methods supported by this enum.
+     * The method that is actually written on the wire.
      */
-    open fun setMethod(conn: HttpURLConnection, req: Request){
-        try {
-            conn.requestMethod = this.name
+    open val verb: String
+        get() = name
 
-        } catch (e: ProtocolException) {
-            throw IllegalArgumentException("Cannot set the method to $name", e)
-        }
+    /**
+     * Adds the headers this method needs to be understood by the server.
+     */
+    internal open fun prepare(headers: MutableMap<String, String>) {
+        // Nothing to do by default
     }
 }
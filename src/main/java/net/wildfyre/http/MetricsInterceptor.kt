@@ -0,0 +1,69 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http
+
+import java.io.IOException
+import java.util.concurrent.CompletableFuture
+
+/**
+ * Records the requests of an endpoint in a [MetricsRegistry].
+ *
+ * This class is NOT part of the public API.
+ *
+ * @param endpoint the method and the template of the address of the request
+ */
+internal class MetricsInterceptor(
+    private val registry: MetricsRegistry,
+    private val endpoint: String
+) : AsyncInterceptor {
+
+    @Throws(IOException::class)
+    override fun intercept(chain: Interceptor.Chain): RawResponse {
+        val request = chain.request
+        val start = System.nanoTime()
+
+        val response = try {
+            chain.proceed(request)
+        } catch (e: IOException) {
+            registry.recordFailure(endpoint, System.nanoTime() - start)
+            throw e
+        }
+
+        return record(request, response, start)
+    }
+
+    override fun interceptAsync(chain: InterceptorChain): CompletableFuture<RawResponse> {
+        val request = chain.request
+        val start = System.nanoTime()
+
+        return chain.proceedAsync(request).andThen { response, error ->
+            if (error != null) {
+                if (error is IOException)
+                    registry.recordFailure(endpoint, System.nanoTime() - start)
+                throw error
+            }
+            record(request, response!!, start)
+        }
+    }
+
+    private fun record(request: RawRequest, response: RawResponse, start: Long): RawResponse {
+        registry.recordResponse(endpoint, response.status, System.nanoTime() - start, request.body?.contentLength ?: 0)
+
+        val body = CountingInputStream(response.body) { registry.recordBytesReceived(endpoint, it.toLong()) }
+        return RawResponse(response.status, response.headers, body, response.transferStats)
+    }
+}
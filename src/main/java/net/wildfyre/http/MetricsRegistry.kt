@@ -0,0 +1,113 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http
+
+import com.eclipsesource.json.JsonObject
+import java.util.*
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Measures the requests sent to each endpoint: how many, how fast, how large, and how many failed.
+ *
+ * Requests are grouped by method and template of their address (see [Request.endpoint]), for example
+ * `GET /areas/{area}/{post}/`, so requests to different posts are measured together.
+ *
+ * Recording is lock-free, and takes a fixed amount of memory per endpoint. Snapshots can be exported as JSON with
+ * [toJson], or read directly with [snapshot].
+ *
+ * @see Request.metrics
+ */
+class MetricsRegistry {
+
+    private class Endpoint {
+        val requests = AtomicLong()
+        val failures = AtomicLong()
+        val errors = ConcurrentHashMap<Int, AtomicLong>()
+        val bytesSent = AtomicLong()
+        val bytesReceived = AtomicLong()
+        val latency = LatencyHistogram()
+    }
+
+    private val endpoints = ConcurrentHashMap<String, Endpoint>()
+
+    private fun of(endpoint: String) = endpoints.computeIfAbsent(endpoint) { Endpoint() }
+
+    //region Recording
+
+    internal fun recordResponse(endpoint: String, status: Int, latencyNanos: Long, bytesSent: Long) {
+        val metrics = of(endpoint)
+        metrics.requests.incrementAndGet()
+        metrics.latency.record(latencyNanos)
+        if (bytesSent > 0)
+            metrics.bytesSent.addAndGet(bytesSent)
+        if (status >= 400)
+            metrics.errors.computeIfAbsent(status) { AtomicLong() }.incrementAndGet()
+    }
+
+    internal fun recordFailure(endpoint: String, latencyNanos: Long) {
+        val metrics = of(endpoint)
+        metrics.requests.incrementAndGet()
+        metrics.failures.incrementAndGet()
+        metrics.latency.record(latencyNanos)
+    }
+
+    internal fun recordBytesReceived(endpoint: String, bytes: Long) {
+        of(endpoint).bytesReceived.addAndGet(bytes)
+    }
+
+    //endregion
+    //region Export
+
+    /**
+     * The metrics of every endpoint a request was sent to, sorted by endpoint.
+     */
+    fun snapshot(): SortedMap<String, EndpointMetrics> = endpoints.entries.associateTo(TreeMap()) { (name, it) ->
+        name to EndpointMetrics(
+            name,
+            it.requests.get(),
+            it.failures.get(),
+            it.errors.mapValues { error -> error.value.get() },
+            it.bytesSent.get(),
+            it.bytesReceived.get(),
+            it.latency.snapshot()
+        )
+    }
+
+    /**
+     * The metrics of an endpoint, or `null` if no request was sent to it.
+     * @param endpoint the method and the template of the address, for example `GET /users/{user}/`
+     */
+    fun snapshot(endpoint: String): EndpointMetrics? = snapshot()[endpoint]
+
+    /**
+     * Exports the metrics of every endpoint as JSON, for example:
+     * ```
+     * {"GET /users/{user}/": {"requests": 3, "failures": 0, "errors": {"404": 1}, "bytesSent": 0,
+     *   "bytesReceived": 412, "latency": {"count": 3, "p50": 12.2, "p90": 40.9, "p99": 40.9, "max": 40.1, ...}}}
+     * ```
+     * Latencies are in milliseconds.
+     */
+    fun toJson(): JsonObject = JsonObject().apply { snapshot().forEach { (name, it) -> add(name, it.toJson()) } }
+
+    /**
+     * Forgets every measure.
+     */
+    fun reset() = endpoints.clear()
+
+    //endregion
+}
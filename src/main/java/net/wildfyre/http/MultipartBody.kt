@@ -0,0 +1,135 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http
+
+import com.eclipsesource.json.JsonValue
+import net.wildfyre.utils.ProgrammingException
+import java.io.ByteArrayOutputStream
+import java.io.File
+import java.io.FileInputStream
+import java.io.IOException
+import java.io.OutputStream
+import java.net.URLConnection
+
+/**
+ * A `multipart/form-data` body, made of a file and (optionally) some JSON fields.
+ *
+ * The fields and the headers of each part are small, and are encoded when the body is created; the file is only
+ * read when the body is written, through a buffer of fixed size (see [BufferPool]). The size of the body is known
+ * in advance, so transports can stream it instead of buffering it: memory usage does not depend on the size of the
+ * file.
+ *
+ * Adapted from [https://stackoverflow.com/a/11826317/5666171] and
+ * [https://www.codejava.net/java-se/networking/upload-files-by-sending-multipart-request-programmatically]
+ *
+ * @param json the fields sent along the file, if any
+ * @param fileName the name of the field of the file
+ * @param file the file
+ */
+internal class MultipartBody(
+    json: JsonValue?,
+    fileName: String?,
+    private val file: File
+) : Body {
+
+    private val boundary = "----${System.currentTimeMillis()}---"
+
+    /** Everything before the content of the file. */
+    private val head: ByteArray
+
+    /** Everything after the content of the file. */
+    private val tail = "$endl$hyphens$boundary$hyphens$endl".toByteArray(Request.CHARSET)
+
+    /** The size of the file, as it was when the body was created. */
+    private val fileLength = file.length()
+
+    init {
+        val writer = ByteArrayOutputStream()
+
+        // Ignore if json is null
+        json?.asObject()?.forEach { obj ->
+            writer.write(hyphens + boundary + endl)
+            writer.write("Content-Disposition: form-data; name=\"${obj.name}\"$endl")
+
+            if (obj.value.isArray || obj.value.isObject) {
+                writer.write("Content-Type: ${DataType.JSON}; charset=${Request.CHARSET}$endl")
+                writer.write(endl)
+                writer.write(obj.value.toString())
+            } else {
+                writer.write("Content-Type: ${DataType.TEXT}; charset=${Request.CHARSET}$endl")
+                writer.write(endl)
+
+                writer.write(obj.value.let { v ->
+                    when {
+                        v.isTrue -> "true"
+                        v.isFalse -> "false"
+                        v.isNull -> "null"
+                        v.isNumber -> v.toString()
+                        v.isString -> v.asString()
+                        else -> throw ProgrammingException("Found $v which doesn't match any type.")
+                    }
+                })
+            }
+            writer.write(endl)
+        }
+
+        val type = URLConnection.guessContentTypeFromName(file.name) ?: "application/octet-stream"
+        writer.write(hyphens + boundary + endl)
+        writer.write("Content-Disposition: form-data; name=\"$fileName\"; filename=\"${file.name}\"$endl")
+        writer.write("Content-Type: $type$endl")
+        writer.write(endl)
+
+        head = writer.toByteArray()
+    }
+
+    override val contentType: String
+        get() = "multipart/form-data; boundary=$boundary"
+
+    override val contentLength: Long
+        get() = head.size + fileLength + tail.size
+
+    override fun writeTo(output: OutputStream) {
+        output.write(head)
+
+        var remaining = fileLength
+        FileInputStream(file).use { input ->
+            BufferPool.use { buffer ->
+                while (remaining > 0) {
+                    val read = input.read(buffer, 0, minOf(buffer.size.toLong(), remaining).toInt())
+                    if (read == -1)
+                        throw IOException("The file ${file.path} was shortened while it was being uploaded.")
+
+                    output.write(buffer, 0, read)
+                    remaining -= read
+                }
+            }
+        }
+
+        output.write(tail)
+    }
+
+    /**
+     * Extension function that writes a String a to ByteArrayOutputStream
+     * and handles the charset according to [Request.CHARSET].
+     */
+    private fun ByteArrayOutputStream.write(msg: String) = this.write(msg.toByteArray(Request.CHARSET))
+
+    companion object {
+        private const val endl = "\r\n"
+        private const val hyphens = "--"
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http
+
+/**
+ * A snapshot of the state of a [PooledTransport]'s connections.
+ *
+ * @param leased how many connections are currently used by a request
+ * @param idle how many connections are currently kept alive, waiting for a request
+ * @param created how many connections were opened since the creation of the pool
+ * @param reused how many times a request was sent on a connection that was kept alive
+ */
+data class PoolStats(
+    val leased: Int,
+    val idle: Int,
+    val created: Long,
+    val reused: Long
+)
@@ -0,0 +1,309 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http
+
+import java.io.ByteArrayOutputStream
+import java.io.EOFException
+import java.io.IOException
+import java.io.InputStream
+import java.net.SocketException
+import java.net.SocketTimeoutException
+import java.net.URL
+import java.util.*
+
+/**
+ * A [Transport] that speaks HTTP/1.1 over connections that are kept alive between requests.
+ *
+ * Reusing a connection saves the TCP handshake (and the TLS one, for HTTPS), which matters for clients that send
+ * many requests, such as bots. Connections are kept in a pool, with at most [maxConnectionsPerHost] connections per
+ * host; when they are all in use, other requests wait for one to be released (at most [leaseTimeoutMillis]).
+ * Connections that stay idle for more than [idleTimeoutMillis] are closed.
+ *
+ * A connection is only given back to the pool once the body of its response has been read until the end, or
+ * closed: streams returned by [Request.getRaw] must be closed when using this transport.
+ *
+ * Usage:
+ * ```
+ * Request.transport = PooledTransport(maxConnectionsPerHost = 16)
+ * ```
+ *
+ * @see stats Check how well the connections are reused
+ */
+class PooledTransport @JvmOverloads constructor(
+    val maxConnectionsPerHost: Int = 8,
+    val idleTimeoutMillis: Long = 30_000,
+    val leaseTimeoutMillis: Long = 60_000
+) : Transport {
+
+    init {
+        require(maxConnectionsPerHost > 0) {
+            "There should be at least one connection per host: $maxConnectionsPerHost"
+        }
+        require(idleTimeoutMillis >= 0) { "The idle timeout should not be negative: $idleTimeoutMillis" }
+        require(leaseTimeoutMillis >= 0) { "The lease timeout should not be negative: $leaseTimeoutMillis" }
+    }
+
+    internal val pool = ConnectionPool(maxConnectionsPerHost, idleTimeoutMillis, leaseTimeoutMillis)
+
+    //region Sending
+
+    @Throws(IOException::class)
+    override fun send(request: RawRequest): RawResponse {
+        var current = request.copy(headers = Compression.advertise(request))
+
+        for (redirects in 0..MAX_REDIRECTS) {
+            val response = exchange(current)
+            val location = response.header("Location")
+
+            if (response.status !in REDIRECTIONS || location == null || current.method != Method.GET)
+                return Compression.decode(response)
+
+            response.close()
+            current = current.copy(url = URL(current.url, location))
+        }
+
+        throw IOException("Too many redirections, starting from ${request.url}")
+    }
+
+    /**
+     * Opens [connections] connections to the server in parallel (at most [maxConnectionsPerHost]), and keeps them
+     * idle in the pool.
+     */
+    @Throws(IOException::class)
+    override fun warmUp(url: URL, connections: Int, timeouts: Timeouts): Int =
+        pool.warmUp(ConnectionPool.Route.of(url), connections, timeouts.connectMillis)
+
+    /**
+     * Sends a request on a pooled connection.
+     *
+     * If a connection that was kept alive turns out to be closed by the server before it answered, the request is
+     * sent again on another connection (see [isStale]).
+     */
+    @Throws(IOException::class)
+    private fun exchange(request: RawRequest): RawResponse {
+        val route = ConnectionPool.Route.of(request.url)
+
+        while (true) {
+            val connection = pool.lease(route, request.timeouts.connectMillis)
+            var written = false
+            var answered = false
+
+            try {
+                connection.readTimeout = request.timeouts.readMillis
+                writeRequest(connection, request)
+                written = true
+
+                awaitResponse(connection.input)
+                answered = true
+
+                return readBody(connection, readHead(connection.input))
+
+            } catch (e: IOException) {
+                pool.release(connection, false)
+
+                if (!isStale(connection, request, written, answered, e))
+                    throw e
+                // else: the server had closed the connection, try again
+            }
+        }
+    }
+
+    /**
+     * Did the request fail because the server had already closed the [connection]? Then the request can safely be
+     * sent again: the server closed the connection before receiving it, or (for idempotent methods) without
+     * answering it.
+     *
+     * @param written whether the whole request was written when it failed
+     * @param answered whether the server had started to answer when it failed
+     */
+    private fun isStale(
+        connection: ConnectionPool.Connection,
+        request: RawRequest,
+        written: Boolean,
+        answered: Boolean,
+        e: IOException
+    ) = when {
+        // Only a connection that was kept alive can be stale; a new one failing is a real error
+        connection.uses == 1 || answered -> false
+        // The server may still be processing the request
+        e is SocketTimeoutException -> false
+        // The server may have received the request; sending it again could apply it twice
+        written && !request.method.isIdempotent -> false
+        else -> e is EOFException || e is SocketException
+    }
+
+    /**
+     * Waits for the first byte of the response, without consuming it.
+     */
+    @Throws(IOException::class)
+    private fun awaitResponse(input: InputStream) {
+        input.mark(1)
+        if (input.read() == -1)
+            throw EOFException("The server closed the connection without answering.")
+        input.reset()
+    }
+
+    //endregion
+    //region Writing
+
+    @Throws(IOException::class)
+    private fun writeRequest(connection: ConnectionPool.Connection, request: RawRequest) {
+        val url = request.url
+        val head = StringBuilder(256)
+
+        head.append(request.method.verb).append(' ')
+            .append(if (url.file.isEmpty()) "/" else url.file)
+            .append(" HTTP/1.1\r\n")
+
+        head.append("Host: ").append(url.host)
+        if (url.port != -1 && url.port != url.defaultPort)
+            head.append(':').append(url.port)
+        head.append("\r\n")
+
+        for ((header, value) in request.headers)
+            if (!header.equals("Host", ignoreCase = true))
+                head.append(header).append(": ").append(value).append("\r\n")
+
+        val body = request.body
+        var buffered: ByteArrayOutputStream? = null
+
+        if (body != null) {
+            var length = body.contentLength
+            if (length < 0) {
+                // Not every server accepts chunked requests, so the body is measured first
+                buffered = ByteArrayOutputStream()
+                body.writeTo(buffered)
+                length = buffered.size().toLong()
+            }
+
+            head.append("Content-Type: ").append(body.contentType).append("\r\n")
+            head.append("Content-Length: ").append(length).append("\r\n")
+
+        } else if (request.method.verb == "POST" || request.method.verb == "PUT")
+            head.append("Content-Length: 0\r\n")
+
+        head.append("\r\n")
+
+        val output = connection.output
+        output.write(head.toString().toByteArray(Charsets.ISO_8859_1))
+
+        when {
+            buffered != null -> buffered.writeTo(output)
+            body != null -> body.writeTo(NonClosingOutputStream(output))
+        }
+
+        output.flush()
+    }
+
+    //endregion
+    //region Reading
+
+    private class Head(val version: String, val status: Int, val headers: Map<String, MutableList<String>>) {
+        fun header(name: String) = headers[name]?.firstOrNull()
+    }
+
+    @Throws(IOException::class)
+    private fun readHead(input: InputStream): Head {
+        while (true) {
+            val statusLine = input.readHttpLine()
+                ?: throw IOException("The server closed the connection without answering.")
+
+            val parts = statusLine.split(' ', limit = 3)
+            val status = parts.getOrNull(1)?.toIntOrNull()
+            if (parts.size < 2 || !parts[0].startsWith("HTTP/") || status == null)
+                throw IOException("Invalid status line: '$statusLine'")
+
+            val headers = TreeMap<String, MutableList<String>>(String.CASE_INSENSITIVE_ORDER)
+            while (true) {
+                val line = input.readHttpLine() ?: throw IOException("The server closed the connection.")
+                if (line.isEmpty()) break
+
+                val colon = line.indexOf(':')
+                if (colon <= 0) throw IOException("Invalid header: '$line'")
+
+                headers.getOrPut(line.substring(0, colon).trim()) { ArrayList(1) }
+                    .add(line.substring(colon + 1).trim())
+            }
+
+            if (status in 100..199)
+                continue // Informational response, the real one follows
+
+            return Head(parts[0], status, headers)
+        }
+    }
+
+    @Throws(IOException::class)
+    private fun readBody(connection: ConnectionPool.Connection, head: Head): RawResponse {
+        val connectionHeader = head.header("Connection")
+        var keepAlive = if (head.version == "HTTP/1.0")
+            connectionHeader.equals("keep-alive", ignoreCase = true)
+        else
+            !connectionHeader.equals("close", ignoreCase = true)
+
+        val contentLength = head.header("Content-Length")?.toLongOrNull()
+        val body: InputStream? = when {
+            head.status == 204 || head.status == 304 -> null
+            head.header("Transfer-Encoding")?.contains("chunked", ignoreCase = true) == true ->
+                ChunkedInputStream(connection.input)
+            contentLength != null -> if (contentLength == 0L) null
+                else FixedLengthInputStream(connection.input, contentLength)
+            else -> {
+                keepAlive = false // The end of the body is the end of the connection
+                connection.input
+            }
+        }
+
+        if (body == null) {
+            pool.release(connection, keepAlive)
+            return RawResponse(head.status, head.headers, null)
+        }
+
+        return RawResponse(
+            head.status,
+            head.headers,
+            ReleasingInputStream(body) { fully -> pool.release(connection, keepAlive && fully) }
+        )
+    }
+
+    //endregion
+    //region Pool management
+
+    /**
+     * The current state of the connection pool.
+     */
+    fun stats(): PoolStats = pool.stats()
+
+    /**
+     * Closes the connections that have been idle for more than [idleTimeoutMillis].
+     *
+     * Idle connections are also checked whenever they are about to be reused, so calling this method is only
+     * useful to free resources sooner.
+     */
+    fun evictIdle() = pool.evictIdle()
+
+    /**
+     * Closes every idle connection. This transport cannot be used anymore afterwards.
+     */
+    override fun close() = pool.close()
+
+    //endregion
+
+    companion object {
+        private const val MAX_REDIRECTS = 5
+        private val REDIRECTIONS = setOf(301, 302, 303, 307, 308)
+    }
+}
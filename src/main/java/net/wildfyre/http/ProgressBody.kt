@@ -0,0 +1,69 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http
+
+import java.io.FilterOutputStream
+import java.io.OutputStream
+
+/**
+ * Wraps a [Body] to report the progress of its upload to an [UploadListener].
+ *
+ * To keep the overhead low, the listener is called at most once every [REPORT_EVERY] bytes, then once at the end.
+ */
+internal class ProgressBody(
+    private val body: Body,
+    private val listener: UploadListener
+) : Body by body {
+
+    override fun writeTo(output: OutputStream) {
+        val total = contentLength
+        val start = System.nanoTime()
+
+        val counting = object : FilterOutputStream(output) {
+            var sent = 0L
+            var nextReport = REPORT_EVERY
+
+            override fun write(b: Int) {
+                out.write(b)
+                progress(1)
+            }
+
+            override fun write(b: ByteArray, off: Int, len: Int) {
+                out.write(b, off, len)
+                progress(len)
+            }
+
+            private fun progress(count: Int) {
+                sent += count
+                if (sent >= nextReport) {
+                    nextReport = sent + REPORT_EVERY
+                    listener.onProgress(UploadProgress(sent, total, System.nanoTime() - start, false))
+                }
+            }
+
+            override fun close() = flush() // The transport owns the stream
+        }
+
+        body.writeTo(counting)
+        counting.flush()
+        listener.onProgress(UploadProgress(counting.sent, total, System.nanoTime() - start, true))
+    }
+
+    companion object {
+        private const val REPORT_EVERY = 64 * 1024L
+    }
+}
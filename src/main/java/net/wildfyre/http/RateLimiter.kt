@@ -0,0 +1,124 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http
+
+import java.io.InterruptedIOException
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.TimeUnit
+
+/**
+ * Limits the rate at which requests are sent (token bucket).
+ *
+ * The bucket holds at most [burst] tokens, and receives [permitsPerSecond] tokens per second. Sending a request takes
+ * a token; when the bucket is empty, requests wait for the next one.
+ *
+ * @param permitsPerSecond the number of requests that can be sent per second, on average
+ * @param burst the number of requests that can be sent at once, after a period of inactivity
+ * @see Request.rateLimiter
+ */
+class RateLimiter @JvmOverloads constructor(
+    val permitsPerSecond: Double,
+    val burst: Int = 1
+) {
+
+    init {
+        require(permitsPerSecond > 0) { "The rate should be positive: $permitsPerSecond" }
+        require(burst > 0) { "The burst should be positive: $burst" }
+    }
+
+    private var tokens = burst.toDouble()
+    private var lastRefill = System.nanoTime()
+
+    /**
+     * Takes a token, possibly one that is not available yet.
+     *
+     * @return How long to wait before the token is available, in milliseconds.
+     */
+    @Synchronized
+    fun reserve(): Long {
+        val now = System.nanoTime()
+        tokens = minOf(burst.toDouble(), tokens + (now - lastRefill) * permitsPerSecond / NANOS_PER_SECOND)
+        lastRefill = now
+
+        tokens--
+        return if (tokens >= 0) 0
+        else Math.ceil(-tokens * 1000 / permitsPerSecond).toLong()
+    }
+
+    /**
+     * Gives back a token taken by [reserve], that was not used.
+     */
+    @Synchronized
+    fun cancel() {
+        tokens = minOf(burst.toDouble(), tokens + 1)
+    }
+
+    /**
+     * Waits until a request can be sent.
+     *
+     * @param timeoutMillis how long to wait at most, in milliseconds (0 means forever)
+     * @throws InterruptedIOException if the thread is interrupted while waiting, or if no token is available in time
+     */
+    @JvmOverloads
+    @Throws(InterruptedIOException::class)
+    fun acquire(timeoutMillis: Long = 0) {
+        val delay = reserve()
+        if (delay == 0L)
+            return
+
+        if (timeoutMillis in 1 until delay) {
+            cancel()
+            throw tooSlow(timeoutMillis)
+        }
+
+        try {
+            Thread.sleep(delay)
+        } catch (e: InterruptedException) {
+            Thread.currentThread().interrupt()
+            throw InterruptedIOException("Interrupted while waiting to send a request")
+        }
+    }
+
+    /**
+     * Same as [acquire], but does not block the current thread.
+     *
+     * @param timeoutMillis how long to wait at most, in milliseconds (0 means forever)
+     * @return A future that completes once the request can be sent, or exceptionally with an
+     * [InterruptedIOException] if no token is available in time.
+     */
+    internal fun acquireAsync(timeoutMillis: Long = 0): CompletableFuture<Unit> {
+        val delay = reserve()
+        if (delay == 0L)
+            return CompletableFuture.completedFuture(Unit)
+
+        if (timeoutMillis in 1 until delay) {
+            cancel()
+            return failedFuture(tooSlow(timeoutMillis))
+        }
+
+        return TransportExecutor.delay(delay)
+    }
+
+    private fun tooSlow(timeoutMillis: Long) = InterruptedIOException("Could not send a request within " +
+        "${timeoutMillis}ms (at most $permitsPerSecond requests per second)")
+
+    override fun toString() = "RateLimiter(permitsPerSecond=$permitsPerSecond, burst=$burst)"
+
+    companion object {
+        private val NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1).toDouble()
+    }
+}
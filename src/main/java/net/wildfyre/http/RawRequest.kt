@@ -0,0 +1,48 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http
+
+import java.net.URL
+
+/**
+ * A request, as seen by a [Transport]: everything that needs to be written to the server.
+ *
+ * This class is NOT part of the public API.
+ *
+ * @param method the method of the request
+ * @param url the full URL of the request
+ * @param headers the headers of the request (excluding the ones describing the [body])
+ * @param body the body of the request, if any
+ * @param timeouts how long to wait for the server
+ */
+class RawRequest @JvmOverloads constructor(
+    val method: Method,
+    val url: URL,
+    val headers: Map<String, String>,
+    val body: Body?,
+    val timeouts: Timeouts = Timeouts.DEFAULT
+) {
+
+    /**
+     * A copy of this request, with some of its parameters replaced.
+     */
+    fun copy(
+        url: URL = this.url,
+        headers: Map<String, String> = this.headers,
+        timeouts: Timeouts = this.timeouts
+    ) = RawRequest(method, url, headers, body, timeouts)
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http
+
+import java.io.ByteArrayInputStream
+import java.io.Closeable
+import java.io.InputStream
+import java.util.*
+
+/**
+ * A response, as returned by a [Transport].
+ *
+ * This class is NOT part of the public API.
+ *
+ * @param status the HTTP status code
+ * @param headers the headers sent by the server
+ * @param body the body sent by the server; reading it until the end (or closing it) releases the connection
+ * @param transferStats the number of bytes of the body read so far
+ */
+class RawResponse(
+    val status: Int,
+    headers: Map<String, List<String>>,
+    body: InputStream?,
+    val transferStats: TransferStats = TransferStats()
+) : Closeable {
+
+    /**
+     * The headers sent by the server. Header names are case-insensitive.
+     */
+    val headers: Map<String, List<String>> = TreeMap<String, List<String>>(String.CASE_INSENSITIVE_ORDER)
+        .apply { putAll(headers) }
+
+    /**
+     * The body sent by the server.
+     */
+    val body: InputStream = body ?: ByteArrayInputStream(ByteArray(0))
+
+    /**
+     * Did the server accept the request?
+     */
+    val isSuccessful: Boolean
+        get() = status in 200..399
+
+    /**
+     * The first value of a header, or `null` if the server did not send it.
+     * @param name the name of the header (case-insensitive)
+     */
+    fun header(name: String): String? = headers[name]?.firstOrNull()
+
+    override fun close() = body.close()
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http
+
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.EOFException
+import java.io.IOException
+
+/**
+ * A request and the response it received, as stored by [RecordingTransport] and replayed by [ReplayTransport].
+ *
+ * Recordings are a GZIP stream: a header ([MAGIC], [VERSION]), then the exchanges one after the other. Each exchange
+ * stores the method, the path and query of the address (not the host, so recordings of the test server can be
+ * replayed against any [Request.url]), the time the server took to answer, the status, the headers and the
+ * (decompressed) body of the response.
+ *
+ * This class is NOT part of the public API.
+ *
+ * @param latencyMicros the time between sending the request and receiving the headers of the response
+ */
+internal class RecordedExchange(
+    val method: Method,
+    val path: String,
+    val latencyMicros: Long,
+    val status: Int,
+    val headers: Map<String, List<String>>,
+    val body: ByteArray
+) {
+
+    /**
+     * Identifies the requests this exchange answers.
+     */
+    val key: String
+        get() = keyOf(method, path)
+
+    @Throws(IOException::class)
+    fun writeTo(output: DataOutputStream) {
+        output.writeByte(method.ordinal)
+        output.writeUTF(path)
+        output.writeLong(latencyMicros)
+        output.writeShort(status)
+
+        output.writeShort(headers.size)
+        for ((name, values) in headers) {
+            output.writeUTF(name)
+            output.writeShort(values.size)
+            for (value in values)
+                output.writeUTF(value)
+        }
+
+        output.writeInt(body.size)
+        output.write(body)
+    }
+
+    companion object {
+        const val MAGIC = 0x57465252 // "WFRR"
+        const val VERSION = 1
+
+        /**
+         * Headers that describe how the body was sent, rather than the body itself; they are not recorded, since the
+         * body is stored decompressed.
+         */
+        val TRANSFER_HEADERS = setOf("content-encoding", "content-length", "transfer-encoding", "connection")
+
+        fun keyOf(method: Method, path: String) = "$method $path"
+
+        @Throws(IOException::class)
+        fun writeHeader(output: DataOutputStream) {
+            output.writeInt(MAGIC)
+            output.writeByte(VERSION)
+        }
+
+        @Throws(IOException::class)
+        fun readHeader(input: DataInputStream) {
+            if (input.readInt() != MAGIC)
+                throw IOException("This is not a recording of requests.")
+
+            val version = input.readUnsignedByte()
+            if (version != VERSION)
+                throw IOException("Unsupported version of the recording: $version")
+        }
+
+        /**
+         * Reads the next exchange.
+         * @return The exchange, or `null` at the end of the recording.
+         */
+        @Throws(IOException::class)
+        fun read(input: DataInputStream): RecordedExchange? {
+            val methodOrdinal = input.read()
+            if (methodOrdinal == -1)
+                return null
+
+            try {
+                val method = Method.values()[methodOrdinal]
+                val path = input.readUTF()
+                val latencyMicros = input.readLong()
+                val status = input.readUnsignedShort()
+
+                val headers = LinkedHashMap<String, List<String>>()
+                repeat(input.readUnsignedShort()) {
+                    val name = input.readUTF()
+                    headers[name] = List(input.readUnsignedShort()) { input.readUTF() }
+                }
+
+                val body = ByteArray(input.readInt())
+                input.readFully(body)
+
+                return RecordedExchange(method, path, latencyMicros, status, headers, body)
+            } catch (e: EOFException) {
+                throw IOException("The recording is truncated.", e)
+            }
+        }
+    }
+}
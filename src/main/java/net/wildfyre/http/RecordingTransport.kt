@@ -0,0 +1,92 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http
+
+import java.io.*
+import java.net.URL
+import java.util.concurrent.TimeUnit
+import java.util.zip.GZIPOutputStream
+
+/**
+ * A [Transport] that records the requests sent through another transport, and the responses they receive, so they can
+ * be replayed later by [ReplayTransport] without the server.
+ *
+ * The body of each response is read entirely before it is returned, so it can be recorded. The recording is complete
+ * once this transport is [closed][close].
+ *
+ * @param delegate the transport that sends the requests to the server
+ * @param file where the exchanges are recorded (the file is replaced)
+ */
+class RecordingTransport(
+    private val delegate: Transport,
+    val file: File
+) : Transport {
+
+    private val output = DataOutputStream(BufferedOutputStream(GZIPOutputStream(FileOutputStream(file))))
+        .also { RecordedExchange.writeHeader(it) }
+
+    /**
+     * The number of exchanges recorded so far.
+     */
+    @Volatile
+    var recorded = 0
+        private set
+
+    @Throws(IOException::class)
+    override fun send(request: RawRequest): RawResponse {
+        val start = System.nanoTime()
+        val response = delegate.send(request)
+        val latencyMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start)
+
+        val body = response.body.use { readAll(it) }
+        val headers = response.headers.filterKeys { it.toLowerCase() !in RecordedExchange.TRANSFER_HEADERS }
+        val exchange = RecordedExchange(request.method, request.url.file, latencyMicros, response.status, headers, body)
+
+        synchronized(output) {
+            exchange.writeTo(output)
+            recorded++
+        }
+
+        return RawResponse(response.status, response.headers, ByteArrayInputStream(body), response.transferStats)
+    }
+
+    @Throws(IOException::class)
+    override fun warmUp(url: URL, connections: Int, timeouts: Timeouts) = delegate.warmUp(url, connections, timeouts)
+
+    private fun readAll(input: InputStream): ByteArray {
+        val bytes = ByteArrayOutputStream()
+        BufferPool.use { buffer ->
+            while (true) {
+                val read = input.read(buffer)
+                if (read == -1) break
+                bytes.write(buffer, 0, read)
+            }
+        }
+        return bytes.toByteArray()
+    }
+
+    /**
+     * Finishes the recording, and closes the underlying transport.
+     */
+    override fun close() {
+        try {
+            synchronized(output) { output.close() }
+        } finally {
+            delegate.close()
+        }
+    }
+}
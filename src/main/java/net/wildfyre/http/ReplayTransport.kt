@@ -0,0 +1,119 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http
+
+import java.io.*
+import java.net.SocketTimeoutException
+import java.net.URL
+import java.util.concurrent.TimeUnit
+import java.util.zip.GZIPInputStream
+
+/**
+ * A [Transport] that answers requests from a recording made by [RecordingTransport], without any network access.
+ *
+ * Requests are matched to the recorded exchanges by method, path and query (the host is ignored). When the same
+ * request was recorded several times, its responses are replayed in the order they were recorded; once they have all
+ * been replayed, the last one is repeated.
+ *
+ * The recording is loaded in memory when the transport is created.
+ *
+ * @param file the recording
+ * @param latencyScale how long to wait before answering, as a multiple of the time the server took when the exchange
+ * was recorded: 0 (the default) answers immediately, 1 simulates the recorded latency. As with a real server, a
+ * request whose simulated latency exceeds its [read timeout][Timeouts.readMillis] fails with a
+ * [SocketTimeoutException].
+ */
+class ReplayTransport @JvmOverloads constructor(
+    val file: File,
+    private val latencyScale: Double = 0.0
+) : Transport {
+
+    private val exchanges = HashMap<String, List<RecordedExchange>>()
+    private val replayed = HashMap<String, Int>()
+
+    init {
+        require(latencyScale >= 0) { "The latency scale cannot be negative: $latencyScale" }
+
+        DataInputStream(BufferedInputStream(GZIPInputStream(FileInputStream(file)))).use { input ->
+            RecordedExchange.readHeader(input)
+
+            val byKey = LinkedHashMap<String, MutableList<RecordedExchange>>()
+            while (true) {
+                val exchange = RecordedExchange.read(input) ?: break
+                byKey.getOrPut(exchange.key) { ArrayList() }.add(exchange)
+            }
+            exchanges.putAll(byKey)
+        }
+    }
+
+    /**
+     * The number of exchanges in the recording.
+     */
+    val size: Int
+        get() = exchanges.values.sumBy { it.size }
+
+    @Throws(IOException::class)
+    override fun send(request: RawRequest): RawResponse {
+        val exchange = next(RecordedExchange.keyOf(request.method, request.url.file))
+            ?: throw IOException("No exchange was recorded for ${request.method} ${request.url.file}")
+
+        simulateLatency(exchange, request.timeouts)
+
+        val stats = TransferStats().apply {
+            compressedBytes = exchange.body.size.toLong()
+            uncompressedBytes = exchange.body.size.toLong()
+        }
+        return RawResponse(exchange.status, exchange.headers, ByteArrayInputStream(exchange.body), stats)
+    }
+
+    /**
+     * There is no connection to open.
+     */
+    override fun warmUp(url: URL, connections: Int, timeouts: Timeouts) = 0
+
+    private fun next(key: String): RecordedExchange? = synchronized(replayed) {
+        val candidates = exchanges[key] ?: return null
+        val index = replayed[key] ?: 0
+        replayed[key] = index + 1
+        candidates[minOf(index, candidates.size - 1)]
+    }
+
+    @Throws(IOException::class)
+    private fun simulateLatency(exchange: RecordedExchange, timeouts: Timeouts) {
+        val latencyMicros = (exchange.latencyMicros * latencyScale).toLong()
+        if (latencyMicros == 0L)
+            return
+
+        val timeoutMicros = TimeUnit.MILLISECONDS.toMicros(timeouts.readMillis)
+        val timedOut = timeoutMicros in 1 until latencyMicros
+
+        try {
+            TimeUnit.MICROSECONDS.sleep(if (timedOut) timeoutMicros else latencyMicros)
+        } catch (e: InterruptedException) {
+            Thread.currentThread().interrupt()
+            throw InterruptedIOException("Interrupted while simulating the latency of the server")
+        }
+
+        if (timedOut)
+            throw SocketTimeoutException("Read timed out (simulated)")
+    }
+
+    /**
+     * Starts replaying every request from the beginning of the recording.
+     */
+    fun rewind() = synchronized(replayed) { replayed.clear() }
+}
@@ -17,14 +17,17 @@
 package net.wildfyre.http
 
 import com.eclipsesource.json.*
-import edu.umd.cs.findbugs.annotations.SuppressFBWarnings
 import net.wildfyre.api.Internal
 import net.wildfyre.http.Request.CantConnectException
-import net.wildfyre.utils.ProgrammingException
 import java.io.*
-import java.net.HttpURLConnection
 import java.net.URL
-import java.net.URLConnection
+import java.util.*
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CompletionException
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.function.Supplier
 import java.util.stream.Collectors
 
 /**
@@ -32,19 +35,44 @@ import java.util.stream.Collectors
  *
  * This class is NOT part of the public API.
  */
-@SuppressFBWarnings(
-    value = ["ST_WRITE_TO_STATIC_FROM_INSTANCE_METHOD"],
-    justification = "The static variable 'reqId' is marked as Synchronized to avoid any problems."
-)
-class Request
-/**
- * Creates a new request to the server, which will be executed on a call such as [get].
- * @param method the HTTP method required by the API
- * @param address the address you'd like to access (see the API documentation)
- * @throws CantConnectException if the connection to the server fails
- */
-@Throws(CantConnectException::class)
-constructor(private val method: Method, private val address: String) {
+class Request private constructor(
+    private val method: Method,
+    private val address: String,
+
+    /**
+     * The template of the address of this request, which identifies its endpoint in the [metrics] (for example,
+     * `/areas/{area}/{post}/`).
+     */
+    val endpoint: String
+) {
+
+    /**
+     * Creates a new request to the server, which will be executed on a call such as [get].
+     *
+     * In the [metrics], the request is grouped with the requests whose address only differs by numeric IDs; prefer
+     * the other constructor to name the endpoint explicitly.
+     *
+     * @param method the HTTP method required by the API
+     * @param address the address you'd like to access (see the API documentation)
+     * @throws CantConnectException if the connection to the server fails
+     */
+    @Throws(CantConnectException::class)
+    constructor(method: Method, address: String) : this(method, address, EndpointTemplate.of(address))
+
+    /**
+     * Creates a new request to the server, from the template of its address.
+     *
+     * For example, `Request(GET, "/areas/{area}/{post}/", "fun", 12)` requests `/areas/fun/12/`; in the [metrics],
+     * it is grouped with the requests to the same template.
+     *
+     * @param method the HTTP method required by the API
+     * @param template the address, where each `{name}` is replaced by the next of [params]
+     * @param params the values of the placeholders of the template, in order
+     * @throws CantConnectException if the connection to the server fails
+     */
+    @Throws(CantConnectException::class)
+    constructor(method: Method, template: String, vararg params: Any) :
+        this(method, EndpointTemplate.expand(template, params), EndpointTemplate.withoutQuery(template))
 
     //region Initialization & Variables
 
@@ -54,124 +82,147 @@ constructor(private val method: Method, private val address: String) {
     private var jsonOutput: JsonValue? = null
     private var fileOutput: File? = null
     private var fileOutputName: String? = null
+    private var uploadListener: UploadListener? = null
+    private var callTimeouts: Timeouts? = null
 
-    private val id = reqId++
+    private val id = reqId.getAndIncrement()
 
-    init {
-        headers["From"] = "lib-java"
-        headers["Host"] = requestUrl.host
-    }
+    /**
+     * The number of bytes of the response received so far, before and after decompression.
+     *
+     * The server is asked to compress its responses (see [Transport]), which are decompressed while they are read.
+     * Requests merged with an identical one by [singleFlight] do not receive a response of their own, so their stats
+     * stay empty.
+     */
+    @Volatile
+    var transferStats = TransferStats()
+        private set
+
+    /**
+     * The number of times this request was sent again after a failure (see [retryPolicy]).
+     */
+    @Volatile
+    var retries = 0
+        private set
+
+    /**
+     * The time spent in each stage of this request (see [Interceptor]); reading the response is the `read` stage.
+     */
+    val timings = StageTimings()
+
+    private val callInterceptors = ArrayList<Interceptor>()
 
     //endregion
     //region Methods
 
-    private fun send() : HttpURLConnection {
-        val conn = connect(requestUrl)
-        conn.doInput = true // We always want input
+    /**
+     * Builds what the [Transport] needs to send this request.
+     */
+    private fun prepare(): RawRequest {
+        val body = when {
+            fileOutput != null -> {
+                RequestLog.debug(id) { "This is a multipart request" }
+                MultipartBody(jsonOutput, fileOutputName, fileOutput!!)
+            }
+            jsonOutput != null -> JsonBody(jsonOutput!!)
+            else -> null
+        }
 
-        println("\n$id:$method $requestUrl HTTP/1.1")
-        method.setMethod(conn, this)
+        val listener = uploadListener
+        return RawRequest(
+            method,
+            requestUrl,
+            headers,
+            if (body != null && listener != null) ProgressBody(body, listener) else body,
+            callTimeouts ?: timeoutsOf(address)
+        )
+    }
 
-        var i = 0
-        for ((header, value) in headers) {
-            println("$id:${i++} - $header: $value")
-            conn.setRequestProperty(header, value)
-        }
+    /**
+     * The stages this request goes through, in order (see [Interceptor]).
+     */
+    private fun pipeline(): List<Pair<String, Interceptor>> {
+        val stages = ArrayList<Pair<String, Interceptor>>()
+
+        for (interceptor in callInterceptors + interceptors)
+            stages.add(InterceptorChain.nameOf(interceptor) to interceptor)
+
+        stages.add("tracing" to TracingInterceptor(endpoint, timings))
+        stages.add("headers" to DefaultHeadersInterceptor)
+        stages.add("logging" to LoggingInterceptor(id))
+        stages.add("metrics" to MetricsInterceptor(metrics, "$method $endpoint"))
+        stages.add("retry" to RetryInterceptor(retryPolicy) { attempt, delay, cause ->
+            retries = attempt
+            RequestLog.warn(id) { "Attempt $attempt failed ($cause), retrying in $delay ms" }
+        })
+        stages.add("circuit-breaker" to CircuitBreakerInterceptor(circuitBreakers))
+        stages.add("limiter" to LimitInterceptor(concurrencyLimiter, rateLimiter))
+        stages.add("deadline" to DeadlineInterceptor)
+
+        for (interceptor in networkInterceptors)
+            stages.add(InterceptorChain.nameOf(interceptor) to interceptor)
+
+        stages.add("transport" to TransportInterceptor(transport))
+        return stages
+    }
 
-        if (fileOutput != null)
-            multipart(conn)
-        else jsonOutput?.let {
-            conn.setRequestProperty("Content-Type", DataType.JSON.toString())
-            println("$id:$i - Content-Type: ${DataType.JSON}")
+    @Throws(CantConnectException::class)
+    private fun send() : RawResponse {
+        try {
+            Deadline.current()?.check("send $method $address")
+            val response = InterceptorChain.execute(pipeline(), prepare(), timings)
+            transferStats = response.transferStats
+            return response
 
-            conn.doOutput = true
-            BufferedWriter(OutputStreamWriter(conn.outputStream, CHARSET)).use { bw ->
-                it.writeTo(bw)
-            }
+        } catch (e: IOException) {
+            RequestLog.error(id) { "Cannot connect to the server: $e" }
+            throw CantConnectException("Cannot connect to the server.", e)
         }
-
-        println("$id: Done sending.")
-        return conn
     }
 
     /**
-     * Sends a multipart request to the connection.
+     * Same as [send], but does not block the current thread: the request goes through the stages of the pipeline
+     * asynchronously (see [AsyncInterceptor]), with the [Deadline] and the current [Span] of this thread, and the
+     * response is read on the [TransportExecutor].
      *
-     * Adapted from [https://stackoverflow.com/a/11826317/5666171] and
-     * [https://www.codejava.net/java-se/networking/upload-files-by-sending-multipart-request-programmatically]
-     */
-    private fun multipart(conn: HttpURLConnection) {
-        println("$id: This is a multipart request")
-
-        val endl = "\r\n"
-        val hyphens = "--"
-        val boundary = "----${System.currentTimeMillis()}---"
-
-        conn.doOutput = true
-        conn.setRequestProperty("Content-Type", "multipart/form-data; boundary=$boundary")
-
-        val output = conn.outputStream
-        val writer = DataOutputStream(output)
-        writer.flush()
-
-        // Ignore if jsonOutput is null
-        jsonOutput?.let {
-            println("$id: There is some JSON attached")
-
-            it.asObject().forEach { obj ->
-                writer.write(hyphens + boundary + endl)
-                writer.write("Content-Disposition: form-data; name=\"${obj.name}\"$endl")
-
-                if (obj.value.isArray || obj.value.isObject) {
-                    writer.write("Content-Type: ${DataType.JSON}; charset=$CHARSET$endl")
-                    writer.write(endl)
-
-                    BufferedWriter(OutputStreamWriter(writer, CHARSET)).use { bw ->
-                        it.writeTo(bw)
-                    }
-
-                    writer.write(endl)
-                } else {
-                    writer.write("Content-Type: ${DataType.TEXT}; charset=$CHARSET$endl")
-                    writer.write(endl)
-
-                    writer.write(obj.value.let { v ->
-                        when {
-                            v.isTrue -> "true"
-                            v.isFalse -> "false"
-                            v.isNull -> "null"
-                            v.isNumber -> v.asString()
-                            v.isString -> v.asString()
-                            else -> throw ProgrammingException("Found $v which doesn't match any type.")
-                        }
-                    })
-
-                    writer.write(endl)
-                }
-            }
-        }
+     * @param read what to do with the response, once received
+     * @return A future that completes with the result of [read], or exceptionally with a [CantConnectException] if
+     * the server cannot be reached, or with any [IOException] thrown by [read].
+     */
+    private fun <T> sendAsync(read: (RawResponse) -> T): CompletableFuture<T> {
+        val deadline = Deadline.current()
 
-        // Throw NullPointerException if fileOutput is null
-        fileOutput?.let { file ->
-            writer.write(hyphens + boundary + endl)
-            writer.write("Content-Disposition: form-data; name=\"$fileOutputName\"; filename=\"${file.name}\"$endl")
-            writer.write("Content-Type: ${URLConnection.guessContentTypeFromName(file.name)}" + endl)
-            writer.write(endl)
+        val response = try {
+            deadline?.check("send $method $address")
+            InterceptorChain.executeAsync(pipeline(), prepare(), timings)
+        } catch (e: IOException) {
+            failedFuture<RawResponse>(e)
+        }
 
-            file.inputStream().run {
-                readBytes().forEach { writer.writeByte(it.toInt()) }
-                close()
+        return response.andThenCompose { raw, error ->
+            if (error is IOException) {
+                RequestLog.error(id) { "Cannot connect to the server: $error" }
+                throw CantConnectException("Cannot connect to the server.", error)
+            } else if (error != null) {
+                throw error
             }
 
-            writer.write(endl)
-            writer.write(hyphens + boundary + hyphens + endl)
-        } ?:throw NullPointerException("This method has been called with a fileOutput=$fileOutput, " +
-            "but this should not be possible.")
-
-        writer.flush()
-        writer.close()
+            transferStats = raw!!.transferStats
+            CompletableFuture.supplyAsync(Supplier {
+                try {
+                    Deadline.withDeadline(deadline, DeadlineAction<T, IOException> { read(raw) })
+                } catch (e: IOException) {
+                    throw CompletionException(e)
+                }
+            }, TransportExecutor)
+        }
     }
 
+    /**
+     * Measures the time spent reading the response (the `read` stage of [timings]).
+     */
+    private inline fun <T> read(action: () -> T): T = timings.measure("read", action)
+
     /**
      * Makes the request authenticated by adding the token of the user.
      * @param token the token
@@ -208,6 +259,55 @@ constructor(private val method: Method, private val address: String) {
         return this
     }
 
+    /**
+     * Makes this request conditional: the server will only send the data if it changed since the given validators
+     * were received. See [getJsonIfModified].
+     * @param validators the validators of the data that is already known, or `null` if none is known
+     * @return This request itself, to allow method-chaining.
+     */
+    fun revalidate(validators: CacheValidators?): Request {
+        validators?.etag?.let { headers["If-None-Match"] = it }
+        validators?.lastModified?.let { headers["If-Modified-Since"] = it }
+
+        return this
+    }
+
+    /**
+     * Sets how long this request waits for the server, instead of the [timeouts] of its endpoint.
+     *
+     * If the current thread has a [Deadline], the timeouts are shortened to fit in it.
+     * @param timeouts the timeouts
+     * @return This request itself, to allow method-chaining.
+     */
+    fun timeouts(timeouts: Timeouts): Request {
+        callTimeouts = timeouts
+
+        return this
+    }
+
+    /**
+     * Adds an interceptor to the pipeline of this request only; it runs before the interceptors of [interceptors].
+     * @param interceptor the interceptor
+     * @return This request itself, to allow method-chaining.
+     */
+    fun addInterceptor(interceptor: Interceptor): Request {
+        callInterceptors.add(interceptor)
+
+        return this
+    }
+
+    /**
+     * Registers a listener that will be notified of the progress of the upload of this request's body (for
+     * example, of the file added with [addFile]).
+     * @param listener the listener
+     * @return This request itself, to allow method-chaining.
+     */
+    fun onUploadProgress(listener: UploadListener): Request {
+        uploadListener = listener
+
+        return this
+    }
+
     /**
      * Accesses the JSON response from the server.
      * @return The JSON response from the server.
@@ -217,24 +317,48 @@ constructor(private val method: Method, private val address: String) {
         replaceWith = ReplaceWith("getJson"),
         message = "Deprecated because of implicit data type request, use Request.getJson instead."
     )
-    @Throws(IssueInTransferException::class)
+    @Throws(IssueInTransferException::class, CantConnectException::class)
     fun get() = getJson()
 
     /**
      * Requests a JSON response from the server, and returns it.
      * @return The JSON response from the server.
      */
-    @Throws(IssueInTransferException::class)
+    @Throws(IssueInTransferException::class, CantConnectException::class)
     fun getJson(): JsonValue {
         headers["Accept"] = DataType.JSON.toString()
-        return readJson(getInputStream(send()))
+        return coalesce("json") { read { readJson(getInputStream(send())) } }
+    }
+
+    /**
+     * Requests a JSON response from the server, unless it did not change since the validators given to [revalidate]
+     * were received (the server answers `304 Not Modified`).
+     *
+     * If [revalidate] was not called, this method behaves as [getJson], but also returns the validators of the
+     * response.
+     *
+     * @return The JSON response from the server if it changed, and its validators.
+     */
+    @Throws(IssueInTransferException::class, CantConnectException::class)
+    fun getJsonIfModified(): Revalidation {
+        headers["Accept"] = DataType.JSON.toString()
+        return coalesce("json-if-modified") {
+            val response = send()
+
+            if (response.status == HTTP_NOT_MODIFIED) {
+                response.close()
+                RequestLog.debug(id) { "Not modified." }
+                Revalidation(null, CacheValidators.of(response))
+            } else
+                Revalidation(read { readJson(getInputStream(response)) }, CacheValidators.of(response))
+        }
     }
 
     /**
      * Requests a raw response from the server, and returns it.
      * @return The raw response from the server, wrapped in an InputStream.
      */
-    @Throws(IssueInTransferException::class)
+    @Throws(IssueInTransferException::class, CantConnectException::class)
     fun getRaw(): InputStream {
         return getInputStream(send())
     }
@@ -249,41 +373,123 @@ constructor(private val method: Method, private val address: String) {
      */
     fun getJsonArray(): JsonArray = getJson() as JsonArray
 
-    //endregion
-    //region Helpers
-
     /**
-     * Connects to the provided URL.
+     * Requests a paginated list from the server, and reads a single field of each of its results.
      *
-     * @param url the URL the API should connect to
-     * @return The connection to the server, on success.
-     * @throws CantConnectException Failure to connect to the server.
+     * The response is read as a stream (see [JsonListReader]): only the requested field is kept in memory, the rest
+     * of each result is skipped.
+     *
+     * @param field the name of the field
+     * @return The value of the field, for each result that has it.
      */
-    @Throws(CantConnectException::class)
-    internal fun connect(url: URL): HttpURLConnection {
-        try {
-            return url.openConnection() as HttpURLConnection
+    @Throws(IssueInTransferException::class, CantConnectException::class)
+    fun getResultsField(field: String): List<String> {
+        headers["Accept"] = DataType.JSON.toString()
 
-        } catch (e: IOException) {
-            throw CantConnectException("Cannot connect to the server.", e)
+        return coalesce("results:$field") {
+            val input = getInputStream(send())
+
+            try {
+                read { JsonListReader(input).use { Collections.unmodifiableList(it.readField(field)) } }
+
+            } catch (e: IOException) {
+                throw IssueInTransferException("There was an I/O error while reading the results, or the server " +
+                    "sent invalid JSON data.", e)
+            }
         }
     }
 
+    /**
+     * Requests a JSON response from the server, without blocking the current thread.
+     *
+     * The returned future completes exceptionally with an [IssueInTransferException] if the server refuses the
+     * request, or with a [CantConnectException] if the server cannot be reached.
+     *
+     * @return The JSON response from the server, once received.
+     * @see getJson The blocking version
+     */
+    fun getJsonAsync(): CompletableFuture<JsonValue> {
+        headers["Accept"] = DataType.JSON.toString()
+        return coalesceAsync("json") { sendAsync { read { readJson(getInputStream(it)) } } }
+    }
+
+    /**
+     * Calls [getJsonAsync] and performs a cast to [JsonObject], for convenience.
+     */
+    fun getJsonObjectAsync(): CompletableFuture<JsonObject> = getJsonAsync().map { it as JsonObject }
+
+    /**
+     * Calls [getJsonAsync] and performs a cast to [JsonArray], for convenience.
+     */
+    fun getJsonArrayAsync(): CompletableFuture<JsonArray> = getJsonAsync().map { it as JsonArray }
+
+    /**
+     * Requests a raw response from the server, without blocking the current thread.
+     *
+     * The returned future completes exceptionally with an [IssueInTransferException] if the server refuses the
+     * request, or with a [CantConnectException] if the server cannot be reached.
+     *
+     * @return The raw response from the server, wrapped in an InputStream, once received.
+     * @see getRaw The blocking version
+     */
+    fun getRawAsync(): CompletableFuture<InputStream> = sendAsync { getInputStream(it) }
+
+    //endregion
+    //region Helpers
+
     /**
      * Converts the JSON parameters to an array of bytes that can be sent in the request. The charset used is
-     * specified in [CHARSET].
+     * specified in [CHARSET]; the encoding is the same as the body of the requests (see [JsonBody.encode]).
      *
      * @param params the JSON parameters to be converted.
      * @return A byte array representing the provided parameters.
      */
-    internal fun convertToByteArray(params: JsonValue): ByteArray {
-        try {
-            return params.toString().toByteArray(CHARSET)
+    internal fun convertToByteArray(params: JsonValue): ByteArray = JsonBody.encode(params)
+
+    /**
+     * Can this request be merged with identical requests that are running at the same time?
+     *
+     * Only GET requests without a body are merged; the token is part of the key, as the response depends on it.
+     */
+    private fun coalescingKey(kind: String): String? =
+        if (method == Method.GET && jsonOutput == null && fileOutput == null)
+            "$kind $method $requestUrl ${headers["Authorization"]} ${headers["If-None-Match"]} " +
+                headers["If-Modified-Since"]
+        else null
+
+    /**
+     * Executes [call], or waits for the result of an identical request (see [singleFlight]).
+     * @param kind how the response is read (two requests to the same URL are only identical if their responses are
+     * read the same way)
+     */
+    private fun <T> coalesce(kind: String, call: () -> T): T {
+        val key = coalescingKey(kind)
+        return if (key != null) singleFlight.execute(key, call) else call()
+    }
+
+    /**
+     * Same as [coalesce], for asynchronous calls.
+     */
+    private fun <T> coalesceAsync(kind: String, call: () -> CompletableFuture<T>): CompletableFuture<T> {
+        val key = coalescingKey(kind)
+        return if (key != null) singleFlight.executeAsync(key, call) else call()
+    }
 
-        } catch (e: UnsupportedEncodingException) {
-            throw RuntimeException("There was a problem with the character encoding '" + CHARSET + "'." +
-                "Because it is hard-written in the class, this error should never happen.", e)
+    /**
+     * Same as [CompletableFuture.thenApply], but exceptions are passed as-is instead of being wrapped in a
+     * [CompletionException].
+     */
+    private fun <A, B> CompletableFuture<A>.map(transform: (A) -> B): CompletableFuture<B> {
+        val result = CompletableFuture<B>()
+        whenComplete { value, error ->
+            if (error != null) result.completeExceptionally(error)
+            else try {
+                result.complete(transform(value))
+            } catch (e: Exception) {
+                result.completeExceptionally(e)
+            }
         }
+        return result
     }
 
     /**
@@ -293,22 +499,14 @@ constructor(private val method: Method, private val address: String) {
      * [getJson()][IssueInTransferException.json] to get the eventual error message.
      */
     @Throws(IssueInTransferException::class)
-    internal fun getInputStream(connection: HttpURLConnection): InputStream {
-        try {
-            println("$id: Beginning reception... HTTP Status: ${connection.responseCode}")
-            return connection.inputStream
+    internal fun getInputStream(response: RawResponse): InputStream {
+        if (response.isSuccessful)
+            return response.body
 
-        } catch (e: IOException) {
-            throw IssueInTransferException("$id: The server refused the request.", connection.errorStream)
-        }
+        RequestLog.warn(id) { "The server refused the request $method $address: HTTP ${response.status}" }
+        throw IssueInTransferException("$id: The server refused the request.", response.status, response.body)
     }
 
-    /**
-     * Extension function that writes a String a to DataOutputStream
-     * and handles the charset according to [CHARSET].
-     */
-    private fun DataOutputStream.write(msg: String) = this.write(msg.toByteArray(CHARSET))
-
     //endregion
 
     /**
@@ -328,6 +526,111 @@ constructor(private val method: Method, private val address: String) {
             get() = if (isTesting) API_URL_TESTING else API_URL
         //endregion
 
+        /**
+         * The [Transport] used to send every request.
+         *
+         * Defaults to the best transport of the JVM (see [Transport.platformDefault]): HTTP/2 on Java 11 and later,
+         * [UrlConnectionTransport] on Java 8. On Java 8, clients that send many requests should consider a
+         * [PooledTransport].
+         */
+        @JvmStatic
+        @Volatile
+        var transport: Transport = Transport.platformDefault()
+
+        /**
+         * Opens connections to the server ahead of the first requests (see [Transport.warmUp]).
+         *
+         * @param connections how many connections should be ready
+         * @return The number of connections that were opened.
+         * @throws IOException if the server cannot be reached.
+         */
+        @JvmStatic
+        @Throws(IOException::class)
+        fun warmUp(connections: Int): Int = transport.warmUp(URL(url), connections, timeouts)
+
+        /**
+         * Measures the requests sent to each [endpoint].
+         */
+        @JvmStatic
+        val metrics = MetricsRegistry()
+
+        /**
+         * Merges identical GET requests that are sent at the same time (for example, when several threads need the
+         * same User): only one of them is sent, and they all receive its response. See [SingleFlight.coalesced] for
+         * the number of requests that were saved.
+         *
+         * Because the response is shared, the JSON data returned by [getJson] for a GET request should not be
+         * modified.
+         */
+        @JvmStatic
+        val singleFlight = SingleFlight<String>()
+
+        /**
+         * How long requests wait for the server, unless their endpoint has its own [endpointTimeouts], or they set
+         * their own with [Request.timeouts].
+         */
+        @JvmStatic
+        @Volatile
+        var timeouts = Timeouts.DEFAULT
+
+        /**
+         * The timeouts of some endpoints, by prefix of their address (for example, `/areas/` for every request about
+         * areas). When several prefixes match an address, the longest one is used.
+         */
+        @JvmStatic
+        val endpointTimeouts: MutableMap<String, Timeouts> = ConcurrentHashMap()
+
+        private fun timeoutsOf(address: String): Timeouts {
+            var best: Map.Entry<String, Timeouts>? = null
+            for (entry in endpointTimeouts.entries)
+                if (address.startsWith(entry.key) && entry.key.length > best?.key?.length ?: -1)
+                    best = entry
+            return best?.value ?: timeouts
+        }
+
+        /**
+         * The interceptors every request goes through, before the built-in stages (see [Interceptor]).
+         */
+        @JvmStatic
+        val interceptors: MutableList<Interceptor> = CopyOnWriteArrayList()
+
+        /**
+         * The interceptors every attempt to send a request goes through, just before the [transport]. Contrary to
+         * [interceptors], they see each retry, and the headers added by the library.
+         */
+        @JvmStatic
+        val networkInterceptors: MutableList<Interceptor> = CopyOnWriteArrayList()
+
+        /**
+         * Decides whether requests that fail are sent again. Only idempotent requests are retried.
+         */
+        @JvmStatic
+        @Volatile
+        var retryPolicy = RetryPolicy()
+
+        /**
+         * Stops sending requests to the server while it is unreachable; see [CircuitBreaker.state] to know whether
+         * requests are currently suspended. Requests sent while the breaker is open fail with a
+         * [CantConnectException] caused by a [CircuitOpenException].
+         */
+        @JvmStatic
+        val circuitBreakers = CircuitBreakers()
+
+        /**
+         * Limits the number of requests sent at the same time; requests above the limit wait until another one is
+         * over. The limit adapts to the latency and the errors of the server. `null` means no limit.
+         */
+        @JvmStatic
+        @Volatile
+        var concurrencyLimiter: ConcurrencyLimiter? = ConcurrencyLimiter()
+
+        /**
+         * Limits the number of requests sent per second. `null` (the default) means no limit.
+         */
+        @JvmStatic
+        @Volatile
+        var rateLimiter: RateLimiter? = null
+
         /**
          * The charset that is used to readJson/write data to the server.
          */
@@ -335,10 +638,11 @@ constructor(private val method: Method, private val address: String) {
                   // which makes in unavailable from Java
         val CHARSET = Charsets.UTF_8
 
+        private const val HTTP_NOT_MODIFIED = 304
+
         //region Helpers
 
-        private var reqId = 0
-            @Synchronized set
+        private val reqId = AtomicInteger()
 
         /**
          * Reads the JSON data.
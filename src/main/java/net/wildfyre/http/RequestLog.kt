@@ -0,0 +1,91 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http
+
+/**
+ * The log of the requests sent by this library.
+ *
+ * Nothing is logged by default. To see the requests in the console:
+ * ```
+ * RequestLog.sink = AsyncLogSink(LogSink.Printer(System.out))
+ * RequestLog.level = LogLevel.DEBUG
+ * ```
+ *
+ * Messages are only built if their level is enabled: when logging is off, logging costs a single comparison.
+ * The values of sensitive headers (see [redact]) are never logged.
+ */
+object RequestLog {
+
+    /**
+     * The least important level that is logged.
+     */
+    @JvmStatic
+    @Volatile
+    var level: LogLevel = LogLevel.OFF
+
+    /**
+     * Where the events are sent.
+     */
+    @JvmStatic
+    @Volatile
+    var sink: LogSink = LogSink.Printer(System.out)
+
+    private val sensitiveHeaders = setOf("authorization", "proxy-authorization", "cookie", "set-cookie")
+
+    /**
+     * Is the given level logged?
+     */
+    @JvmStatic
+    fun isEnabled(level: LogLevel) = level <= this.level && level != LogLevel.OFF
+
+    /**
+     * Logs a message, if its level is enabled.
+     * @param level the level of the message
+     * @param requestId the ID of the request
+     * @param message builds the message; it is not called if the level is disabled
+     */
+    @JvmStatic
+    inline fun log(level: LogLevel, requestId: Int, message: () -> String) {
+        if (isEnabled(level))
+            sink.accept(LogEvent(System.currentTimeMillis(), level, requestId, Thread.currentThread().name, message()))
+    }
+
+    /** See [log]. */
+    inline fun error(requestId: Int, message: () -> String) = log(LogLevel.ERROR, requestId, message)
+
+    /** See [log]. */
+    inline fun warn(requestId: Int, message: () -> String) = log(LogLevel.WARN, requestId, message)
+
+    /** See [log]. */
+    inline fun info(requestId: Int, message: () -> String) = log(LogLevel.INFO, requestId, message)
+
+    /** See [log]. */
+    inline fun debug(requestId: Int, message: () -> String) = log(LogLevel.DEBUG, requestId, message)
+
+    /** See [log]. */
+    inline fun trace(requestId: Int, message: () -> String) = log(LogLevel.TRACE, requestId, message)
+
+    /**
+     * Hides the value of headers that contain secrets, such as the `Authorization` header.
+     * @param header the name of the header
+     * @param value the value of the header
+     * @return The value, or a placeholder if the header is sensitive.
+     */
+    @JvmStatic
+    fun redact(header: String, value: String): String =
+        if (header.toLowerCase() in sensitiveHeaders) "<redacted>" else value
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http
+
+import java.io.IOException
+import java.io.InterruptedIOException
+import java.util.concurrent.CompletableFuture
+
+/**
+ * Sends a request again when it fails, according to a [RetryPolicy].
+ *
+ * Asynchronous requests wait before retrying with [TransportExecutor.delay], so no thread sleeps in the meantime.
+ *
+ * This class is NOT part of the public API.
+ *
+ * @param onRetry called before each retry, with the number of the attempt that failed, the delay before the next
+ * one, and the reason of the failure
+ */
+internal class RetryInterceptor(
+    private val policy: RetryPolicy,
+    private val onRetry: (attempt: Int, delayMillis: Long, cause: String) -> Unit
+) : AsyncInterceptor {
+
+    @Throws(IOException::class)
+    override fun intercept(chain: Interceptor.Chain): RawResponse {
+        val request = chain.request
+        var attempt = 1
+
+        while (true) {
+            val delay = try {
+                val response = chain.proceed(request)
+                delayBeforeRetry(request, attempt, response, Deadline.current())
+                    .takeIf { it >= 0 } ?: return response
+
+            } catch (e: IOException) {
+                delayBeforeRetry(request, attempt, e, Deadline.current())
+                    .takeIf { it >= 0 } ?: throw e
+            }
+
+            try {
+                Thread.sleep(delay)
+            } catch (e: InterruptedException) {
+                Thread.currentThread().interrupt()
+                throw InterruptedIOException("Interrupted while waiting to retry ${request.url}")
+            }
+            attempt++
+        }
+    }
+
+    override fun interceptAsync(chain: InterceptorChain): CompletableFuture<RawResponse> =
+        attemptAsync(chain, 1)
+
+    private fun attemptAsync(chain: InterceptorChain, attempt: Int): CompletableFuture<RawResponse> =
+        chain.proceedAsync(chain.request).andThenCompose<RawResponse, RawResponse> { response, error ->
+            val delay = when {
+                error == null -> delayBeforeRetry(chain.request, attempt, response!!, chain.deadline)
+                error is IOException -> delayBeforeRetry(chain.request, attempt, error, chain.deadline)
+                else -> -1
+            }
+
+            when {
+                delay >= 0 -> TransportExecutor.delay(delay).thenCompose { attemptAsync(chain, attempt + 1) }
+                error != null -> failedFuture(error)
+                else -> CompletableFuture.completedFuture(response!!)
+            }
+        }
+
+    /**
+     * How long to wait before sending the request again after it was answered with [response]; if it should be
+     * retried, the response is closed.
+     *
+     * @return The delay in milliseconds, or -1 if the response should be returned as-is.
+     */
+    private fun delayBeforeRetry(request: RawRequest, attempt: Int, response: RawResponse, deadline: Deadline?): Long {
+        if (response.status !in RetryPolicy.TRANSIENT_STATUSES || !policy.canRetry(request.method, attempt))
+            return -1
+
+        val retryAfter = response.header("Retry-After")?.trim()?.toLongOrNull()?.times(1000) ?: -1
+        val delay = policy.delayMillis(attempt, retryAfter)
+        if (!fitsInDeadline(delay, deadline))
+            return -1
+
+        response.close()
+        return retry(attempt, delay, "HTTP ${response.status}")
+    }
+
+    /**
+     * How long to wait before sending the request again after it failed with [error].
+     *
+     * @return The delay in milliseconds, or -1 if the error should be thrown.
+     */
+    private fun delayBeforeRetry(request: RawRequest, attempt: Int, error: IOException, deadline: Deadline?): Long {
+        // When the breaker is open or the deadline has passed, retrying now would fail just the same
+        if (error is CircuitOpenException || error is DeadlineExceededException)
+            return -1
+
+        val delay = policy.delayMillis(attempt)
+        if (!policy.canRetry(request.method, attempt) || !fitsInDeadline(delay, deadline))
+            return -1
+
+        return retry(attempt, delay, error.toString())
+    }
+
+    /**
+     * Is there enough time left before the [deadline] to wait [delay] milliseconds, and try again?
+     */
+    private fun fitsInDeadline(delay: Long, deadline: Deadline?): Boolean =
+        deadline == null || deadline.remainingMillis() > delay
+
+    private fun retry(attempt: Int, delay: Long, cause: String): Long {
+        policy.retried()
+        onRetry(attempt, delay, cause)
+        return delay
+    }
+}
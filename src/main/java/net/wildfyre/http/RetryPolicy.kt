@@ -0,0 +1,97 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http
+
+import java.util.concurrent.ThreadLocalRandom
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Decides whether a failed request is sent again, and how long to wait before doing so.
+ *
+ * A request is retried when the server cannot be reached, or when it answers that it is temporarily unavailable
+ * (HTTP 502, 503 or 504), but only if its method is [idempotent][Method.isIdempotent]: a POST that timed out might
+ * have been executed anyway.
+ *
+ * The delay doubles after each failure (starting at [baseDelayMillis], up to [maxDelayMillis]), and is randomized
+ * between half and all of that value, so clients that failed together do not all come back at the same time.
+ *
+ * @param maxAttempts the maximum number of times a request is sent (1 means it is never retried)
+ * @param baseDelayMillis the delay before the first retry
+ * @param maxDelayMillis the maximum delay between two attempts
+ * @see Request.retryPolicy
+ */
+class RetryPolicy @JvmOverloads constructor(
+    val maxAttempts: Int = 3,
+    val baseDelayMillis: Long = 100,
+    val maxDelayMillis: Long = 2_000
+) {
+
+    init {
+        require(maxAttempts > 0) { "A request should be sent at least once: $maxAttempts" }
+        require(baseDelayMillis >= 0) { "The delay should not be negative: $baseDelayMillis" }
+        require(maxDelayMillis >= baseDelayMillis) { "The maximum delay should be at least $baseDelayMillis" }
+    }
+
+    private val retried = AtomicLong()
+
+    /**
+     * The number of times a request was retried with this policy.
+     */
+    val retries: Long
+        get() = retried.get()
+
+    /**
+     * Can a request be sent again, after it failed for the [attempt]-th time?
+     */
+    fun canRetry(method: Method, attempt: Int) = method.isIdempotent && attempt < maxAttempts
+
+    /**
+     * The delay before the next attempt, after a request failed for the [attempt]-th time.
+     *
+     * @param retryAfterMillis the delay asked by the server (`Retry-After` header), or -1
+     */
+    @JvmOverloads
+    fun delayMillis(attempt: Int, retryAfterMillis: Long = -1): Long {
+        if (retryAfterMillis >= 0)
+            return minOf(retryAfterMillis, maxDelayMillis)
+
+        val ceiling = minOf(maxDelayMillis, baseDelayMillis shl minOf(attempt - 1, MAX_SHIFT))
+        return ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1)
+    }
+
+    internal fun retried() = retried.incrementAndGet()
+
+    override fun toString() =
+        "RetryPolicy(maxAttempts=$maxAttempts, baseDelayMillis=$baseDelayMillis, maxDelayMillis=$maxDelayMillis)"
+
+    companion object {
+
+        // Beyond this, the delay would overflow
+        private const val MAX_SHIFT = 20
+
+        /**
+         * The statuses that mean the server is temporarily unavailable.
+         */
+        internal val TRANSIENT_STATUSES = setOf(502, 503, 504)
+
+        /**
+         * Never retries.
+         */
+        @JvmField
+        val NEVER = RetryPolicy(maxAttempts = 1)
+    }
+}
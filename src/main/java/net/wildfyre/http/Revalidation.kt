@@ -0,0 +1,37 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http
+
+import com.eclipsesource.json.JsonValue
+
+/**
+ * The result of a conditional request (see [Request.getJsonIfModified]).
+ *
+ * @param json the new data, or `null` if the data did not change since the validators were received
+ * @param validators the validators of the new data, or `null` if the server did not send any
+ */
+class Revalidation internal constructor(
+    val json: JsonValue?,
+    val validators: CacheValidators?
+) {
+
+    /**
+     * Did the data change? If it did not, [json] is `null` and the previous data can be kept.
+     */
+    val isModified: Boolean
+        get() = json != null
+}
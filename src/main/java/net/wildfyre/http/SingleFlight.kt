@@ -0,0 +1,158 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http
+
+import java.io.IOException
+import java.io.InterruptedIOException
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CompletionException
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Merges identical calls that run at the same time: the first caller executes the call, the others wait for its
+ * result instead of executing it again.
+ *
+ * Only calls that are running are merged; as soon as a call is finished, the next identical one is executed again.
+ * Callers that joined a call receive the same result (or the same exception) as the caller that executed it, so
+ * results should not be modified.
+ *
+ * @param K the type of the keys that identify identical calls
+ * @see Request.singleFlight
+ */
+class SingleFlight<K> {
+
+    private val calls = ConcurrentHashMap<K, CompletableFuture<Any?>>()
+
+    private val executedCalls = AtomicLong()
+    private val coalescedCalls = AtomicLong()
+
+    /**
+     * When disabled, every call is executed.
+     */
+    @Volatile
+    var isEnabled = true
+
+    /**
+     * How many calls were actually executed.
+     */
+    val executed: Long
+        get() = executedCalls.get()
+
+    /**
+     * How many calls joined an identical call instead of being executed.
+     */
+    val coalesced: Long
+        get() = coalescedCalls.get()
+
+    /**
+     * Executes a call, or waits for the result of an identical call that is already running.
+     *
+     * @param key identifies the call
+     * @param call the call
+     * @return The result of the call.
+     */
+    @Throws(IOException::class)
+    fun <V> execute(key: K, call: () -> V): V {
+        if (!isEnabled)
+            return call()
+
+        val mine = CompletableFuture<Any?>()
+        val running = calls.putIfAbsent(key, mine)
+
+        if (running != null) {
+            coalescedCalls.incrementAndGet()
+            return await(running)
+        }
+
+        executedCalls.incrementAndGet()
+        try {
+            val result = call()
+            calls.remove(key, mine)
+            mine.complete(result)
+            return result
+
+        } catch (e: Throwable) {
+            calls.remove(key, mine)
+            mine.completeExceptionally(e)
+            throw e
+        }
+    }
+
+    /**
+     * Same as [execute], for calls that do not block.
+     *
+     * @param key identifies the call
+     * @param call starts the call
+     * @return A future that completes with the result of the call. Each caller gets its own future, so cancelling
+     * it does not affect the other callers.
+     */
+    fun <V> executeAsync(key: K, call: () -> CompletableFuture<V>): CompletableFuture<V> {
+        if (!isEnabled)
+            return call()
+
+        val mine = CompletableFuture<Any?>()
+        val running = calls.putIfAbsent(key, mine)
+
+        val source = if (running != null) {
+            coalescedCalls.incrementAndGet()
+            running
+
+        } else {
+            executedCalls.incrementAndGet()
+            val started = try {
+                call()
+            } catch (e: Throwable) {
+                CompletableFuture<V>().apply { completeExceptionally(e) }
+            }
+
+            started.whenComplete { result, error ->
+                calls.remove(key, mine)
+                if (error != null) mine.completeExceptionally(unwrap(error))
+                else mine.complete(result)
+            }
+            mine
+        }
+
+        val result = CompletableFuture<V>()
+        source.whenComplete { value, error ->
+            @Suppress("UNCHECKED_CAST")
+            if (error != null) result.completeExceptionally(unwrap(error))
+            else result.complete(value as V)
+        }
+        return result
+    }
+
+    @Throws(IOException::class)
+    private fun <V> await(running: CompletableFuture<Any?>): V {
+        try {
+            @Suppress("UNCHECKED_CAST")
+            return running.get() as V
+
+        } catch (e: InterruptedException) {
+            Thread.currentThread().interrupt()
+            throw InterruptedIOException("Interrupted while waiting for an identical call.")
+
+        } catch (e: ExecutionException) {
+            throw e.cause ?: e
+        }
+    }
+
+    private fun unwrap(error: Throwable) =
+        if (error is CompletionException && error.cause != null) error.cause!! else error
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http
+
+import com.eclipsesource.json.JsonObject
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+
+/**
+ * An operation that is part of a trace, such as a [Request] (see [Tracing]).
+ *
+ * Identifiers follow the W3C Trace Context format: the trace ID is 32 hexadecimal characters, span IDs are 16.
+ *
+ * @param name what the span represents, for example `GET /users/{user}/`
+ * @param traceId the trace this span is part of
+ * @param spanId the identifier of this span
+ * @param parentSpanId the span that caused this one, or `null` if this span starts the trace
+ */
+class Span internal constructor(
+    val name: String,
+    val traceId: String,
+    val spanId: String,
+    val parentSpanId: String?
+) {
+
+    /**
+     * When this span started, in microseconds since the epoch.
+     */
+    val startEpochMicros = TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis())
+
+    private val startNanos = System.nanoTime()
+    private val ended = AtomicBoolean()
+    private val attributes = LinkedHashMap<String, Any>()
+
+    /**
+     * How long the span lasted, in nanoseconds, or -1 if it did not end yet.
+     */
+    @Volatile
+    var durationNanos = -1L
+        private set
+
+    /**
+     * Why the operation failed, or `null` if it succeeded (or did not end yet).
+     */
+    @Volatile
+    var error: String? = null
+        private set
+
+    /**
+     * Describes the span, for example with the status of a response.
+     * @return This span itself, to allow method-chaining.
+     */
+    fun setAttribute(key: String, value: Any): Span {
+        synchronized(attributes) { attributes[key] = value }
+        return this
+    }
+
+    /**
+     * The attributes of this span, in the order they were first set.
+     */
+    fun attributes(): Map<String, Any> = synchronized(attributes) { LinkedHashMap(attributes) }
+
+    /**
+     * The value of the `traceparent` header, that makes the server's spans children of this one.
+     */
+    fun traceparent() = "00-$traceId-$spanId-01"
+
+    /**
+     * Did this span end?
+     */
+    val isEnded: Boolean
+        get() = ended.get()
+
+    /**
+     * Ends this span, and sends it to the [exporter][Tracing.getExporter]. Only the first call has an effect.
+     * @param error why the operation failed, or `null` if it succeeded
+     */
+    @JvmOverloads
+    fun end(error: String? = null) {
+        if (!ended.compareAndSet(false, true))
+            return
+
+        durationNanos = System.nanoTime() - startNanos
+        this.error = error
+        Tracing.export(this)
+    }
+
+    /**
+     * Exports this span as JSON.
+     */
+    fun toJson(): JsonObject = JsonObject()
+        .add("name", name)
+        .add("traceId", traceId)
+        .add("spanId", spanId)
+        .apply { parentSpanId?.let { add("parentSpanId", it) } }
+        .add("start", startEpochMicros)
+        .add("duration", TimeUnit.NANOSECONDS.toMicros(durationNanos))
+        .apply { error?.let { add("error", it) } }
+        .add("attributes", JsonObject().apply {
+            for ((key, value) in attributes()) when (value) {
+                is Int -> add(key, value)
+                is Long -> add(key, value)
+                is Double -> add(key, value)
+                is Boolean -> add(key, value)
+                else -> add(key, value.toString())
+            }
+        })
+
+    override fun toString() = "Span($name, traceId=$traceId, spanId=$spanId, parentSpanId=$parentSpanId)"
+}
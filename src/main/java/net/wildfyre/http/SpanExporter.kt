@@ -0,0 +1,34 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http
+
+/**
+ * Where the [Span]s go once they end.
+ *
+ * Exporters are called from the thread that ends the span; exporters that do I/O should hand the spans to a
+ * background thread, as [FileSpanExporter] does.
+ *
+ * @see Tracing.setExporter
+ */
+interface SpanExporter {
+
+    /**
+     * Handles a span that ended.
+     * @param span the span
+     */
+    fun export(span: Span)
+}
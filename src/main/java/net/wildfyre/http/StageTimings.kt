@@ -0,0 +1,72 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http
+
+import java.util.concurrent.TimeUnit
+
+/**
+ * The time spent in each stage of a request (see [Interceptor]).
+ *
+ * The time of a stage does not include the time spent in the stages after it; when a stage is run several times
+ * (for example, when the request is retried), its times are added.
+ *
+ * @see Request.timings
+ */
+class StageTimings {
+
+    private val nanos = LinkedHashMap<String, Long>()
+
+    /**
+     * The time spent in each stage, in nanoseconds, in the order the stages were first run.
+     */
+    val stages: Map<String, Long>
+        @Synchronized get() = LinkedHashMap(nanos)
+
+    /**
+     * The time spent in all stages, in nanoseconds.
+     */
+    val totalNanos: Long
+        @Synchronized get() = nanos.values.sum()
+
+    /**
+     * The time spent in a stage, in nanoseconds (0 if it was not run).
+     */
+    @Synchronized
+    fun nanos(stage: String): Long = nanos[stage] ?: 0
+
+    @Synchronized
+    internal fun add(stage: String, elapsedNanos: Long) {
+        nanos[stage] = (nanos[stage] ?: 0) + elapsedNanos
+    }
+
+    /**
+     * Measures the time spent in [action], as the stage [stage].
+     */
+    internal inline fun <T> measure(stage: String, action: () -> T): T {
+        val start = System.nanoTime()
+        try {
+            return action()
+        } finally {
+            add(stage, System.nanoTime() - start)
+        }
+    }
+
+    @Synchronized
+    override fun toString() = nanos.entries.joinToString(prefix = "StageTimings(", postfix = ")") {
+        "${it.key}=${TimeUnit.NANOSECONDS.toMicros(it.value) / 1000.0}ms"
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http
+
+/**
+ * How long to wait for the server.
+ *
+ * A timeout of 0 means waiting forever.
+ *
+ * @param connectMillis how long to wait for a connection to the server
+ * @param readMillis how long to wait for the server to send data, once connected
+ * @see Request.timeouts
+ */
+class Timeouts @JvmOverloads constructor(
+    val connectMillis: Long = 10_000,
+    val readMillis: Long = 30_000
+) {
+
+    init {
+        require(connectMillis >= 0) { "The connect timeout should not be negative: $connectMillis" }
+        require(readMillis >= 0) { "The read timeout should not be negative: $readMillis" }
+    }
+
+    /**
+     * These timeouts, shortened so neither is longer than [millis].
+     */
+    fun atMost(millis: Long): Timeouts {
+        val limit = maxOf(1, millis) // 0 would mean 'forever'
+        return if (connectMillis in 1..limit && readMillis in 1..limit) this
+        else Timeouts(cap(connectMillis, limit), cap(readMillis, limit))
+    }
+
+    private fun cap(timeout: Long, limit: Long) = if (timeout == 0L) limit else minOf(timeout, limit)
+
+    override fun equals(other: Any?) =
+        other is Timeouts && other.connectMillis == connectMillis && other.readMillis == readMillis
+
+    override fun hashCode() = 31 * connectMillis.hashCode() + readMillis.hashCode()
+
+    override fun toString() = "Timeouts(connectMillis=$connectMillis, readMillis=$readMillis)"
+
+    companion object {
+
+        /**
+         * 10 seconds to connect, 30 seconds to read.
+         */
+        @JvmField
+        val DEFAULT = Timeouts()
+    }
+}
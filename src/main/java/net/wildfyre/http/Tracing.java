@@ -0,0 +1,193 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Traces the requests: every {@link Request} produces a {@link Span}, and sends a W3C {@code traceparent} header so
+ * the spans of the server are linked to it.
+ *
+ * <p>The span of a request is a child of the current span of its thread, if any (see
+ * {@link #inSpan(String, TracedAction)}); background updates (see {@link net.wildfyre.api.Internal#submitUpdate})
+ * are children of the span that was current when they were submitted.</p>
+ *
+ * <p>Spans are only recorded if an exporter is set (see {@link #setExporter(SpanExporter)}); the {@code traceparent}
+ * header is always sent.</p>
+ */
+public final class Tracing {
+
+    private static final ThreadLocal<Span> current = new ThreadLocal<>();
+
+    private static volatile SpanExporter exporter;
+
+    private static volatile SpanExporter failedExporter;
+
+    private Tracing() {
+    }
+
+    //region Exporter
+
+    /**
+     * The exporter that receives the spans.
+     * @return The exporter, or {@code null} if spans are not exported.
+     */
+    public static SpanExporter getExporter() {
+        return exporter;
+    }
+
+    /**
+     * Sets the exporter that receives the spans.
+     * @param exporter the exporter, or {@code null} to stop exporting spans
+     */
+    public static void setExporter(SpanExporter exporter) {
+        Tracing.exporter = exporter;
+    }
+
+    static void export(Span span) {
+        SpanExporter exporter = Tracing.exporter;
+        if (exporter == null)
+            return;
+
+        try {
+            exporter.export(span);
+        } catch (RuntimeException e) {
+            // Only once per exporter: spans are exported by every request, a broken exporter would flood the log
+            if (failedExporter != exporter) {
+                failedExporter = exporter;
+                RequestLog.log(LogLevel.WARN, -1, () -> "The exporter " + exporter + " failed to export " + span
+                    + " (" + e + "); further failures of this exporter are not logged");
+            }
+        }
+    }
+
+    //endregion
+    //region Spans
+
+    /**
+     * The current span of this thread.
+     * @return The span, or {@code null} if there is none.
+     */
+    public static Span current() {
+        return current.get();
+    }
+
+    /**
+     * Starts a span, child of the current span of this thread (or of a new trace if there is none). The span is not
+     * made current; it should be ended with {@link Span#end(String)}.
+     * @param name what the span represents
+     * @return The span.
+     */
+    public static Span start(String name) {
+        return start(name, current());
+    }
+
+    /**
+     * Starts a span, child of the given span. The span is not made current; it should be ended with
+     * {@link Span#end(String)}.
+     * @param name what the span represents
+     * @param parent the parent of the span, or {@code null} to start a new trace
+     * @return The span.
+     */
+    public static Span start(String name, Span parent) {
+        return parent == null
+            ? new Span(name, randomId(2), randomId(1), null)
+            : new Span(name, parent.getTraceId(), randomId(1), parent.getSpanId());
+    }
+
+    /**
+     * Runs an action in a new span, child of the current span of this thread. The span is current during the action,
+     * and ends with it.
+     * @param name what the span represents
+     * @param action the action
+     * @return The result of the action.
+     * @throws E if the action fails (the span then ends with an error).
+     */
+    public static <T, E extends Exception> T inSpan(String name, TracedAction<T, E> action) throws E {
+        return inSpan(name, current(), action);
+    }
+
+    /**
+     * Runs an action in a new span, child of the given span (for example, a span of another thread). The span is
+     * current during the action, and ends with it.
+     * @param name what the span represents
+     * @param parent the parent of the span, or {@code null} to start a new trace
+     * @param action the action
+     * @return The result of the action.
+     * @throws E if the action fails (the span then ends with an error).
+     */
+    public static <T, E extends Exception> T inSpan(String name, Span parent, TracedAction<T, E> action) throws E {
+        Span span = start(name, parent);
+        Span previous = current.get();
+        current.set(span);
+
+        try {
+            T result = action.run();
+            span.end(null);
+            return result;
+
+        } catch (Exception | Error e) {
+            span.end(e.toString());
+            throw e;
+
+        } finally {
+            if (previous == null) current.remove();
+            else current.set(previous);
+        }
+    }
+
+    /**
+     * Runs an action with the given span as the current span of this thread (for example, to continue the work of
+     * another thread), then restores the previous one. The span is not ended.
+     * @param span the span, or {@code null} for none
+     * @param action the action
+     * @return The result of the action.
+     * @throws E if the action fails.
+     */
+    public static <T, E extends Exception> T withCurrent(Span span, TracedAction<T, E> action) throws E {
+        Span previous = current.get();
+        current.set(span);
+
+        try {
+            return action.run();
+        } finally {
+            if (previous == null) current.remove();
+            else current.set(previous);
+        }
+    }
+
+    //endregion
+
+    /**
+     * A random, non-zero identifier of the given number of 64-bit words, in hexadecimal.
+     */
+    private static String randomId(int words) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        StringBuilder id = new StringBuilder(words * 16);
+        for (int i = 0; i < words; i++) {
+            long word = random.nextLong();
+            while (word == 0 && i == words - 1)
+                word = random.nextLong(); // All zeros is an invalid identifier
+            String hex = Long.toHexString(word);
+            for (int pad = hex.length(); pad < 16; pad++)
+                id.append('0');
+            id.append(hex);
+        }
+        return id.toString();
+    }
+
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http
+
+import java.io.FilterInputStream
+import java.io.IOException
+import java.io.InputStream
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.TimeUnit
+
+/**
+ * Traces a request: sends the `traceparent` header, and records a [Span] with the method, the endpoint, the status,
+ * the number of bytes and the [timings] of the request. The span ends once the response has been read (or closed).
+ *
+ * The span is a child of the [current span][Tracing.current] of the thread that sends the request.
+ *
+ * This class is NOT part of the public API.
+ *
+ * @param endpoint the template of the address of the request
+ */
+internal class TracingInterceptor(
+    private val endpoint: String,
+    private val timings: StageTimings
+) : AsyncInterceptor {
+
+    @Throws(IOException::class)
+    override fun intercept(chain: Interceptor.Chain): RawResponse {
+        val span = start(chain.request, Tracing.current())
+
+        val response = try {
+            chain.proceed(traced(chain.request, span))
+        } catch (e: IOException) {
+            span.end(e.toString())
+            throw e
+        }
+        return observe(response, span)
+    }
+
+    override fun interceptAsync(chain: InterceptorChain): CompletableFuture<RawResponse> {
+        val span = start(chain.request, chain.span)
+
+        return chain.proceedAsync(traced(chain.request, span)).andThen { response, error ->
+            if (error != null) {
+                span.end(error.toString())
+                throw error
+            }
+            observe(response!!, span)
+        }
+    }
+
+    private fun start(request: RawRequest, parent: Span?): Span =
+        Tracing.start("${request.method} $endpoint", parent)
+            .setAttribute("http.method", request.method.name)
+            .setAttribute("http.endpoint", endpoint)
+            .setAttribute("http.url", request.url.toString())
+            .setAttribute("http.request_bytes", request.body?.contentLength ?: 0L)
+
+    private fun traced(request: RawRequest, span: Span) =
+        request.copy(headers = request.headers + (TRACEPARENT to span.traceparent()))
+
+    /**
+     * Ends the [span] once the body of the [response] has been read.
+     */
+    private fun observe(response: RawResponse, span: Span): RawResponse {
+        span.setAttribute("http.status", response.status)
+
+        val body = EndObservingInputStream(response.body) { error ->
+            val stats = response.transferStats
+            span.setAttribute("http.response_bytes", stats.compressedBytes)
+                .setAttribute("http.response_bytes_uncompressed", stats.uncompressedBytes)
+            for ((stage, nanos) in timings.stages)
+                span.setAttribute("timing.$stage", TimeUnit.NANOSECONDS.toMicros(nanos))
+            span.end(error?.toString())
+        }
+        return RawResponse(response.status, response.headers, body, response.transferStats)
+    }
+
+    companion object {
+        const val TRACEPARENT = "traceparent"
+    }
+}
+
+/**
+ * Calls [onEnd] once, when the end of the stream is reached, when it is closed, or when reading fails.
+ */
+internal class EndObservingInputStream(
+    input: InputStream,
+    private val onEnd: (IOException?) -> Unit
+) : FilterInputStream(input) {
+
+    private var ended = false
+
+    private fun end(error: IOException?) {
+        if (ended) return
+        ended = true
+        onEnd(error)
+    }
+
+    private inline fun observe(read: () -> Int): Int = try {
+        read().also { if (it == -1) end(null) }
+    } catch (e: IOException) {
+        end(e)
+        throw e
+    }
+
+    override fun read(): Int = observe { super.read() }
+
+    override fun read(b: ByteArray, off: Int, len: Int): Int = observe { super.read(b, off, len) }
+
+    override fun close() {
+        try {
+            super.close()
+        } finally {
+            end(null)
+        }
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http
+
+/**
+ * How many bytes of a response were received, before and after decompression.
+ *
+ * The counters are updated while the body of the response is read.
+ *
+ * @see Request.transferStats
+ */
+class TransferStats {
+
+    /**
+     * The number of bytes of the body received from the network (compressed, if the server compressed it).
+     */
+    @Volatile
+    var compressedBytes: Long = 0
+        internal set
+
+    /**
+     * The number of bytes of the body after decompression.
+     */
+    @Volatile
+    var uncompressedBytes: Long = 0
+        internal set
+
+    /**
+     * The ratio between the size of the body before and after decompression (1 if it was not compressed).
+     */
+    val compressionRatio: Double
+        get() = if (compressedBytes > 0) uncompressedBytes.toDouble() / compressedBytes else 1.0
+
+    override fun toString() =
+        "TransferStats(compressedBytes=$compressedBytes, uncompressedBytes=$uncompressedBytes)"
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http
+
+import java.io.Closeable
+import java.io.IOException
+import java.net.InetAddress
+import java.net.URL
+import java.util.concurrent.CompletableFuture
+
+/**
+ * The layer that moves the bytes of a [Request] to the server, and back.
+ *
+ * [Request] decides *what* is sent (headers, body, how the response is read), the Transport decides *how* it is sent.
+ * Three implementations are provided:
+ *  - [UrlConnectionTransport] (the default on Java 8), which opens a new [java.net.HttpURLConnection] for every
+ *  request,
+ *  - [PooledTransport], which keeps connections alive and reuses them between requests,
+ *  - on Java 11 and later, `HttpClientTransport`, which negotiates HTTP/2 and multiplexes requests over a single
+ *  connection (see [platformDefault]).
+ *
+ * [RecordingTransport] and [ReplayTransport] record the exchanges of another transport to a file, and replay them
+ * without the server (for example, to benchmark the API offline).
+ *
+ * The transport used by every request can be selected with [Request.transport].
+ *
+ * All of them ask the server to compress its responses (`Accept-Encoding: gzip, deflate`), and decompress
+ * them while they are read; [RawResponse.transferStats] counts the bytes before and after decompression.
+ */
+interface Transport : Closeable {
+
+    /**
+     * Sends a request to the server, and returns as soon as the response's headers are received.
+     *
+     * The body of the response is not read by this method; the caller is responsible for reading it (or closing it)
+     * so the transport can release the underlying connection.
+     *
+     * @param request the request
+     * @return The response of the server.
+     * @throws IOException if the server cannot be reached.
+     */
+    @Throws(IOException::class)
+    fun send(request: RawRequest): RawResponse
+
+    /**
+     * Sends a request to the server without blocking the current thread.
+     *
+     * Transports that cannot do non-blocking I/O use the default implementation, which calls [send] on a small
+     * shared pool of threads (see [TransportExecutor]); requests that do not fit in that pool wait in a queue
+     * instead of creating new threads.
+     *
+     * @param request the request
+     * @return The response of the server, once its headers are received. If the server cannot be reached, the
+     * future completes exceptionally with an [IOException].
+     */
+    fun sendAsync(request: RawRequest): CompletableFuture<RawResponse> {
+        val result = CompletableFuture<RawResponse>()
+
+        TransportExecutor.execute {
+            try {
+                result.complete(send(request))
+            } catch (e: Exception) {
+                result.completeExceptionally(e)
+            }
+        }
+
+        return result
+    }
+
+    /**
+     * Prepares this transport to send requests to a server, so that the first requests do not pay for opening the
+     * connections (DNS, TCP and TLS).
+     *
+     * By default, only the address of the server is resolved; transports that keep connections alive open them.
+     *
+     * @param url the address of the server
+     * @param connections how many connections should be ready
+     * @param timeouts how long opening each connection can take
+     * @return The number of connections that were opened.
+     * @throws IOException if the server cannot be reached.
+     */
+    @Throws(IOException::class)
+    fun warmUp(url: URL, connections: Int, timeouts: Timeouts): Int {
+        InetAddress.getAllByName(url.host)
+        return 0
+    }
+
+    /**
+     * Releases the resources held by this transport (open connections, etc).
+     */
+    override fun close() {
+        // Nothing to do by default
+    }
+
+    companion object {
+
+        /**
+         * The system property that selects the default transport: `http1` always uses [UrlConnectionTransport].
+         */
+        const val TRANSPORT_PROPERTY = "net.wildfyre.http.transport"
+
+        private const val HTTP_CLIENT_TRANSPORT = "net.wildfyre.http.HttpClientTransport"
+
+        /**
+         * The best transport available on this JVM.
+         *
+         * On Java 11 and later, this is the `HttpClientTransport` of the multi-release JAR, which multiplexes the
+         * requests over HTTP/2; on Java 8, or if the [TRANSPORT_PROPERTY] system property is `http1`, this is
+         * [UrlConnectionTransport].
+         */
+        @JvmStatic
+        fun platformDefault(): Transport {
+            if (System.getProperty(TRANSPORT_PROPERTY) == "http1")
+                return UrlConnectionTransport()
+
+            return try {
+                Class.forName(HTTP_CLIENT_TRANSPORT).getConstructor().newInstance() as Transport
+            } catch (e: ReflectiveOperationException) {
+                UrlConnectionTransport() // Java 8, the class is not visible
+            } catch (e: LinkageError) {
+                UrlConnectionTransport() // Java 8 and a JAR that is not multi-release aware
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http
+
+import java.util.concurrent.Executor
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.ScheduledThreadPoolExecutor
+import java.util.concurrent.ThreadFactory
+import java.util.concurrent.ThreadPoolExecutor
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * The threads on which blocking transports run asynchronous requests (see [Transport.sendAsync]).
+ *
+ * The number of threads is bounded (see [THREADS]); when they are all busy, requests wait in a queue. Threads are
+ * daemons, and stop after a minute without work.
+ *
+ * Waits, such as the backoff between retries, do not hold one of these threads: they are timed by a single
+ * scheduler thread (see [delay]).
+ */
+object TransportExecutor : Executor {
+
+    /**
+     * The maximum number of threads.
+     */
+    @JvmField
+    val THREADS = maxOf(4, Runtime.getRuntime().availableProcessors() * 2)
+
+    private val count = AtomicInteger()
+
+    private val pool = ThreadPoolExecutor(
+        THREADS, THREADS,
+        1, TimeUnit.MINUTES,
+        LinkedBlockingQueue(),
+        ThreadFactory { task ->
+            Thread(task, "wildfyre-io-${count.incrementAndGet()}").apply { isDaemon = true }
+        }
+    ).apply { allowCoreThreadTimeOut(true) }
+
+    private val timer = ScheduledThreadPoolExecutor(1, ThreadFactory { task ->
+        Thread(task, "wildfyre-timer").apply { isDaemon = true }
+    }).apply { removeOnCancelPolicy = true }
+
+    override fun execute(command: Runnable) = pool.execute(command)
+
+    /**
+     * A future that completes on one of these threads after [millis] milliseconds, without blocking a thread in the
+     * meantime.
+     */
+    fun delay(millis: Long): CompletableFuture<Unit> {
+        val result = CompletableFuture<Unit>()
+        if (millis <= 0)
+            execute(Runnable { result.complete(Unit) })
+        else
+            timer.schedule({ execute(Runnable { result.complete(Unit) }) }, millis, TimeUnit.MILLISECONDS)
+        return result
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http
+
+import java.io.IOException
+import java.util.concurrent.CompletableFuture
+
+/**
+ * The last stage of the pipeline: sends the request with a [Transport], with [Transport.sendAsync] for asynchronous
+ * requests.
+ *
+ * This class is NOT part of the public API.
+ */
+internal class TransportInterceptor(private val transport: Transport) : AsyncInterceptor {
+
+    @Throws(IOException::class)
+    override fun intercept(chain: Interceptor.Chain): RawResponse = transport.send(chain.request)
+
+    override fun interceptAsync(chain: InterceptorChain): CompletableFuture<RawResponse> =
+        transport.sendAsync(chain.request)
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http;
+
+/**
+ * Receives the progress of the upload of the body of a {@link Request}.
+ *
+ * <p>The listener is called from the thread that sends the request, every time a significant part of the body has
+ * been written, and once the body is fully written (see {@link UploadProgress#isDone()}).</p>
+ *
+ * @see Request#onUploadProgress(UploadListener)
+ */
+@FunctionalInterface
+public interface UploadListener {
+
+    /**
+     * Called when some of the body has been sent.
+     * @param progress how much of the body has been sent, and how fast.
+     */
+    void onProgress(UploadProgress progress);
+
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http;
+
+/**
+ * How much of the body of a request has been sent.
+ *
+ * @see UploadListener
+ */
+public final class UploadProgress {
+
+    private final long sent;
+    private final long total;
+    private final long elapsedNanos;
+    private final boolean done;
+
+    UploadProgress(long sent, long total, long elapsedNanos, boolean done) {
+        this.sent = sent;
+        this.total = total;
+        this.elapsedNanos = elapsedNanos;
+        this.done = done;
+    }
+
+    /**
+     * How many bytes have been sent.
+     * @return The number of bytes sent so far.
+     */
+    public long sent() {
+        return sent;
+    }
+
+    /**
+     * The size of the body.
+     * @return The size of the body in bytes, or {@code -1} if it is not known.
+     */
+    public long total() {
+        return total;
+    }
+
+    /**
+     * The proportion of the body that has been sent.
+     * @return A number between 0 and 1, or {@code -1} if the size of the body is not known.
+     */
+    public double fraction() {
+        return total > 0 ? (double) sent / total : (total == 0 ? 1 : -1);
+    }
+
+    /**
+     * How long the upload has been running.
+     * @return The time since the upload started, in nanoseconds.
+     */
+    public long elapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * The average throughput of the upload.
+     * @return The average number of bytes sent per second since the upload started.
+     */
+    public double bytesPerSecond() {
+        return elapsedNanos > 0 ? sent * 1e9 / elapsedNanos : 0;
+    }
+
+    /**
+     * Is the body fully sent?
+     * @return {@code true} if this is the last report for this request.
+     */
+    public boolean isDone() {
+        return done;
+    }
+
+    @Override
+    public String toString() {
+        return "UploadProgress{" + "sent=" + sent +
+            ", total=" + total +
+            ", elapsedNanos=" + elapsedNanos +
+            ", bytesPerSecond=" + (long) bytesPerSecond() +
+            ", done=" + done +
+            '}';
+    }
+}
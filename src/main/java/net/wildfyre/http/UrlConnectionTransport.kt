@@ -0,0 +1,63 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http
+
+import java.io.IOException
+import java.net.HttpURLConnection
+
+/**
+ * A [Transport] that opens a new [HttpURLConnection] for every request.
+ *
+ * Connection reuse is left to the JDK, which keeps a few connections alive on its own (see the `http.keepAlive` and
+ * `http.maxConnections` system properties). If you need control over it, see [PooledTransport].
+ */
+class UrlConnectionTransport : Transport {
+
+    @Throws(IOException::class)
+    override fun send(request: RawRequest): RawResponse {
+        val conn = request.url.openConnection() as HttpURLConnection
+        conn.doInput = true // We always want input
+        conn.requestMethod = request.method.verb
+        conn.connectTimeout = request.timeouts.connectMillis.toInt()
+        conn.readTimeout = request.timeouts.readMillis.toInt()
+
+        for ((header, value) in Compression.advertise(request))
+            conn.setRequestProperty(header, value)
+
+        request.body?.let {
+            conn.setRequestProperty("Content-Type", it.contentType)
+            conn.doOutput = true
+
+            // Otherwise, HttpURLConnection copies the whole body in memory before sending it
+            if (it.contentLength >= 0)
+                conn.setFixedLengthStreamingMode(it.contentLength)
+            else
+                conn.setChunkedStreamingMode(BufferPool.BUFFER_SIZE)
+
+            conn.outputStream.use { output -> it.writeTo(output) }
+        }
+
+        val status = conn.responseCode
+        val body = if (status < 400) conn.inputStream else conn.errorStream
+
+        return Compression.decode(RawResponse(
+            status,
+            conn.headerFields.filterKeys { it != null }, // The status line is stored with a 'null' key
+            body
+        ))
+    }
+}
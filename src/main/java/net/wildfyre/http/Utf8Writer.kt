@@ -0,0 +1,136 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http
+
+import java.io.Writer
+
+/**
+ * A [Writer] that encodes characters to UTF-8 directly into buffers of the [BufferPool], without the intermediate
+ * buffers of an [java.io.OutputStreamWriter].
+ *
+ * Once everything is written, the bytes are copied once to an array of the exact size with [toByteArray], and the
+ * buffers are given back to the pool with [close].
+ *
+ * This class is NOT part of the public API.
+ */
+internal class Utf8Writer : Writer() {
+
+    private val full = ArrayList<ByteArray>()
+    private var current = BufferPool.acquire()
+    private var position = 0
+    private var highSurrogate = 0
+
+    /**
+     * The number of bytes written so far.
+     */
+    val size: Int
+        get() = full.size * BufferPool.BUFFER_SIZE + position
+
+    private fun put(byte: Int) {
+        if (position == current.size) {
+            full.add(current)
+            current = BufferPool.acquire()
+            position = 0
+        }
+        current[position++] = byte.toByte()
+    }
+
+    override fun write(c: Int) = encode(c.toChar())
+
+    override fun write(cbuf: CharArray, off: Int, len: Int) {
+        for (i in off until off + len)
+            encode(cbuf[i])
+    }
+
+    override fun write(str: String, off: Int, len: Int) {
+        for (i in off until off + len)
+            encode(str[i])
+    }
+
+    private fun encode(c: Char) {
+        val code = c.toInt()
+
+        if (highSurrogate != 0) {
+            val high = highSurrogate
+            highSurrogate = 0
+
+            if (Character.isLowSurrogate(c)) {
+                val codePoint = Character.toCodePoint(high.toChar(), c)
+                put(0xF0 or (codePoint shr 18))
+                put(0x80 or (codePoint shr 12 and 0x3F))
+                put(0x80 or (codePoint shr 6 and 0x3F))
+                put(0x80 or (codePoint and 0x3F))
+                return
+            }
+
+            put(REPLACEMENT) // Lone high surrogate
+        }
+
+        when {
+            code < 0x80 -> put(code)
+            code < 0x800 -> {
+                put(0xC0 or (code shr 6))
+                put(0x80 or (code and 0x3F))
+            }
+            Character.isHighSurrogate(c) -> highSurrogate = code
+            Character.isLowSurrogate(c) -> put(REPLACEMENT) // Lone low surrogate
+            else -> {
+                put(0xE0 or (code shr 12))
+                put(0x80 or (code shr 6 and 0x3F))
+                put(0x80 or (code and 0x3F))
+            }
+        }
+    }
+
+    /**
+     * The bytes written so far, in an array of the exact size.
+     */
+    fun toByteArray(): ByteArray {
+        if (highSurrogate != 0) {
+            highSurrogate = 0
+            put(REPLACEMENT) // The text ended in the middle of a pair
+        }
+
+        val bytes = ByteArray(size)
+        var offset = 0
+        for (buffer in full) {
+            System.arraycopy(buffer, 0, bytes, offset, buffer.size)
+            offset += buffer.size
+        }
+        System.arraycopy(current, 0, bytes, offset, position)
+        return bytes
+    }
+
+    override fun flush() {
+        // Nothing to do, everything is already in the buffers
+    }
+
+    /**
+     * Gives the buffers back to the pool; this writer should not be used anymore.
+     */
+    override fun close() {
+        full.forEach { BufferPool.release(it) }
+        full.clear()
+        BufferPool.release(current)
+        position = 0
+    }
+
+    private companion object {
+        /** What the JDK writes for characters that cannot be encoded ('?'). */
+        const val REPLACEMENT = '?'.toInt()
+    }
+}
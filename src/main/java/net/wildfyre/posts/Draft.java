@@ -112,7 +112,7 @@ public class Draft extends PostData implements PostData.Setters<Draft> {
 
     JsonObject createAndPublish(){
         try {
-            return new Request(POST, "/areas/" + areaID + "/")
+            return new Request(POST, "/areas/{area}/", areaID)
                 .addToken(Internal.token())
                 .addJson(toJsonSimple())
                 .getJson()
@@ -129,7 +129,7 @@ public class Draft extends PostData implements PostData.Setters<Draft> {
 
     JsonObject publishDraft(){
         try {
-            return new Request(POST, "/areas/" + areaID + "/drafts/" + postID + "/publish/")
+            return new Request(POST, "/areas/{area}/drafts/{draft}/publish/", areaID, postID)
                 .addToken(Internal.token())
                 .getJson().asObject();
 
@@ -160,7 +160,7 @@ public class Draft extends PostData implements PostData.Setters<Draft> {
 
     void saveFirstTime(){
         try {
-            JsonObject json = new Request(POST, "/areas/" + areaID + "/drafts/")
+            JsonObject json = new Request(POST, "/areas/{area}/drafts/", areaID)
                 .addToken(Internal.token())
                 .addJson(toJsonSimple())
                 .getJson()
@@ -182,7 +182,7 @@ public class Draft extends PostData implements PostData.Setters<Draft> {
 
     void saveAsEdit(){
         try {
-            new Request(PATCH, "/areas/" + areaID + "/drafts/" + postID + "/")
+            new Request(PATCH, "/areas/{area}/drafts/{draft}/", areaID, postID)
                 .addToken(Internal.token())
                 .addJson(toJsonSimple())
                 .getJson();
@@ -218,7 +218,7 @@ public class Draft extends PostData implements PostData.Setters<Draft> {
         deleteLocal();
 
         try {
-            new Request(DELETE, "/areas/" + areaID + "/drafts/" + postID)
+            new Request(DELETE, "/areas/{area}/drafts/{draft}", areaID, postID)
                 .addToken(Internal.token())
                 .getRaw();
             //Nothing to do
@@ -254,6 +254,7 @@ public class Draft extends PostData implements PostData.Setters<Draft> {
     @Override
     public void update() {
         //TODO: See T256 about nesting
+        updateSkipped();
     }
 
     //endregion
@@ -22,6 +22,7 @@ import net.wildfyre.descriptors.CacheManager;
 import net.wildfyre.descriptors.NoSuchEntityException;
 import net.wildfyre.http.IssueInTransferException;
 import net.wildfyre.http.Request;
+import net.wildfyre.http.Revalidation;
 import net.wildfyre.utils.InvalidJsonException;
 
 import static net.wildfyre.http.Method.GET;
@@ -63,7 +64,9 @@ public class Post extends PostData {
     //endregion
     //region Cache manager
 
-    private static CacheManager cacheManager = new CacheManager().setExpirationTime(1000*60*10); // 10 minutes
+    private static CacheManager cacheManager = new CacheManager()
+        .setExpirationTime(1000*60*10) // 10 minutes
+        .setMaximumWeight(10_000); // per Area
 
     @Override
     public CacheManager cacheManager() {
@@ -85,14 +88,20 @@ public class Post extends PostData {
     @Override
     public void update() throws NoSuchEntityException, Request.CantConnectException {
         try {
-            JsonObject json = new Request(GET, "/areas/" + areaID + "/" + postID + "/")
+            Revalidation response = new Request(GET, "/areas/{area}/{post}/", areaID, postID)
                 .addToken(Internal.token())
-                .getJson()
-                .asObject();
+                .revalidate(validators())
+                .getJsonIfModified();
 
-            super.update(json);
+            if(!response.isModified()) { // Nothing changed since the last update
+                this.use();
+                return;
+            }
+
+            super.update(response.getJson().asObject());
+            setValidators(response.getValidators());
         } catch (IssueInTransferException e) {
-            e.ifDetailsAre("Not found.",  () -> {
+            e.ifDetailsAre(IssueInTransferException.NOT_FOUND,  () -> {
                 throw new NoSuchEntityException("This object was deleted.", this);
             });
 
@@ -21,6 +21,7 @@ import com.eclipsesource.json.JsonArray;
 import com.eclipsesource.json.JsonObject;
 import net.wildfyre.areas.Area;
 import net.wildfyre.areas.Areas;
+import net.wildfyre.descriptors.CacheManager;
 import net.wildfyre.descriptors.Descriptor;
 import net.wildfyre.users.User;
 import net.wildfyre.users.Users;
@@ -275,6 +276,20 @@ abstract class PostData extends Descriptor {
         return postID;
     }
 
+    /**
+     * The weight of a post is about one unit per KiB of text, plus the weight of its comments (see
+     * {@link CacheManager#setMaximumWeight(long)}).
+     * @return The weight of this post.
+     */
+    @Override
+    public int weight(){
+        int weight = 1 + (text == null ? 0 : text.length() / 1024);
+        if(comments != null)
+            for(Comment comment : comments)
+                weight += 1 + (comment.text() == null ? 0 : comment.text().length() / 1024);
+        return weight;
+    }
+
     /**
      * The comments on this post, as a List.
      *
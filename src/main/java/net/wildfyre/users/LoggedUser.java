@@ -130,7 +130,7 @@ public class LoggedUser extends User {
                     .addJson(json)
                     .getJson();
 
-                this.update();
+                this.refresh();
 
             } catch (IssueInTransferException e) {
                 throw new RuntimeException("Something unforeseen happened during the edition of the user.", e);
@@ -17,12 +17,12 @@
 package net.wildfyre.users;
 
 import com.eclipsesource.json.JsonObject;
-import com.eclipsesource.json.JsonValue;
 import net.wildfyre.descriptors.CacheManager;
 import net.wildfyre.descriptors.Descriptor;
 import net.wildfyre.descriptors.NoSuchEntityException;
 import net.wildfyre.http.IssueInTransferException;
 import net.wildfyre.http.Request;
+import net.wildfyre.http.Revalidation;
 
 import java.net.MalformedURLException;
 import java.net.URL;
@@ -54,15 +54,25 @@ public class User extends Descriptor {
 
     @Override
     public void update() throws NoSuchEntityException, Request.CantConnectException {
-        if(!Users.getCached(this.ID).isPresent()) {
+        // A user that was never loaded is always fetched: whoever created it is waiting for its data
+        if(!isNew() && !Users.getCached(this.ID).isPresent()) {
             System.err.println("The user " + ID + " is not even in the cache, aborting update early.");
+            updateSkipped();
             return;
         }
 
         try {
-            JsonObject values = new Request(GET, "/users/" + ID + "/")
-                .getJson()
-                .asObject();
+            Revalidation response = new Request(GET, "/users/{user}/", ID)
+                .revalidate(validators())
+                .getJsonIfModified();
+
+            if(!response.isModified()) { // Nothing changed since the last update
+                this.use();
+                return;
+            }
+
+            JsonObject values = response.getJson().asObject();
+            setValidators(response.getValidators());
 
             // Use the old value as default value: if nothing is specified, keep the old value
             name =      values.getString("name", name);
@@ -78,12 +88,10 @@ public class User extends Descriptor {
             this.use();
 
         } catch (IssueInTransferException e) {
-            JsonValue j = e.getJson();
-            if(j != null)
-                if(j.asObject().getString("detail", null).equals("Not found.")) {
-                    Users.users.remove(this.ID);
-                    throw new NoSuchEntityException("The requested user does not exist!", this);
-                }
+            if(e.isNotFound()) {
+                Users.users.remove(this.ID);
+                throw new NoSuchEntityException("The requested user does not exist!", this);
+            }
         }
     }
 
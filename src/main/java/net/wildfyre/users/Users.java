@@ -23,12 +23,10 @@ import net.wildfyre.descriptors.CacheManager;
 import net.wildfyre.descriptors.NoSuchEntityException;
 import net.wildfyre.http.IssueInTransferException;
 import net.wildfyre.http.Request;
-import net.wildfyre.utils.LazyMap;
+import net.wildfyre.utils.IntStripedCache;
+import net.wildfyre.utils.StripedCache;
 
-import java.util.Collections;
-import java.util.Map;
-import java.util.Optional;
-import java.util.OptionalInt;
+import java.util.*;
 import java.util.function.Consumer;
 
 import static net.wildfyre.http.Method.GET;
@@ -37,7 +35,9 @@ public class Users {
 
     //region Attributes
 
-    static Map<Integer, User> users = Collections.emptyMap(); // package instead of private, to enable access from User
+    // package instead of private, to enable access from User; replaced by init()
+    static volatile IntStripedCache<User> users =
+        StripedCache.withIntKeys(1, () -> Long.MAX_VALUE, user -> 1, null, null);
     private static int userId;
 
     //endregion
@@ -65,16 +65,13 @@ public class Users {
      * @see #getCached(int) Same, but without querying the server
      */
     public static Optional<User> get(int id){
-        User user = Users
-            .getCached(id)
-            .orElseGet(() -> User.create(id));
+        User user = users.computeIfAbsent(id, User::create);
 
-        // There is no user in the cache, stall & query server
+        // There is no user in the cache, or it is too stale: stall & query server (or wait for the thread that already
+        // does)
         try {
-            if(user.isNew()) {
-                users.put(id, user);
-                user.update(); // in this thread
-            }
+            user.loadIfNew(); // in this thread
+            user.refreshIfStale(); // in this thread
 
         } catch (NoSuchEntityException e) {
             return Optional.empty(); // there is no such user server-side
@@ -84,8 +81,9 @@ public class Users {
             return Optional.empty();
         }
 
-        // There is a user in the cache, but it's expired
-        if(!user.isValid())
+        // There is a user in the cache, but it's expired, or it should be refreshed ahead of time
+        long time = System.currentTimeMillis();
+        if(!user.isValid(time) || user.shouldRefresh(time))
             Internal.submitUpdate(user); // in a new thread
 
         user.use();
@@ -93,6 +91,75 @@ public class Users {
         return Optional.of(user);
     }
 
+    /**
+     * Retrieves several users from the database, see {@link #get(int)}.
+     *
+     * <p>Users that are in the cache are returned without waiting; the others are queried from the server in parallel,
+     * at most {@link Internal#getFanOut()} at a time. This method returns once all of them are loaded.</p>
+     *
+     * @param ids the IDs of the users.
+     * @return The users that were found, in the order of {@code ids}.
+     * @see #getAll(Collection, int) Same, with a custom concurrency
+     */
+    public static List<User> getAll(Collection<Integer> ids){
+        return getAll(ids, Internal.getFanOut());
+    }
+
+    /**
+     * Retrieves several users from the database, querying at most {@code maxConcurrency} of them from the server at the
+     * same time.
+     *
+     * @param ids the IDs of the users.
+     * @param maxConcurrency the maximum number of users queried at the same time.
+     * @return The users that were found, in the order of {@code ids}.
+     * @see #getAll(Collection) Same, with the default concurrency
+     */
+    public static List<User> getAll(Collection<Integer> ids, int maxConcurrency){
+        // Users that are not cached (or too stale) are added to the cache in this thread, then updated in parallel
+        long now = System.currentTimeMillis();
+        Map<Integer, User> missing = new LinkedHashMap<>();
+        for(int id : ids) {
+            User user = users.computeIfAbsent(id, User::create);
+            if(user.isNew() || user.isStale(now))
+                missing.put(id, user);
+        }
+
+        List<User> loaded = Internal.loadAll(new ArrayList<>(missing.values()), user -> {
+            try {
+                user.loadIfNew();
+                user.refreshIfStale();
+                return user;
+
+            } catch (NoSuchEntityException e) {
+                return null; // there is no such user server-side
+
+            } catch (Request.CantConnectException e) {
+                Internal.throwCantConnect(e);
+                return null;
+            }
+        }, maxConcurrency);
+
+        Map<Integer, User> results = new HashMap<>();
+        Iterator<User> loadedUsers = loaded.iterator();
+        for(int id : missing.keySet())
+            results.put(id, loadedUsers.next()); // null if the user couldn't be loaded
+
+        List<User> found = new ArrayList<>(ids.size());
+        for(int id : ids) {
+            User user = results.containsKey(id) ? results.get(id) : getCached(id).orElse(null);
+            if(user == null)
+                continue;
+
+            // The user was in the cache, but it's expired, or it should be refreshed ahead of time
+            if(!user.isValid(now) || user.shouldRefresh(now))
+                Internal.submitUpdate(user); // in a new thread
+
+            user.use();
+            found.add(user);
+        }
+        return found;
+    }
+
     /**
      * Retrieves the user corresponding to a provided ID <b>from the cache</b>. This method is not designed to be used
      * often, as it is only of any use in the rare case where the lib needs to access the cache itself. Therefore, it
@@ -132,12 +199,11 @@ public class Users {
     }
 
     /**
-     * Cleans the internal cache, by removing the users that have expired.
+     * Cleans the internal cache, by removing the users that have expired. This is also done in the background (see
+     * {@link CacheManager#expire()}).
      */
     public static void clean(){
-        long time = System.currentTimeMillis(); // calling curentTimeMillis once, instead of calling it for every User.
-
-        users.values().removeIf(u -> !u.isValid(time));
+        manager.expire();
     }
 
     /**
@@ -166,7 +232,7 @@ public class Users {
                 throw new RuntimeException("Couldn't find the ID of the logged-in user!\n"
                     + json.toString(WriterConfig.PRETTY_PRINT));
 
-            users = new LazyMap<>();
+            users = manager.newIntCache();
 
         } catch (IssueInTransferException e) {
             throw new RuntimeException("Couldn't find the ID of the logged-in user.", e);
@@ -190,7 +256,9 @@ public class Users {
     //endregion
     //region Expiration
 
-    private final static CacheManager manager = new CacheManager().setExpirationTime(1000 * 60 * 30); // 30 minutes
+    private final static CacheManager manager = new CacheManager()
+        .setExpirationTime(1000 * 60 * 30) // 30 minutes
+        .setMaximumSize(10_000);
 
     /**
      * The Cache Manager that handles Users.
@@ -0,0 +1,572 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.utils;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * A Map that holds at most a maximum weight of values, and evicts the least valuable ones when it is full.
+ *
+ * <p>Eviction follows the W-TinyLFU policy: new entries go to a small LRU "window" (1% of the capacity); when they
+ * leave it, they are only admitted into the main space if they were used more often than the entry they would evict
+ * (see {@link FrequencySketch}). The main space is a segmented LRU: entries used again while on "probation" are
+ * promoted to the "protected" segment (80% of the main space). This keeps popular entries cached when many entries
+ * are only used once (for example, when scrolling through thousands of posts).</p>
+ *
+ * <p>The maximum and the weights are read again at each modification, so they can be changed at any time. Weights
+ * are measured when entries are added, and again when they are read.</p>
+ *
+ * <p>Entries can also expire: when an expiry function is given, each value is scheduled in a {@link TimerWheel} at
+ * the time it returns, and {@link #expire(long)} removes the values whose time has come. The expiry is only read again
+ * when a value is added or reaches its scheduled time, so values can extend their life (for example, when they are
+ * used) without the cache being told; they are then scheduled again.</p>
+ *
+ * <p>Values can be pinned (for example, while they are being loaded): pinned values are never evicted, so the cache
+ * may be heavier than its maximum until they are unpinned. They can still expire.</p>
+ *
+ * <p>Reading an entry with {@link #get(Object)} counts as a use; {@link #containsKey(Object)} and iteration do not.
+ * Every method is synchronized on this object; see {@link StripedCache} to share a cache between many threads.</p>
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+public class BoundedCache<K, V> extends AbstractMap<K, V> {
+
+    //region Attributes
+
+    private static final int WINDOW = 0, PROBATION = 1, PROTECTED = 2;
+
+    private final LongSupplier maximumWeight;
+    private final ToIntFunction<? super V> weigher;
+    private final ToLongFunction<? super V> expiry;
+    private final Predicate<? super V> pinned;
+    private final TimerWheel<Node<K, V>> timers;
+
+    final Map<K, Node<K, V>> nodes;
+    private final Node<K, V>[] queues;
+    private final long[] weights = new long[3];
+
+    private FrequencySketch sketch;
+    private long sketchCapacity;
+
+    private long hits, misses, evictions, expirations;
+
+    //endregion
+    //region Constructors
+
+    /**
+     * Creates an empty cache.
+     * @param maximumWeight the maximum total weight of the values
+     * @param weigher the weight of a value, at least 0
+     * @param expiry when a value expires, in milliseconds as provided by {@link System#currentTimeMillis()}, or
+     *               {@link Long#MAX_VALUE} if it never does; {@code null} if values never expire
+     */
+    public BoundedCache(LongSupplier maximumWeight, ToIntFunction<? super V> weigher,
+                        ToLongFunction<? super V> expiry){
+        this(maximumWeight, weigher, expiry, null);
+    }
+
+    /**
+     * Creates an empty cache, whose pinned values are never evicted.
+     * @param maximumWeight the maximum total weight of the values
+     * @param weigher the weight of a value, at least 0
+     * @param expiry when a value expires (see {@link #BoundedCache(LongSupplier, ToIntFunction, ToLongFunction)}), or
+     *               {@code null} if values never expire
+     * @param pinned whether a value cannot be evicted at the moment; {@code null} if every value can be
+     */
+    public BoundedCache(LongSupplier maximumWeight, ToIntFunction<? super V> weigher,
+                        ToLongFunction<? super V> expiry, Predicate<? super V> pinned){
+        this(maximumWeight, weigher, expiry, pinned, HashMap::new);
+    }
+
+    /**
+     * Creates an empty cache, that finds its entries with the given map (for example, an {@link IntObjectMap}).
+     * @param maximumWeight the maximum total weight of the values
+     * @param weigher the weight of a value, at least 0
+     * @param expiry when a value expires, or {@code null} if values never expire
+     * @param pinned whether a value cannot be evicted at the moment; {@code null} if every value can be
+     * @param index creates the empty map that finds the entries by key
+     */
+    @SuppressWarnings("unchecked")
+    BoundedCache(LongSupplier maximumWeight, ToIntFunction<? super V> weigher, ToLongFunction<? super V> expiry,
+                 Predicate<? super V> pinned, Supplier<? extends Map<K, ?>> index){
+        nodes = (Map<K, Node<K, V>>) index.get();
+        this.maximumWeight = Objects.requireNonNull(maximumWeight, "The parameter 'maximumWeight' cannot be null.");
+        this.weigher = Objects.requireNonNull(weigher, "The parameter 'weigher' cannot be null.");
+        this.expiry = expiry;
+        this.pinned = pinned;
+        timers = expiry != null ? new TimerWheel<>(System.currentTimeMillis()) : null;
+
+        queues = (Node<K, V>[]) new Node<?, ?>[3];
+        for(int i = 0; i < queues.length; i++)
+            queues[i] = Node.sentinel();
+    }
+
+    /**
+     * Creates an empty cache, whose values do not expire.
+     * @param maximumWeight the maximum total weight of the values
+     * @param weigher the weight of a value, at least 0
+     */
+    public BoundedCache(LongSupplier maximumWeight, ToIntFunction<? super V> weigher){
+        this(maximumWeight, weigher, null);
+    }
+
+    /**
+     * Creates an empty cache that holds at most {@code maximumSize} entries.
+     * @param maximumSize the maximum number of entries
+     */
+    public BoundedCache(long maximumSize){
+        this(() -> maximumSize, v -> 1);
+    }
+
+    //endregion
+    //region Statistics
+
+    /**
+     * The number of times {@link #get(Object)} found its key.
+     * @return The number of hits.
+     */
+    public synchronized long hitCount(){
+        return hits;
+    }
+
+    /**
+     * The number of times {@link #get(Object)} did not find its key.
+     * @return The number of misses.
+     */
+    public synchronized long missCount(){
+        return misses;
+    }
+
+    /**
+     * The number of entries removed to make room for others.
+     * @return The number of evictions.
+     */
+    public synchronized long evictionCount(){
+        return evictions;
+    }
+
+    /**
+     * The number of entries removed by {@link #expire(long)}.
+     * @return The number of expirations.
+     */
+    public synchronized long expirationCount(){
+        return expirations;
+    }
+
+    /**
+     * The total weight of the values of this cache.
+     * @return The total weight.
+     */
+    public synchronized long weight(){
+        return weights[WINDOW] + weights[PROBATION] + weights[PROTECTED];
+    }
+
+    //endregion
+    //region Map interface implementation
+
+    @Override
+    public synchronized int size() {
+        return nodes.size();
+    }
+
+    @Override
+    public synchronized boolean containsKey(Object key) {
+        return nodes.containsKey(key);
+    }
+
+    @Override
+    public synchronized V get(Object key) {
+        return read(nodes.get(key));
+    }
+
+    /**
+     * Counts a lookup that found {@code node}, or nothing if it is {@code null}; the caller must hold the lock.
+     * @return The value of the node.
+     */
+    final V read(Node<K, V> node){
+        if(node == null) {
+            misses++;
+            return null;
+        }
+
+        hits++;
+        onAccess(node);
+        reweigh(node);
+        evict();
+        return node.value;
+    }
+
+    @Override
+    public synchronized V put(K key, V value) {
+        Objects.requireNonNull(value, "This cache does not accept 'null' values.");
+
+        Node<K, V> node = nodes.get(key);
+        if(node != null) {
+            V previous = node.value;
+            node.value = value;
+            onAccess(node);
+            reweigh(node);
+            if(timers != null)
+                timers.reschedule(node.timer, expiry.applyAsLong(value));
+            evict();
+            return previous;
+        }
+
+        node = new Node<>(key, value, weigh(value));
+        nodes.put(key, node);
+        if(isBounded())
+            sketch().increment(key);
+        append(WINDOW, node);
+        if(timers != null)
+            node.timer = timers.schedule(node, expiry.applyAsLong(value));
+        evict();
+        return null;
+    }
+
+    @Override
+    public synchronized V putIfAbsent(K key, V value) {
+        V current = get(key);
+        if(current == null)
+            put(key, value);
+        return current;
+    }
+
+    /**
+     * Gets the value of a key, or creates it if it is missing, atomically. The function is called while this cache is
+     * locked, so it should be quick (for example, create an empty object that is filled later).
+     */
+    @Override
+    public synchronized V computeIfAbsent(K key, @NotNull Function<? super K, ? extends V> mappingFunction) {
+        V current = get(key);
+        if(current != null)
+            return current;
+
+        V value = mappingFunction.apply(key);
+        if(value != null)
+            put(key, value);
+        return value;
+    }
+
+    @Override
+    public synchronized V remove(Object key) {
+        return removeNode(nodes.get(key));
+    }
+
+    /**
+     * Removes {@code node} if it is not {@code null}; the caller must hold the lock.
+     * @return The value of the node.
+     */
+    final V removeNode(Node<K, V> node){
+        if(node == null)
+            return null;
+
+        discard(node);
+        return node.value;
+    }
+
+    @Override
+    public synchronized boolean remove(Object key, Object value) {
+        Node<K, V> node = nodes.get(key);
+        if(node == null || !Objects.equals(node.value, value))
+            return false;
+
+        discard(node);
+        return true;
+    }
+
+    @Override
+    public synchronized void clear() {
+        nodes.clear();
+        if(timers != null)
+            timers.clear();
+        for(int i = 0; i < queues.length; i++) {
+            queues[i].next = queues[i].previous = queues[i];
+            weights[i] = 0;
+        }
+    }
+
+    /**
+     * The entries of this cache. The set is a view: removing an entry from it removes it from the cache; however,
+     * iterators work on a snapshot of the entries when they are created.
+     */
+    @NotNull
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return new AbstractSet<Entry<K, V>>() {
+            @NotNull
+            @Override
+            public Iterator<Entry<K, V>> iterator() {
+                List<Entry<K, V>> snapshot;
+                synchronized (BoundedCache.this) {
+                    snapshot = new ArrayList<>(nodes.size());
+                    for(Node<K, V> node : nodes.values())
+                        snapshot.add(new SimpleImmutableEntry<>(node.key, node.value));
+                }
+
+                Iterator<Entry<K, V>> iterator = snapshot.iterator();
+                return new Iterator<Entry<K, V>>() {
+                    private Entry<K, V> current;
+
+                    @Override
+                    public boolean hasNext() {
+                        return iterator.hasNext();
+                    }
+
+                    @Override
+                    public Entry<K, V> next() {
+                        return current = iterator.next();
+                    }
+
+                    @Override
+                    public void remove() {
+                        if(current == null)
+                            throw new IllegalStateException("next() was not called.");
+
+                        BoundedCache.this.remove(current.getKey(), current.getValue());
+                        current = null;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return BoundedCache.this.size();
+            }
+        };
+    }
+
+    //endregion
+    //region Eviction
+
+    private boolean isBounded(){
+        return maximumWeight.getAsLong() != Long.MAX_VALUE;
+    }
+
+    private FrequencySketch sketch(){
+        long capacity = maximumWeight.getAsLong();
+        if(sketch == null || capacity != sketchCapacity) {
+            sketch = new FrequencySketch(capacity);
+            sketchCapacity = capacity;
+        }
+        return sketch;
+    }
+
+    private int weigh(V value){
+        int weight = weigher.applyAsInt(value);
+        if(weight < 0)
+            throw new IllegalStateException("The weight of " + value + " is negative: " + weight);
+        return weight;
+    }
+
+    private void reweigh(Node<K, V> node){
+        int weight = weigh(node.value);
+        weights[node.queue] += weight - node.weight;
+        node.weight = weight;
+    }
+
+    /**
+     * Marks an entry as recently used.
+     */
+    private void onAccess(Node<K, V> node){
+        if(!isBounded())
+            return;
+
+        sketch().increment(node.key);
+        switch (node.queue) {
+            case WINDOW:
+            case PROTECTED:
+                move(node, node.queue);
+                break;
+
+            case PROBATION: // Used again, it deserves to be protected
+                move(node, PROTECTED);
+                long protectedMaximum = mainMaximum() * 8 / 10;
+                while(weights[PROTECTED] > protectedMaximum && queues[PROTECTED].next != queues[PROTECTED])
+                    move(queues[PROTECTED].next, PROBATION);
+                break;
+        }
+    }
+
+    private long windowMaximum(){
+        return Math.max(1, maximumWeight.getAsLong() / 100);
+    }
+
+    private long mainMaximum(){
+        return Math.max(0, maximumWeight.getAsLong() - windowMaximum());
+    }
+
+    /**
+     * Removes entries until the cache is not heavier than its maximum.
+     */
+    private void evict(){
+        if(!isBounded())
+            return;
+
+        // The oldest entries of the window become candidates for the main space
+        while(weights[WINDOW] > windowMaximum() && queues[WINDOW].next != queues[WINDOW])
+            admit(queues[WINDOW].next);
+
+        // The maximum may have decreased
+        while(weights[PROBATION] + weights[PROTECTED] > mainMaximum()) {
+            Node<K, V> victim = victim();
+            if(victim == null)
+                break;
+            drop(victim);
+        }
+    }
+
+    /**
+     * Moves a candidate from the window to the main space, if it is used more often than the entries it would evict.
+     * A pinned candidate is always admitted.
+     */
+    private void admit(Node<K, V> candidate){
+        boolean keep = isPinned(candidate);
+        long maximum = mainMaximum();
+        if(candidate.weight > maximum && !keep) {
+            drop(candidate);
+            return;
+        }
+
+        while(weights[PROBATION] + weights[PROTECTED] + candidate.weight > maximum) {
+            Node<K, V> victim = victim();
+            if(victim == null)
+                break;
+
+            if(!keep && sketch().frequency(candidate.key) <= sketch().frequency(victim.key)) {
+                drop(candidate);
+                return;
+            }
+            drop(victim);
+        }
+
+        move(candidate, PROBATION);
+    }
+
+    /**
+     * The oldest entry of the main space that can be evicted, probation first.
+     */
+    private Node<K, V> victim(){
+        for(int queue = PROBATION; queue <= PROTECTED; queue++)
+            for(Node<K, V> node = queues[queue].next; node != queues[queue]; node = node.next)
+                if(!isPinned(node))
+                    return node;
+        return null;
+    }
+
+    private boolean isPinned(Node<K, V> node){
+        return pinned != null && pinned.test(node.value);
+    }
+
+    private void drop(Node<K, V> node){
+        discard(node);
+        evictions++;
+    }
+
+    private void discard(Node<K, V> node){
+        nodes.remove(node.key);
+        unlink(node);
+        if(timers != null)
+            timers.cancel(node.timer);
+    }
+
+    //endregion
+    //region Expiration
+
+    /**
+     * Removes the entries that expired at {@code now}. This takes a time proportional to the number of entries that
+     * reached their scheduled time, not to the size of the cache. Does nothing if the values of this cache never
+     * expire.
+     * @param now the current time, in milliseconds, as provided by {@link System#currentTimeMillis()}
+     * @return The number of entries that were removed.
+     */
+    public synchronized int expire(long now){
+        if(timers == null)
+            return 0;
+
+        long before = expirations;
+        timers.advance(now, timer -> {
+            Node<K, V> node = timer.item();
+            long time = expiry.applyAsLong(node.value);
+            if(time > now)
+                timers.reschedule(timer, time); // It was used in the meantime
+            else {
+                nodes.remove(node.key);
+                unlink(node);
+                expirations++;
+            }
+        });
+        return (int) (expirations - before);
+    }
+
+    //endregion
+    //region Linked lists
+
+    private void append(int queue, Node<K, V> node){
+        Node<K, V> sentinel = queues[queue];
+        node.queue = queue;
+        node.previous = sentinel.previous;
+        node.next = sentinel;
+        sentinel.previous.next = node;
+        sentinel.previous = node;
+        weights[queue] += node.weight;
+    }
+
+    private void unlink(Node<K, V> node){
+        node.previous.next = node.next;
+        node.next.previous = node.previous;
+        node.previous = node.next = null;
+        weights[node.queue] -= node.weight;
+    }
+
+    private void move(Node<K, V> node, int queue){
+        unlink(node);
+        append(queue, node);
+    }
+
+    static final class Node<K, V> {
+        final K key;
+        V value;
+        int weight;
+        int queue;
+        Node<K, V> previous, next;
+        TimerWheel.Timer<Node<K, V>> timer;
+
+        Node(K key, V value, int weight){
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+        }
+
+        static <K, V> Node<K, V> sentinel(){
+            Node<K, V> sentinel = new Node<>(null, null, 0);
+            sentinel.previous = sentinel.next = sentinel;
+            return sentinel;
+        }
+    }
+
+    //endregion
+
+}
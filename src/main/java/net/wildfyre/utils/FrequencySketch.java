@@ -0,0 +1,109 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.utils;
+
+/**
+ * Estimates how often keys were seen recently, in a fixed amount of memory (a Count-Min sketch of 4-bit counters).
+ * <p>Counters are halved periodically, so that old popularity fades away: this is the "TinyLFU" admission filter used
+ * by {@link BoundedCache}.</p>
+ * <p>This class is NOT thread-safe.</p>
+ */
+class FrequencySketch {
+
+    //region Attributes
+
+    private static final int MAX_COUNT = 15;
+    private static final int[] SEEDS = { 0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F };
+
+    private final byte[] counters;
+    private final int mask;
+    private final int resetAfter;
+    private int additions;
+
+    //endregion
+    //region Constructors
+
+    /**
+     * Creates a sketch for a cache of the given capacity.
+     * @param capacity the expected maximum number of entries.
+     */
+    FrequencySketch(long capacity){
+        int size = Integer.highestOneBit((int) Math.max(16, Math.min(capacity, 1 << 20)) - 1) << 1;
+        counters = new byte[size];
+        mask = size - 1;
+        resetAfter = 10 * size;
+    }
+
+    //endregion
+    //region Counting
+
+    private int indexOf(int hash, int row){
+        int h = (hash ^ SEEDS[row]) * 0x45D9F3B;
+        h ^= h >>> 16;
+        return h & mask;
+    }
+
+    private static int spread(Object key){
+        int h = key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Records an occurrence of a key.
+     * @param key the key
+     */
+    void increment(Object key){
+        int hash = spread(key);
+        boolean added = false;
+
+        for(int row = 0; row < SEEDS.length; row++) {
+            int i = indexOf(hash, row);
+            if(counters[i] < MAX_COUNT) {
+                counters[i]++;
+                added = true;
+            }
+        }
+
+        if(added && ++additions >= resetAfter)
+            reset();
+    }
+
+    /**
+     * Estimates how many times a key was seen recently.
+     * @param key the key
+     * @return The estimated frequency, between 0 and 15.
+     */
+    int frequency(Object key){
+        int hash = spread(key);
+        int min = MAX_COUNT;
+        for(int row = 0; row < SEEDS.length; row++)
+            min = Math.min(min, counters[indexOf(hash, row)]);
+        return min;
+    }
+
+    /**
+     * Halves every counter, so that keys that are not popular anymore can be forgotten.
+     */
+    private void reset(){
+        for(int i = 0; i < counters.length; i++)
+            counters[i] >>= 1;
+        additions /= 2;
+    }
+
+    //endregion
+
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.utils;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+
+/**
+ * A Map from {@code int} keys to objects, that stores its keys unboxed.
+ *
+ * <p>Entries are stored in two arrays (keys and values) with open addressing and linear probing, instead of one
+ * {@link HashMap} node per entry, which uses less memory and is friendlier to the processor caches. The methods that
+ * take a {@code int} do not box their key.</p>
+ *
+ * <p>Like {@link LazyMap}, the arrays are only allocated when the first entry is added, and are freed when the map
+ * becomes empty. This map does not accept {@code null} values. It is NOT thread-safe; iterators work on a snapshot of
+ * the entries when they are created.</p>
+ *
+ * @param <V> the type of the values
+ */
+public class IntObjectMap<V> extends AbstractMap<Integer, V> {
+
+    //region Attributes
+
+    private static final int MINIMUM_CAPACITY = 8;
+
+    private int[] keys;
+    private Object[] values; // null marks an empty slot
+    private int size;
+
+    //endregion
+    //region Constructors
+
+    /**
+     * Creates an empty map; nothing is allocated until the first entry is added.
+     */
+    public IntObjectMap(){
+        // Nothing to do because of lazy-initialization
+    }
+
+    /**
+     * Creates a map with the same entries as the given map.
+     * @param map the entries
+     */
+    public IntObjectMap(Map<? extends Integer, ? extends V> map){
+        putAll(map);
+    }
+
+    //endregion
+    //region Primitive access
+
+    private static int hash(int key){
+        int h = key * 0x9E3779B9; // Sequential IDs are spread over the table
+        return h ^ (h >>> 16);
+    }
+
+    private int indexOf(int key){
+        if(keys == null)
+            return -1;
+
+        int mask = keys.length - 1;
+        for(int i = hash(key) & mask; values[i] != null; i = (i + 1) & mask)
+            if(keys[i] == key)
+                return i;
+        return -1;
+    }
+
+    /**
+     * Is there a value for this key?
+     * @param key the key
+     * @return {@code true} if this map contains the key.
+     */
+    public boolean containsKey(int key){
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * The value of a key.
+     * @param key the key
+     * @return The value, or {@code null} if there is none.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(int key){
+        int i = indexOf(key);
+        return i >= 0 ? (V) values[i] : null;
+    }
+
+    /**
+     * Sets the value of a key.
+     * @param key the key
+     * @param value the value, not {@code null}
+     * @return The previous value, or {@code null} if there was none.
+     */
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value){
+        Objects.requireNonNull(value, "This map does not accept 'null' values.");
+
+        if(keys == null)
+            allocate(MINIMUM_CAPACITY);
+        else if((size + 1) * 4L > keys.length * 3L) // Load factor of 75%
+            allocate(keys.length * 2);
+
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        for(; values[i] != null; i = (i + 1) & mask)
+            if(keys[i] == key) {
+                V previous = (V) values[i];
+                values[i] = value;
+                return previous;
+            }
+
+        keys[i] = key;
+        values[i] = value;
+        size++;
+        return null;
+    }
+
+    /**
+     * Removes a key.
+     * @param key the key
+     * @return The value of the key, or {@code null} if there was none.
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(int key){
+        int i = indexOf(key);
+        if(i < 0)
+            return null;
+
+        V previous = (V) values[i];
+        size--;
+        if(size == 0) { // Free the memory, like LazyMap
+            keys = null;
+            values = null;
+            return previous;
+        }
+
+        // Move back the next entries of the probe sequence, so there is no hole in it
+        int mask = keys.length - 1;
+        int hole = i;
+        for(int j = (i + 1) & mask; values[j] != null; j = (j + 1) & mask) {
+            int home = hash(keys[j]) & mask;
+            if(((j - home) & mask) >= ((j - hole) & mask)) {
+                keys[hole] = keys[j];
+                values[hole] = values[j];
+                hole = j;
+            }
+        }
+        values[hole] = null;
+        return previous;
+    }
+
+    private void allocate(int capacity){
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+
+        keys = new int[capacity];
+        values = new Object[capacity];
+
+        if(oldKeys != null) {
+            int mask = capacity - 1;
+            for(int j = 0; j < oldKeys.length; j++)
+                if(oldValues[j] != null) {
+                    int i = hash(oldKeys[j]) & mask;
+                    while(values[i] != null)
+                        i = (i + 1) & mask;
+                    keys[i] = oldKeys[j];
+                    values[i] = oldValues[j];
+                }
+        }
+    }
+
+    //endregion
+    //region Map interface implementation
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof Integer && containsKey(((Integer) key).intValue());
+    }
+
+    @Override
+    public V get(Object key) {
+        return key instanceof Integer ? get(((Integer) key).intValue()) : null;
+    }
+
+    @Override
+    public V put(Integer key, V value) {
+        return put(key.intValue(), value);
+    }
+
+    @Override
+    public V remove(Object key) {
+        return key instanceof Integer ? remove(((Integer) key).intValue()) : null;
+    }
+
+    @Override
+    public void clear() {
+        keys = null;
+        values = null;
+        size = 0;
+    }
+
+    @NotNull
+    @Override
+    public Set<Entry<Integer, V>> entrySet() {
+        return new AbstractSet<Entry<Integer, V>>() {
+            @NotNull
+            @Override
+            @SuppressWarnings("unchecked")
+            public Iterator<Entry<Integer, V>> iterator() {
+                List<Entry<Integer, V>> snapshot = new ArrayList<>(size);
+                if(keys != null)
+                    for(int i = 0; i < keys.length; i++)
+                        if(values[i] != null)
+                            snapshot.add(new SimpleImmutableEntry<>(keys[i], (V) values[i]));
+
+                Iterator<Entry<Integer, V>> iterator = snapshot.iterator();
+                return new Iterator<Entry<Integer, V>>() {
+                    private Entry<Integer, V> current;
+
+                    @Override
+                    public boolean hasNext() {
+                        return iterator.hasNext();
+                    }
+
+                    @Override
+                    public Entry<Integer, V> next() {
+                        return current = iterator.next();
+                    }
+
+                    @Override
+                    public void remove() {
+                        if(current == null)
+                            throw new IllegalStateException("next() was not called.");
+
+                        IntObjectMap.this.remove(current.getKey().intValue());
+                        current = null;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    //endregion
+
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.utils;
+
+import java.util.function.LongFunction;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * A {@link StripedCache} with {@code long} keys, that stores them in {@link LongObjectMap}s.
+ *
+ * <p>The methods that take a {@code long} do not box their key, except {@link #computeIfAbsent(long, LongFunction)}
+ * when it adds an entry. The {@link java.util.Map} methods work too, but box it.</p>
+ *
+ * @param <V> the type of the values
+ * @see StripedCache#withLongKeys(int, LongSupplier, ToIntFunction, ToLongFunction, Predicate)
+ */
+public class LongStripedCache<V> extends StripedCache<Long, V> {
+
+    LongStripedCache(int concurrency, LongSupplier maximumWeight, ToIntFunction<? super V> weigher,
+                    ToLongFunction<? super V> expiry, Predicate<? super V> pinned){
+        super(concurrency, maximumWeight, share -> new Segment<>(share, weigher, expiry, pinned));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Segment<V> segment(long key){
+        return (Segment<V>) segments[segmentOf(Long.hashCode(key))];
+    }
+
+    /**
+     * Same as {@link #get(Object)}, without boxing the key.
+     * @param key the key
+     * @return The value of the key, or {@code null} if it is not in this cache.
+     */
+    public V get(long key){
+        return segment(key).get(key);
+    }
+
+    /**
+     * Same as {@link #computeIfAbsent(Object, java.util.function.Function)}; the key is only boxed if the value is
+     * created.
+     * @param key the key
+     * @param mappingFunction creates the value if the key is missing
+     * @return The value of the key.
+     */
+    public V computeIfAbsent(long key, LongFunction<? extends V> mappingFunction){
+        return segment(key).computeIfAbsent(key, mappingFunction);
+    }
+
+    /**
+     * Same as {@link #remove(Object)}, without boxing the key.
+     * @param key the key
+     * @return The value that was removed, or {@code null} if the key was not in this cache.
+     */
+    public V remove(long key){
+        return segment(key).remove(key);
+    }
+
+    private static final class Segment<V> extends BoundedCache<Long, V> {
+        private final LongObjectMap<Node<Long, V>> index;
+
+        @SuppressWarnings("unchecked")
+        Segment(LongSupplier maximumWeight, ToIntFunction<? super V> weigher, ToLongFunction<? super V> expiry,
+                Predicate<? super V> pinned){
+            super(maximumWeight, weigher, expiry, pinned, LongObjectMap::new);
+            index = (LongObjectMap<Node<Long, V>>) (LongObjectMap<?>) nodes;
+        }
+
+        synchronized V get(long key){
+            return read(index.get(key));
+        }
+
+        synchronized V computeIfAbsent(long key, LongFunction<? extends V> mappingFunction){
+            V current = get(key);
+            if(current != null)
+                return current;
+
+            V value = mappingFunction.apply(key);
+            if(value != null)
+                put(key, value);
+            return value;
+        }
+
+        synchronized V remove(long key){
+            return removeNode(index.get(key));
+        }
+    }
+}
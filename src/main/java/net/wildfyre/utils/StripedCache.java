@@ -0,0 +1,351 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.utils;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * A thread-safe {@link BoundedCache} split into independent segments, so threads that use different keys do not wait
+ * for each other.
+ *
+ * <p>Each key belongs to one segment, chosen from its hash; each segment has its own lock, eviction policy and
+ * expiration (see {@link BoundedCache}). The maximum weight is shared evenly between the segments, so the cache
+ * may evict entries slightly before it is full.</p>
+ *
+ * <p>{@link #computeIfAbsent(Object, Function)} and {@link #putIfAbsent(Object, Object)} are atomic: when several
+ * threads ask for the same missing key, only one value is created and all of them get it.</p>
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+public class StripedCache<K, V> extends AbstractMap<K, V> {
+
+    //region Attributes
+
+    /**
+     * The default number of segments: the number of processors, rounded up to a power of two, at most 64.
+     */
+    public static final int DEFAULT_CONCURRENCY =
+        Math.min(64, Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()) * 2 - 1));
+
+    final BoundedCache<K, V>[] segments;
+
+    //endregion
+    //region Constructors
+
+    /**
+     * Creates an empty cache.
+     * @param concurrency the number of segments, rounded up to a power of two
+     * @param maximumWeight the maximum total weight of the values
+     * @param weigher the weight of a value, at least 0
+     * @param expiry when a value expires (see {@link BoundedCache#BoundedCache(LongSupplier, ToIntFunction,
+     *               ToLongFunction)}), or {@code null} if values never expire
+     */
+    public StripedCache(int concurrency, LongSupplier maximumWeight, ToIntFunction<? super V> weigher,
+                        ToLongFunction<? super V> expiry){
+        this(concurrency, maximumWeight, weigher, expiry, null);
+    }
+
+    /**
+     * Creates an empty cache, whose pinned values are never evicted (see {@link BoundedCache}).
+     * @param concurrency the number of segments, rounded up to a power of two
+     * @param maximumWeight the maximum total weight of the values
+     * @param weigher the weight of a value, at least 0
+     * @param expiry when a value expires, or {@code null} if values never expire
+     * @param pinned whether a value cannot be evicted at the moment; {@code null} if every value can be
+     */
+    public StripedCache(int concurrency, LongSupplier maximumWeight, ToIntFunction<? super V> weigher,
+                        ToLongFunction<? super V> expiry, Predicate<? super V> pinned){
+        this(concurrency, maximumWeight, share -> new BoundedCache<>(share, weigher, expiry, pinned));
+    }
+
+    /**
+     * Creates an empty cache, whose segments are created by {@code segment} from their share of the maximum weight.
+     */
+    @SuppressWarnings("unchecked")
+    StripedCache(int concurrency, LongSupplier maximumWeight, Function<LongSupplier, BoundedCache<K, V>> segment){
+        if(concurrency < 1 || concurrency > 1 << 16)
+            throw new IllegalArgumentException("The concurrency should be between 1 and 65536: " + concurrency);
+        Objects.requireNonNull(maximumWeight, "The parameter 'maximumWeight' cannot be null.");
+
+        int count = Integer.highestOneBit(concurrency * 2 - 1);
+        segments = (BoundedCache<K, V>[]) new BoundedCache<?, ?>[count];
+        for(int i = 0; i < count; i++) {
+            int index = i;
+            segments[i] = segment.apply(() -> share(maximumWeight.getAsLong(), index, count));
+        }
+    }
+
+    /**
+     * Creates an empty cache with {@code int} keys, that stores them in an {@link IntObjectMap} instead of a
+     * {@link HashMap}.
+     * @param concurrency the number of segments, rounded up to a power of two
+     * @param maximumWeight the maximum total weight of the values
+     * @param weigher the weight of a value, at least 0
+     * @param expiry when a value expires, or {@code null} if values never expire
+     * @param pinned whether a value cannot be evicted at the moment; {@code null} if every value can be
+     * @param <V> the type of the values
+     * @return A new, empty cache.
+     */
+    public static <V> IntStripedCache<V> withIntKeys(int concurrency, LongSupplier maximumWeight,
+                                                     ToIntFunction<? super V> weigher,
+                                                     ToLongFunction<? super V> expiry,
+                                                     Predicate<? super V> pinned){
+        return new IntStripedCache<>(concurrency, maximumWeight, weigher, expiry, pinned);
+    }
+
+    /**
+     * Creates an empty cache with {@code long} keys, that stores them in a {@link LongObjectMap} instead of a
+     * {@link HashMap}.
+     * @param concurrency the number of segments, rounded up to a power of two
+     * @param maximumWeight the maximum total weight of the values
+     * @param weigher the weight of a value, at least 0
+     * @param expiry when a value expires, or {@code null} if values never expire
+     * @param pinned whether a value cannot be evicted at the moment; {@code null} if every value can be
+     * @param <V> the type of the values
+     * @return A new, empty cache.
+     */
+    public static <V> LongStripedCache<V> withLongKeys(int concurrency, LongSupplier maximumWeight,
+                                                       ToIntFunction<? super V> weigher,
+                                                       ToLongFunction<? super V> expiry,
+                                                       Predicate<? super V> pinned){
+        return new LongStripedCache<>(concurrency, maximumWeight, weigher, expiry, pinned);
+    }
+
+    /**
+     * Creates an empty cache that holds at most {@code maximumSize} entries, with the
+     * {@link #DEFAULT_CONCURRENCY default concurrency}.
+     * @param maximumSize the maximum number of entries
+     */
+    public StripedCache(long maximumSize){
+        this(DEFAULT_CONCURRENCY, () -> maximumSize, v -> 1, null, null);
+    }
+
+    private static long share(long maximum, int index, int count){
+        if(maximum == Long.MAX_VALUE)
+            return Long.MAX_VALUE;
+        return maximum / count + (index < maximum % count ? 1 : 0);
+    }
+
+    private BoundedCache<K, V> segment(Object key){
+        return segments[segmentOf(Objects.hashCode(key))];
+    }
+
+    /**
+     * The index of the segment of the keys that have the given {@link Object#hashCode() hash code}.
+     */
+    final int segmentOf(int hash){
+        hash ^= hash >>> 16; // Keys like sequential IDs only differ in their low bits
+        hash *= 0x9E3779B9;
+        return (hash >>> 16) & (segments.length - 1);
+    }
+
+    //endregion
+    //region Statistics
+
+    /**
+     * The number of segments of this cache.
+     * @return The number of segments, a power of two.
+     */
+    public int concurrency(){
+        return segments.length;
+    }
+
+    /**
+     * The number of times {@link #get(Object)} found its key.
+     * @return The number of hits.
+     * @see BoundedCache#hitCount()
+     */
+    public long hitCount(){
+        long total = 0;
+        for(BoundedCache<K, V> segment : segments)
+            total += segment.hitCount();
+        return total;
+    }
+
+    /**
+     * The number of times {@link #get(Object)} did not find its key.
+     * @return The number of misses.
+     * @see BoundedCache#missCount()
+     */
+    public long missCount(){
+        long total = 0;
+        for(BoundedCache<K, V> segment : segments)
+            total += segment.missCount();
+        return total;
+    }
+
+    /**
+     * The number of entries removed to make room for others.
+     * @return The number of evictions.
+     * @see BoundedCache#evictionCount()
+     */
+    public long evictionCount(){
+        long total = 0;
+        for(BoundedCache<K, V> segment : segments)
+            total += segment.evictionCount();
+        return total;
+    }
+
+    /**
+     * The number of entries removed because they expired.
+     * @return The number of expirations.
+     * @see BoundedCache#expirationCount()
+     */
+    public long expirationCount(){
+        long total = 0;
+        for(BoundedCache<K, V> segment : segments)
+            total += segment.expirationCount();
+        return total;
+    }
+
+    /**
+     * The total weight of the values of this cache.
+     * @return The total weight.
+     */
+    public long weight(){
+        long total = 0;
+        for(BoundedCache<K, V> segment : segments)
+            total += segment.weight();
+        return total;
+    }
+
+    //endregion
+    //region Map interface implementation
+
+    @Override
+    public int size() {
+        int total = 0;
+        for(BoundedCache<K, V> segment : segments)
+            total += segment.size();
+        return total;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return segment(key).containsKey(key);
+    }
+
+    @Override
+    public V get(Object key) {
+        return segment(key).get(key);
+    }
+
+    @Override
+    public V put(K key, V value) {
+        return segment(key).put(key, value);
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        return segment(key).putIfAbsent(key, value);
+    }
+
+    @Override
+    public V computeIfAbsent(K key, @NotNull Function<? super K, ? extends V> mappingFunction) {
+        return segment(key).computeIfAbsent(key, mappingFunction);
+    }
+
+    @Override
+    public V remove(Object key) {
+        return segment(key).remove(key);
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        return segment(key).remove(key, value);
+    }
+
+    @Override
+    public void clear() {
+        for(BoundedCache<K, V> segment : segments)
+            segment.clear();
+    }
+
+    /**
+     * The entries of this cache. The set is a view: removing an entry from it removes it from the cache; however,
+     * iterators work on a snapshot of each segment (see {@link BoundedCache#entrySet()}).
+     */
+    @NotNull
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return new AbstractSet<Entry<K, V>>() {
+            @NotNull
+            @Override
+            public Iterator<Entry<K, V>> iterator() {
+                return new Iterator<Entry<K, V>>() {
+                    private int next = 0;
+                    private Iterator<Entry<K, V>> current = Collections.emptyIterator();
+                    private Iterator<Entry<K, V>> last;
+
+                    @Override
+                    public boolean hasNext() {
+                        while(!current.hasNext() && next < segments.length)
+                            current = segments[next++].entrySet().iterator();
+                        return current.hasNext();
+                    }
+
+                    @Override
+                    public Entry<K, V> next() {
+                        if(!hasNext())
+                            throw new NoSuchElementException();
+                        last = current;
+                        return current.next();
+                    }
+
+                    @Override
+                    public void remove() {
+                        if(last == null)
+                            throw new IllegalStateException("next() was not called.");
+                        last.remove();
+                        last = null;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return StripedCache.this.size();
+            }
+        };
+    }
+
+    //endregion
+    //region Expiration
+
+    /**
+     * Removes the entries that expired at {@code now}, see {@link BoundedCache#expire(long)}.
+     * @param now the current time, in milliseconds, as provided by {@link System#currentTimeMillis()}
+     * @return The number of entries that were removed.
+     */
+    public int expire(long now){
+        int removed = 0;
+        for(BoundedCache<K, V> segment : segments)
+            removed += segment.expire(now);
+        return removed;
+    }
+
+    //endregion
+
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.utils;
+
+import java.util.function.Consumer;
+
+/**
+ * A hierarchical timer wheel: schedules items to expire at a given time, and finds the expired ones in a time that
+ * depends on the number of items that expire, not on the number of items that are scheduled.
+ *
+ * <p>Items are stored in buckets of increasing span (about a second, a minute, an hour, a day, and beyond). When time
+ * advances, only the buckets that were crossed are visited; items of coarse buckets that do not expire yet are moved
+ * to finer buckets.</p>
+ *
+ * <p>Times are in milliseconds, as given by {@link System#currentTimeMillis()}. This class is NOT thread-safe.</p>
+ *
+ * @param <T> the type of the scheduled items
+ */
+public final class TimerWheel<T> {
+
+    //region Attributes
+
+    private static final int[] BUCKETS = { 64, 64, 32, 4, 1 };
+    private static final int[] SHIFT = { 10, 16, 22, 26, 28 }; // ~1s, ~1min, ~1h, ~18h, ~3 days
+    private static final long[] SPANS = {
+        1L << SHIFT[0], 1L << SHIFT[1], 1L << SHIFT[2], 1L << SHIFT[3], 1L << SHIFT[4], 1L << SHIFT[4]
+    };
+
+    private final Timer<T>[][] wheel;
+    private long time;
+    private int size;
+
+    //endregion
+    //region Constructors
+
+    /**
+     * Creates an empty wheel.
+     * @param now the current time
+     */
+    @SuppressWarnings("unchecked")
+    public TimerWheel(long now){
+        time = now;
+        wheel = (Timer<T>[][]) new Timer<?>[BUCKETS.length][];
+        for(int i = 0; i < BUCKETS.length; i++) {
+            wheel[i] = (Timer<T>[]) new Timer<?>[BUCKETS[i]];
+            for(int j = 0; j < BUCKETS[i]; j++)
+                wheel[i][j] = new Timer<>(null);
+        }
+    }
+
+    //endregion
+    //region Scheduling
+
+    /**
+     * A scheduled item.
+     * @param <T> the type of the item
+     */
+    public static final class Timer<T> {
+        private final T item;
+        private long time;
+        private Timer<T> previous, next;
+
+        private Timer(T item){
+            this.item = item;
+            previous = next = this; // Sentinels point to themselves
+        }
+
+        /**
+         * The item.
+         * @return The item.
+         */
+        public T item(){
+            return item;
+        }
+
+        /**
+         * When this item expires.
+         * @return The time, in milliseconds.
+         */
+        public long time(){
+            return time;
+        }
+
+        private boolean isScheduled(){
+            return next != this && next != null;
+        }
+    }
+
+    /**
+     * Schedules an item.
+     * @param item the item
+     * @param time when it expires
+     * @return The timer of the item, to reschedule or cancel it.
+     */
+    public Timer<T> schedule(T item, long time){
+        Timer<T> timer = new Timer<>(item);
+        timer.next = timer.previous = null;
+        timer.time = time;
+        link(timer);
+        return timer;
+    }
+
+    /**
+     * Changes when an item expires.
+     * @param timer the timer of the item, as returned by {@link #schedule(Object, long)}
+     * @param time when it expires
+     */
+    public void reschedule(Timer<T> timer, long time){
+        if(timer.isScheduled())
+            unlink(timer);
+        timer.time = time;
+        link(timer);
+    }
+
+    /**
+     * Cancels the expiration of an item.
+     * @param timer the timer of the item, as returned by {@link #schedule(Object, long)}
+     */
+    public void cancel(Timer<T> timer){
+        if(timer.isScheduled())
+            unlink(timer);
+    }
+
+    /**
+     * The number of scheduled items.
+     * @return The number of items.
+     */
+    public int size(){
+        return size;
+    }
+
+    /**
+     * Removes every item.
+     */
+    public void clear(){
+        for(Timer<T>[] level : wheel)
+            for(Timer<T> sentinel : level)
+                while(sentinel.next != sentinel)
+                    unlink(sentinel.next);
+    }
+
+    //endregion
+    //region Expiration
+
+    /**
+     * Advances the time, and gives the expired items to {@code onExpired}. The items are not scheduled anymore when
+     * they are given; {@code onExpired} can {@link #reschedule(Timer, long) reschedule} them.
+     * @param now the current time
+     * @param onExpired what to do with the expired items
+     */
+    public void advance(long now, Consumer<Timer<T>> onExpired){
+        long previous = time;
+        if(now <= previous)
+            return;
+        time = now;
+
+        for(int level = 0; level < BUCKETS.length; level++) {
+            long previousTicks = previous >>> SHIFT[level];
+            long currentTicks = now >>> SHIFT[level];
+            if(currentTicks == previousTicks)
+                break; // The coarser levels did not move either
+
+            expire(level, previousTicks, currentTicks - previousTicks, onExpired);
+        }
+    }
+
+    private void expire(int level, long previousTicks, long delta, Consumer<Timer<T>> onExpired){
+        Timer<T>[] buckets = wheel[level];
+        int mask = buckets.length - 1;
+        int steps = (int) Math.min(1 + delta, buckets.length);
+        int start = (int) (previousTicks & mask);
+
+        for(int i = start; i < start + steps; i++) {
+            Timer<T> sentinel = buckets[i & mask];
+
+            // Detach the whole bucket first, since the items may be scheduled again in the same bucket
+            Timer<T> timer = sentinel.next;
+            sentinel.next = sentinel.previous = sentinel;
+
+            while(timer != sentinel) {
+                Timer<T> next = timer.next;
+                timer.next = timer.previous = null;
+                size--;
+
+                if(timer.time <= time)
+                    onExpired.accept(timer);
+                else
+                    link(timer); // Moves to a finer bucket
+
+                timer = next;
+            }
+        }
+    }
+
+    //endregion
+    //region Buckets
+
+    private Timer<T> bucketOf(long time){
+        time = Math.max(time, this.time); // Late items go in the current bucket, visited by the next advance
+        long duration = time - this.time;
+        for(int level = 0; level < BUCKETS.length - 1; level++)
+            if(duration < SPANS[level + 1]) {
+                long ticks = time >>> SHIFT[level];
+                return wheel[level][(int) (ticks & (BUCKETS[level] - 1))];
+            }
+        return wheel[BUCKETS.length - 1][0];
+    }
+
+    private void link(Timer<T> timer){
+        Timer<T> sentinel = bucketOf(timer.time);
+        timer.previous = sentinel.previous;
+        timer.next = sentinel;
+        sentinel.previous.next = timer;
+        sentinel.previous = timer;
+        size++;
+    }
+
+    private void unlink(Timer<T> timer){
+        timer.previous.next = timer.next;
+        timer.next.previous = timer.previous;
+        timer.next = timer.previous = null;
+        size--;
+    }
+
+    //endregion
+
+}
@@ -0,0 +1,325 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A {@link Transport} built on the {@link HttpClient} of Java 11, which negotiates HTTP/2 with the server when it can:
+ * all requests to a server are then multiplexed over a single connection. {@link #sendAsync(RawRequest)} does not
+ * block any thread while waiting for the server.
+ *
+ * <p>This class is only available on Java 11 and later (it is stored in the {@code META-INF/versions/11} directory
+ * of the multi-release JAR); it is selected automatically by {@link Transport.Companion#platformDefault()}.</p>
+ */
+public class HttpClientTransport implements Transport {
+
+    /**
+     * Bodies of at most this size are copied in memory before they are sent; larger bodies are streamed.
+     */
+    private static final int IN_MEMORY_BODY = 64 * 1024;
+
+    /**
+     * Headers that the {@link HttpClient} sets itself, and refuses to be given.
+     */
+    private static final Set<String> RESTRICTED_HEADERS = Set.of(
+        "connection", "content-length", "date", "expect", "from", "host", "upgrade", "via", "warning"
+    );
+
+    /**
+     * The HttpClient does not support a connect timeout per request, so there is one client per connect timeout
+     * (in practice, one or two).
+     */
+    private final Map<Long, HttpClient> clients = new ConcurrentHashMap<>();
+
+    private HttpClient client(Timeouts timeouts) {
+        return clients.computeIfAbsent(timeouts.getConnectMillis(), connectMillis -> {
+            HttpClient.Builder builder = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NORMAL);
+            if (connectMillis > 0)
+                builder.connectTimeout(Duration.ofMillis(connectMillis));
+            return builder.build();
+        });
+    }
+
+    //region Requests
+
+    private HttpRequest prepare(RawRequest request) throws IOException {
+        HttpRequest.Builder builder;
+        try {
+            builder = HttpRequest.newBuilder(request.getUrl().toURI());
+        } catch (URISyntaxException e) {
+            throw new IOException("Invalid address: " + request.getUrl(), e);
+        }
+
+        if (request.getTimeouts().getReadMillis() > 0)
+            builder.timeout(Duration.ofMillis(request.getTimeouts().getReadMillis()));
+
+        for (Map.Entry<String, String> header : Compression.INSTANCE.advertise(request).entrySet())
+            if (!RESTRICTED_HEADERS.contains(header.getKey().toLowerCase()))
+                builder.setHeader(header.getKey(), header.getValue());
+
+        Body body = request.getBody();
+        if (body == null)
+            return builder.method(request.getMethod().getVerb(), HttpRequest.BodyPublishers.noBody()).build();
+
+        builder.setHeader("Content-Type", body.getContentType());
+        return builder.method(request.getMethod().getVerb(), publisherOf(body)).build();
+    }
+
+    private HttpRequest.BodyPublisher publisherOf(Body body) throws IOException {
+        long length = body.getContentLength();
+
+        if (length >= 0 && length <= IN_MEMORY_BODY) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) length);
+            body.writeTo(bytes);
+            return HttpRequest.BodyPublishers.ofByteArray(bytes.toByteArray());
+        }
+
+        // Large bodies (such as images) are written by another thread, through a pipe
+        HttpRequest.BodyPublisher stream = HttpRequest.BodyPublishers.ofInputStream(() -> pipe(body));
+        return length >= 0 ? HttpRequest.BodyPublishers.fromPublisher(stream, length) : stream;
+    }
+
+    private static InputStream pipe(Body body) {
+        try {
+            BodyPipe input = new BodyPipe();
+            PipedOutputStream output = new PipedOutputStream(input);
+
+            Thread writer = new Thread(() -> {
+                try (PipedOutputStream out = output) {
+                    body.writeTo(out);
+                } catch (IOException e) {
+                    input.failure = e; // Before the pipe is closed, so the reader never mistakes it for the end
+                }
+            }, "wildfyre-upload");
+            writer.setDaemon(true);
+            writer.start();
+
+            return input;
+
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot create the pipe of the body", e);
+        }
+    }
+
+    /**
+     * The reading side of the pipe of a body.
+     *
+     * <p>When the body cannot be written, closing the pipe looks like a normal end of the body to the reader; instead,
+     * the reader fails with a {@link BodyException} that carries the error of the body.</p>
+     */
+    private static class BodyPipe extends PipedInputStream {
+
+        private volatile IOException failure;
+
+        BodyPipe() {
+            super(BufferPool.BUFFER_SIZE);
+        }
+
+        @Override
+        public synchronized int read() throws IOException {
+            int read = super.read();
+            if (read < 0)
+                checkFailure();
+            return read;
+        }
+
+        @Override
+        public synchronized int read(byte[] bytes, int offset, int length) throws IOException {
+            int read = super.read(bytes, offset, length);
+            if (read < 0)
+                checkFailure();
+            return read;
+        }
+
+        private void checkFailure() throws BodyException {
+            if (failure != null)
+                throw new BodyException(failure);
+        }
+    }
+
+    /**
+     * Thrown by a {@link BodyPipe} when its body could not be written; {@link #send(RawRequest)} and
+     * {@link #sendAsync(RawRequest)} unwrap it, so the caller gets the error of the body.
+     */
+    private static class BodyException extends IOException {
+        BodyException(IOException cause) {
+            super(cause.getMessage(), cause);
+        }
+    }
+
+    //endregion
+    //region Responses
+
+    private static RawResponse convert(HttpResponse<InputStream> response) {
+        Map<String, List<String>> headers = new LinkedHashMap<>();
+        response.headers().map().forEach((name, values) -> {
+            if (!name.startsWith(":")) // HTTP/2 pseudo-headers
+                headers.put(name, values);
+        });
+
+        return Compression.INSTANCE.decode(
+            new RawResponse(response.statusCode(), headers, response.body(), new TransferStats())
+        );
+    }
+
+    /**
+     * The error of the body that made the request fail, if any; the {@link HttpClient} wraps it in other exceptions.
+     */
+    private static IOException bodyFailure(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause())
+            if (cause instanceof BodyException)
+                return (IOException) cause.getCause();
+        return null;
+    }
+
+    private static IOException convert(IOException e) {
+        IOException body = bodyFailure(e);
+        if (body != null) // Same as UrlConnectionTransport, the error of the body is thrown
+            return body;
+
+        if (e instanceof HttpTimeoutException) { // Same as HttpURLConnection, so the callers see no difference
+            SocketTimeoutException timeout = new SocketTimeoutException(e.getMessage());
+            timeout.initCause(e);
+            return timeout;
+        }
+        return e;
+    }
+
+    //endregion
+
+    @Override
+    public RawResponse send(RawRequest request) throws IOException {
+        try {
+            HttpClient client = client(request.getTimeouts());
+            return convert(client.send(prepare(request), HttpResponse.BodyHandlers.ofInputStream()));
+
+        } catch (IOException e) {
+            throw convert(e);
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while sending the request to " + request.getUrl());
+        }
+    }
+
+    @Override
+    public CompletableFuture<RawResponse> sendAsync(RawRequest request) {
+        HttpRequest prepared;
+        try {
+            prepared = prepare(request);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        CompletableFuture<RawResponse> result = new CompletableFuture<>();
+        client(request.getTimeouts())
+            .sendAsync(prepared, HttpResponse.BodyHandlers.ofInputStream())
+            .whenComplete((response, error) -> {
+                if (error == null) {
+                    result.complete(convert(response));
+                    return;
+                }
+
+                Throwable cause = error instanceof CompletionException && error.getCause() != null
+                    ? error.getCause()
+                    : error;
+                IOException body = bodyFailure(cause);
+                if (body != null)
+                    result.completeExceptionally(body);
+                else
+                    result.completeExceptionally(cause instanceof IOException ? convert((IOException) cause) : cause);
+            });
+        return result;
+    }
+
+    /**
+     * Opens the connections by sending {@code HEAD} requests to the server. When the server supports HTTP/2, a single
+     * connection is opened, since all requests are multiplexed over it.
+     */
+    @Override
+    public int warmUp(URL url, int connections, Timeouts timeouts) throws IOException {
+        if (connections <= 0)
+            return 0;
+
+        HttpRequest.Builder builder;
+        try {
+            builder = HttpRequest.newBuilder(url.toURI()).method("HEAD", HttpRequest.BodyPublishers.noBody());
+        } catch (URISyntaxException e) {
+            throw new IOException("Invalid address: " + url, e);
+        }
+        if (timeouts.getReadMillis() > 0)
+            builder.timeout(Duration.ofMillis(timeouts.getReadMillis()));
+        HttpRequest head = builder.build();
+
+        HttpClient client = client(timeouts);
+        try {
+            HttpResponse<Void> first = client.send(head, HttpResponse.BodyHandlers.discarding());
+            if (first.version() == HttpClient.Version.HTTP_2 || connections == 1)
+                return 1;
+
+            // HTTP/1.1: one connection per concurrent request
+            CompletableFuture<?>[] others = new CompletableFuture<?>[connections - 1];
+            for (int i = 0; i < others.length; i++)
+                others[i] = client.sendAsync(head, HttpResponse.BodyHandlers.discarding());
+            CompletableFuture.allOf(others).join();
+            return connections;
+
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException)
+                throw convert((IOException) e.getCause());
+            throw e;
+
+        } catch (IOException e) {
+            throw convert(e);
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while opening connections to " + url);
+        }
+    }
+
+    /**
+     * Forgets the clients; their connections are closed by the JDK once they are idle.
+     */
+    @Override
+    public void close() {
+        clients.clear();
+    }
+}
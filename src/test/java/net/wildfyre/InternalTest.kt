@@ -21,6 +21,9 @@ import net.wildfyre.users.LoggedUser
 import org.junit.Assert.*
 import org.junit.Test
 import java.util.*
+import java.util.concurrent.CyclicBarrier
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
 
 class InternalTest {
     @Test(expected=NullPointerException::class)
@@ -37,4 +40,27 @@ class InternalTest {
     fun cleanTest() {
          Internal.clean()
     }
+
+    @Test(timeout = 5000L)
+    fun loadAllTest() {
+        val running = AtomicInteger()
+        val maxRunning = AtomicInteger()
+        val allStarted = CyclicBarrier(3)
+
+        val results = Internal.loadAll((1..20).toList(), { i: Int ->
+            maxRunning.accumulateAndGet(running.incrementAndGet(), ::maxOf)
+            if (i <= 3) // Each of the first 3 items waits for the others, so they must be loaded at the same time
+                allStarted.await(5, TimeUnit.SECONDS)
+            running.decrementAndGet()
+            if (i % 5 == 0) null else i * 2
+        }, 3)
+
+        assertEquals((1..20).map { if (it % 5 == 0) null else it * 2 }, results)
+        assertEquals("At most 3 items should be loaded at a time", 3, maxRunning.get())
+    }
+
+    @Test(expected=IllegalStateException::class)
+    fun loadAllFailureTest() {
+        Internal.loadAll(listOf(1, 2, 3), { i: Int -> check(i != 2); i }, 2)
+    }
 }
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.descriptors
+
+import net.wildfyre.http.Deadline
+import net.wildfyre.http.DeadlineAction
+import net.wildfyre.http.DeadlineExceededException
+import net.wildfyre.http.Request
+import org.junit.Assert.*
+import org.junit.Test
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+class DescriptorTest {
+
+    private class Counted(private val manager: CacheManager) : Descriptor() {
+        val updates = AtomicInteger()
+        var skip = false
+
+        override fun update() {
+            if (skip) {
+                updateSkipped()
+                return
+            }
+
+            Thread.sleep(50)
+            updates.incrementAndGet()
+            use()
+        }
+
+        override fun cacheManager() = manager
+    }
+
+    @Test
+    fun refreshAhead() {
+        val descriptor = Counted(CacheManager().setRefreshAfter(1_000))
+        descriptor.refresh()
+        val now = System.currentTimeMillis()
+
+        assertFalse(descriptor.shouldRefresh(now))
+        assertTrue(descriptor.shouldRefresh(now + 1_000))
+        assertFalse("Staleness is not bounded by default", descriptor.isStale(now + 1_000_000))
+    }
+
+    @Test
+    fun queuesOneRefresh() {
+        val descriptor = Counted(CacheManager())
+
+        assertTrue(descriptor.queueRefresh())
+        assertFalse(descriptor.queueRefresh())
+
+        descriptor.refresh()
+        assertFalse("Only the queued refresh removes the mark", descriptor.queueRefresh())
+
+        descriptor.runQueuedRefresh()
+        assertTrue(descriptor.queueRefresh())
+    }
+
+    @Test
+    fun skippedUpdatesAreNotFresh() {
+        val descriptor = Counted(CacheManager().setMaximumStaleness(100))
+        descriptor.refresh()
+        Thread.sleep(150)
+
+        descriptor.skip = true
+        descriptor.refresh()
+        assertTrue("No data was fetched", descriptor.isStale(System.currentTimeMillis()))
+
+        descriptor.skip = false
+        descriptor.refresh()
+        assertFalse(descriptor.isStale(System.currentTimeMillis()))
+    }
+
+    @Test
+    fun staleReadsWaitForOneRefresh() {
+        val descriptor = Counted(CacheManager().setMaximumStaleness(100))
+        descriptor.loadIfNew()
+        assertEquals(1, descriptor.updates.get())
+
+        descriptor.refreshIfStale()
+        assertEquals("Fresh data is not refreshed", 1, descriptor.updates.get())
+
+        Thread.sleep(150)
+        assertTrue(descriptor.isStale(System.currentTimeMillis()))
+
+        val start = CountDownLatch(1)
+        val executor = Executors.newFixedThreadPool(8)
+        val readers = (0 until 8).map {
+            executor.submit {
+                start.await()
+                descriptor.refreshIfStale()
+            }
+        }
+        start.countDown()
+        readers.forEach { it.get(10, TimeUnit.SECONDS) }
+        executor.shutdown()
+
+        assertEquals(2, descriptor.updates.get())
+        assertFalse(descriptor.isStale(System.currentTimeMillis()))
+    }
+
+    @Test( timeout = 5000L )
+    fun waitingForTheLoadingRespectsTheDeadline() {
+        val started = CountDownLatch(1)
+        val release = CountDownLatch(1)
+        val descriptor = object : Descriptor() {
+            override fun update() {
+                started.countDown()
+                release.await()
+                use()
+            }
+
+            override fun cacheManager() = CacheManager()
+        }
+
+        val executor = Executors.newSingleThreadExecutor()
+        val loader = executor.submit { descriptor.loadIfNew() }
+        started.await()
+
+        val start = System.nanoTime()
+        try {
+            Deadline.within(100, DeadlineAction<Unit, Exception> { descriptor.loadIfNew() })
+            fail("The deadline should pass while the other thread loads the descriptor")
+        } catch (e: Request.CantConnectException) {
+            assertTrue(e.cause is DeadlineExceededException)
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1_000)
+        }
+
+        release.countDown()
+        loader.get()
+        executor.shutdown()
+        assertFalse(descriptor.isNew)
+    }
+
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http
+
+import org.junit.Assert.*
+import org.junit.Test
+import java.io.InterruptedIOException
+import java.net.URL
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.TimeUnit
+
+class ConcurrencyLimiterTest {
+
+    @Test
+    fun queuesAboveTheLimit() {
+        val limiter = ConcurrencyLimiter(initialLimit = 2, maxLimit = 2)
+
+        val first = limiter.acquire()
+        limiter.acquire()
+        val third = limiter.acquireAsync()
+
+        assertFalse(third.isDone)
+        assertEquals(2, limiter.inFlight)
+        assertEquals(1, limiter.queued)
+
+        first.onSuccess()
+        assertTrue(third.isDone)
+        assertEquals(2, limiter.inFlight)
+        assertEquals(0, limiter.queued)
+    }
+
+    @Test
+    fun increasesWhenSaturated() {
+        val limiter = ConcurrencyLimiter(initialLimit = 2, maxLimit = 4)
+
+        repeat(4) {
+            val permits = List(limiter.limit) { limiter.acquire() }
+            permits.forEach { it.onSuccess() }
+        }
+
+        assertEquals(4, limiter.limit)
+        assertEquals(0, limiter.inFlight)
+    }
+
+    @Test
+    fun decreasesOnErrors() {
+        val limiter = ConcurrencyLimiter(initialLimit = 10, backoffRatio = 0.5)
+
+        limiter.acquire().onDropped()
+        assertEquals(5, limiter.limit)
+
+        limiter.acquire().onResponse(503)
+        assertEquals(2, limiter.limit)
+
+        limiter.acquire().ignore()
+        assertEquals(2, limiter.limit)
+
+        repeat(5) { limiter.acquire().onDropped() }
+        assertEquals(limiter.minLimit, limiter.limit)
+    }
+
+    @Test
+    fun decreasesWhenSlow() {
+        val limiter = ConcurrencyLimiter(initialLimit = 10, latencyThresholdMillis = 0, backoffRatio = 0.5)
+
+        val permit = limiter.acquire()
+        Thread.sleep(5)
+        permit.onSuccess()
+
+        assertEquals(5, limiter.limit)
+    }
+
+    @Test
+    fun rateLimiter() {
+        val limiter = RateLimiter(permitsPerSecond = 10.0, burst = 2)
+
+        assertEquals(0L, limiter.reserve())
+        assertEquals(0L, limiter.reserve())
+
+        val delay = limiter.reserve()
+        assertTrue("Unexpected delay: $delay", delay in 90L..100L)
+    }
+
+    @Test
+    fun asyncTimeout() {
+        val limiter = ConcurrencyLimiter(initialLimit = 1, maxLimit = 1)
+        val first = limiter.acquire()
+
+        val second = limiter.acquireAsync(20)
+        try {
+            second.get(1, TimeUnit.SECONDS)
+            fail("The permit should not be granted")
+        } catch (e: ExecutionException) {
+            assertTrue(e.cause is InterruptedIOException)
+        }
+        assertEquals(0, limiter.queued)
+
+        first.onSuccess()
+        assertEquals(0, limiter.inFlight)
+    }
+
+    @Test
+    fun asyncRequestsWaitWithoutBlocking() {
+        val limiter = ConcurrencyLimiter(initialLimit = 1, maxLimit = 1)
+        val stages = listOf(
+            "limiter" to LimitInterceptor(limiter, null),
+            "answer" to object : AsyncInterceptor {
+                override fun intercept(chain: Interceptor.Chain) = RawResponse(200, emptyMap(), null)
+
+                override fun interceptAsync(chain: InterceptorChain) =
+                    CompletableFuture.completedFuture(RawResponse(200, emptyMap(), null))
+            }
+        )
+        val request = RawRequest(Method.GET, URL("http://localhost:8000/users/"), emptyMap(), null)
+
+        val first = limiter.acquire()
+        val response = InterceptorChain.executeAsync(stages, request, StageTimings())
+        assertFalse("The request should wait for a permit", response.isDone)
+        assertEquals(1, limiter.queued)
+
+        first.onSuccess()
+        assertEquals(200, response.get(1, TimeUnit.SECONDS).status)
+        assertEquals("The permit should be released with the response", 0, limiter.inFlight)
+    }
+
+    @Test
+    fun asyncDeadline() {
+        val limiter = ConcurrencyLimiter(initialLimit = 1, maxLimit = 1)
+        val stages = listOf("limiter" to LimitInterceptor(limiter, RateLimiter(permitsPerSecond = 1.0, burst = 1)))
+        val request = RawRequest(Method.GET, URL("http://localhost:8000/users/"), emptyMap(), null)
+
+        limiter.acquire()
+        val response = Deadline.within(20, DeadlineAction<CompletableFuture<RawResponse>, Exception> {
+            InterceptorChain.executeAsync(stages, request, StageTimings())
+        })
+
+        try {
+            response.get(1, TimeUnit.SECONDS)
+            fail("The deadline should pass while waiting for a permit")
+        } catch (e: ExecutionException) {
+            assertTrue(e.cause.toString(), e.cause is DeadlineExceededException)
+        }
+    }
+}
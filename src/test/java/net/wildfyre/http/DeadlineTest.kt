@@ -0,0 +1,82 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http
+
+import org.junit.Assert.*
+import org.junit.Test
+import java.net.URL
+
+class DeadlineTest {
+
+    private val request = RawRequest(Method.GET, URL("http://localhost:8000/users/"), emptyMap(), null)
+
+    private class Answer : Interceptor {
+        var timeouts: Timeouts? = null
+
+        override fun intercept(chain: Interceptor.Chain): RawResponse {
+            timeouts = chain.request.timeouts
+            return RawResponse(200, emptyMap(), null)
+        }
+    }
+
+    private fun send(answer: Answer) = InterceptorChain.execute(
+        listOf("deadline" to DeadlineInterceptor, "answer" to answer),
+        request,
+        StageTimings()
+    )
+
+    @Test
+    fun nestedDeadlines() {
+        assertNull(Deadline.current())
+
+        Deadline.within(100, DeadlineAction<Unit, RuntimeException> {
+            val outer = Deadline.current()!!
+            assertTrue(outer.remainingMillis() in 1..100)
+
+            Deadline.within(10_000, DeadlineAction<Unit, RuntimeException> {
+                assertSame("The earliest deadline should be kept", outer, Deadline.current())
+            })
+
+            Deadline.within(10, DeadlineAction<Unit, RuntimeException> {
+                assertNotSame(outer, Deadline.current())
+            })
+            assertSame(outer, Deadline.current())
+        })
+
+        assertNull(Deadline.current())
+    }
+
+    @Test
+    fun shortensTimeouts() {
+        val timeouts = Timeouts(connectMillis = 1_000, readMillis = 0)
+        assertEquals(Timeouts(500, 500), timeouts.atMost(500))
+        assertEquals(Timeouts(1_000, 2_000), Timeouts(1_000, 2_000).atMost(5_000))
+
+        val answer = Answer()
+        Deadline.within(200, DeadlineAction<Unit, Exception> { send(answer) })
+        assertTrue(answer.timeouts!!.connectMillis <= 200)
+        assertTrue(answer.timeouts!!.readMillis <= 200)
+
+        send(answer)
+        assertEquals(Timeouts.DEFAULT, answer.timeouts)
+    }
+
+    @Test(expected = DeadlineExceededException::class)
+    fun failsOnceExpired() {
+        Deadline.within(0, DeadlineAction<Unit, Exception> { send(Answer()) })
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http
+
+import org.junit.Assert.*
+import org.junit.Test
+import java.net.URL
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+
+class InterceptorChainTest {
+
+    private val request = RawRequest(Method.GET, URL("http://localhost:8000/users/"), emptyMap(), null)
+
+    private class Sleep(private val millis: Long) : Interceptor {
+        override fun intercept(chain: Interceptor.Chain): RawResponse {
+            Thread.sleep(millis)
+            return chain.proceed(chain.request)
+        }
+    }
+
+    private object Answer : Interceptor {
+        override fun intercept(chain: Interceptor.Chain) =
+            RawResponse(200, mapOf("X-Test" to listOf(chain.request.headers["X-Test"] ?: "none")), null)
+    }
+
+    @Test
+    fun rewritesRequests() {
+        val rewrite = object : Interceptor {
+            override fun intercept(chain: Interceptor.Chain): RawResponse {
+                val request = chain.request
+                return chain.proceed(RawRequest(request.method, request.url, mapOf("X-Test" to "rewritten"), null))
+            }
+        }
+
+        val stages = listOf("rewrite" to rewrite, "answer" to Answer)
+        val response = InterceptorChain.execute(stages, request, StageTimings())
+        assertEquals("rewritten", response.header("X-Test"))
+    }
+
+    @Test
+    fun shortCircuits() {
+        val cache = object : Interceptor {
+            override fun intercept(chain: Interceptor.Chain) = RawResponse(304, emptyMap(), null)
+        }
+        val timings = StageTimings()
+
+        val response = InterceptorChain.execute(listOf("cache" to cache, "answer" to Answer), request, timings)
+        assertEquals(304, response.status)
+        assertEquals(listOf("cache"), timings.stages.keys.toList())
+    }
+
+    @Test
+    fun timesEachStage() {
+        val timings = StageTimings()
+        InterceptorChain.execute(
+            listOf("outer" to Sleep(20), "inner" to Sleep(50), "answer" to Answer),
+            request,
+            timings
+        )
+
+        assertEquals(listOf("outer", "inner", "answer"), timings.stages.keys.toList())
+
+        val outer = TimeUnit.NANOSECONDS.toMillis(timings.nanos("outer"))
+        val inner = TimeUnit.NANOSECONDS.toMillis(timings.nanos("inner"))
+        assertTrue("The time of the inner stage should not be counted twice: $outer", outer in 20..45)
+        assertTrue("Unexpected time: $inner", inner >= 50)
+        assertEquals(timings.stages.values.sum(), timings.totalNanos)
+    }
+
+    /**
+     * Answers through [sendAsync] only: with 503 the first time it receives a request, then with 200.
+     */
+    private class AsyncTransport(private val fails: Boolean = false) : Transport {
+        private val seen = ConcurrentHashMap.newKeySet<RawRequest>()
+
+        override fun send(request: RawRequest): RawResponse = throw AssertionError("The request should be asynchronous")
+
+        override fun sendAsync(request: RawRequest): CompletableFuture<RawResponse> {
+            val status = if (fails && seen.add(request)) 503 else 200
+            return CompletableFuture.completedFuture(RawResponse(status, emptyMap(), null))
+        }
+
+        override fun close() {}
+    }
+
+    @Test
+    fun asyncUsesTheAsyncTransport() {
+        val timings = StageTimings()
+        val response = InterceptorChain.executeAsync(
+            listOf("headers" to DefaultHeadersInterceptor, "deadline" to DeadlineInterceptor,
+                "transport" to TransportInterceptor(AsyncTransport())),
+            request,
+            timings
+        ).get(1, TimeUnit.SECONDS)
+
+        assertEquals(200, response.status)
+        assertEquals(listOf("headers", "deadline", "transport"), timings.stages.keys.toList())
+    }
+
+    @Test
+    fun asyncKeepsTheContextOfTheCaller() {
+        val seen = object : Interceptor {
+            var deadline: Deadline? = null
+            var span: Span? = null
+            var thread: Thread? = null
+
+            override fun intercept(chain: Interceptor.Chain): RawResponse {
+                deadline = Deadline.current()
+                span = Tracing.current()
+                thread = Thread.currentThread()
+                return chain.proceed(chain.request)
+            }
+        }
+
+        val deadline = Deadline.after(5_000)
+        val span = Tracing.start("parent")
+        Deadline.withDeadline(deadline, DeadlineAction<Unit, Exception> {
+            Tracing.withCurrent(span, TracedAction<Unit, Exception> {
+                InterceptorChain.executeAsync(
+                    listOf("seen" to seen, "answer" to Answer),
+                    request,
+                    StageTimings()
+                ).get(1, TimeUnit.SECONDS)
+            })
+        })
+
+        assertNotSame("A blocking interceptor should not run on the caller", Thread.currentThread(), seen.thread)
+        assertSame(deadline, seen.deadline)
+        assertSame(span, seen.span)
+    }
+
+    @Test
+    fun asyncRetriesDoNotHoldThreads() {
+        val policy = RetryPolicy(maxAttempts = 2, baseDelayMillis = 300, maxDelayMillis = 300)
+        val stages = listOf(
+            "retry" to RetryInterceptor(policy) { _, _, _ -> },
+            "transport" to TransportInterceptor(AsyncTransport(fails = true))
+        )
+
+        // If each backoff slept on a thread of the executor, these would wait for each other
+        val start = System.nanoTime()
+        val responses = (1..TransportExecutor.THREADS * 4)
+            .map { RawRequest(Method.GET, request.url, emptyMap(), null) }
+            .map { InterceptorChain.executeAsync(stages, it, StageTimings()) }
+            .map { it.get(5, TimeUnit.SECONDS) }
+        val elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+
+        assertTrue(responses.all { it.status == 200 })
+        assertEquals(TransportExecutor.THREADS * 4L, policy.retries)
+        assertTrue("The backoffs should run at the same time: $elapsed ms", elapsed < 900)
+    }
+}
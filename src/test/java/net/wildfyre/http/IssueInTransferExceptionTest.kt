@@ -0,0 +1,61 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http
+
+import com.eclipsesource.json.Json
+import org.junit.Assert.*
+import org.junit.Test
+import java.io.ByteArrayInputStream
+
+class IssueInTransferExceptionTest {
+
+    private fun issue(status: Int, body: String) =
+        IssueInTransferException("Refused", status, ByteArrayInputStream(body.toByteArray(Request.CHARSET)))
+
+    @Test
+    fun notFound() {
+        assertTrue(issue(404, "{\"detail\": \"Not found.\"}").isNotFound)
+        assertTrue(issue(404, "{\"detail\":\"Not found.\"}\n").isNotFound)
+        assertFalse("Another status", issue(403, "{\"detail\": \"Not found.\"}").isNotFound)
+        assertFalse("Another detail", issue(404, "{\"detail\": \"Forbidden.\"}").isNotFound)
+    }
+
+    @Test
+    fun details() {
+        assertEquals("Simple", issue(400, "{ \"detail\" : \"Simple\" }").detail)
+        assertEquals("With \"quotes\"", issue(400, "{\"detail\": \"With \\\"quotes\\\"\"}").detail)
+        assertEquals("Other fields", issue(400, "{\"code\": 3, \"detail\": \"Other fields\"}").detail)
+        assertNull(issue(400, "[\"detail\"]").detail)
+        assertNull(issue(500, "<html>Server error</html>").detail)
+    }
+
+    @Test
+    fun json() {
+        assertEquals(Json.parse("{\"text\": [\"Too long.\"]}"), issue(400, "{\"text\": [\"Too long.\"]}").json)
+        assertEquals(Json.value("Cannot read JSON."), issue(500, "<html>Server error</html>").json)
+    }
+
+    @Test
+    fun largeBodiesAreTruncated() {
+        val page = "x".repeat(IssueInTransferException.MAX_BODY_SIZE * 3)
+        val issue = issue(500, page)
+
+        assertTrue(issue.isTruncated)
+        assertNull(issue.detail)
+        assertFalse(issue(500, "small").isTruncated)
+    }
+}
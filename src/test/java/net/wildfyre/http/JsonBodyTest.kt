@@ -0,0 +1,64 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http
+
+import com.eclipsesource.json.Json
+import com.eclipsesource.json.JsonArray
+import com.eclipsesource.json.JsonObject
+import org.junit.Assert.*
+import org.junit.Test
+import java.io.ByteArrayOutputStream
+
+class JsonBodyTest {
+
+    private fun utf8(text: String) = Utf8Writer().use { it.write(text); it.toByteArray() }
+
+    @Test
+    fun encodesLikeTheJdk() {
+        for (text in listOf("", "ascii", "é à ç", "日本語", "emoji 🔥 done", "\u0000\u007F\u0080߿ࠀ￿"))
+            assertArrayEquals(text, text.toByteArray(Request.CHARSET), utf8(text))
+    }
+
+    @Test
+    fun loneSurrogates() {
+        for (text in listOf("\uD83D", "a\uD83Db", "\uDD25", "\uDD25\uD83D"))
+            assertArrayEquals(text, text.toByteArray(Request.CHARSET), utf8(text))
+    }
+
+    @Test
+    fun largerThanABuffer() {
+        val text = "日本語 🔥 ".repeat(BufferPool.BUFFER_SIZE)
+        assertArrayEquals(text.toByteArray(Request.CHARSET), utf8(text))
+    }
+
+    @Test
+    fun fixedLength() {
+        val json = JsonObject()
+            .add("text", "Ünïcödé 🔥")
+            .add("tags", JsonArray().add(1).add(2))
+        val body = JsonBody(json)
+
+        val output = ByteArrayOutputStream()
+        body.writeTo(output)
+        body.writeTo(output) // Bodies can be written several times
+
+        val expected = json.toString().toByteArray(Request.CHARSET)
+        assertEquals(expected.size.toLong(), body.contentLength)
+        assertArrayEquals(expected + expected, output.toByteArray())
+        assertEquals(json, Json.parse(String(JsonBody.encode(json), Request.CHARSET)))
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http
+
+import org.junit.Assert.*
+import org.junit.Test
+import java.io.ByteArrayInputStream
+import java.io.IOException
+
+class JsonListReaderTest {
+
+    private fun reader(json: String) = JsonListReader(ByteArrayInputStream(json.toByteArray(Request.CHARSET)))
+
+    @Test
+    fun readsRequestedFields() {
+        val json = """
+            {
+                "count": 3, "next": null, "previous": {"a": [1, 2, "]"]},
+                "results": [
+                    {
+                        "id": "12", "author": {"user": 2, "name": "x"},
+                        "text": "a \"quoted\" é \\ text", "anonymous": false
+                    },
+                    {"text": null, "comments": [{"id": 1}, {"id": 2}], "id": 13},
+                    {"other": "}"}
+                ]
+            }
+        """
+
+        val fields = arrayOf("id", "text", "author")
+        val values = arrayOfNulls<String>(3)
+
+        reader(json).use {
+            assertTrue(it.next(fields, values))
+            assertArrayEquals(arrayOf("12", "a \"quoted\" é \\ text", """{"user":2,"name":"x"}"""), values)
+
+            assertTrue(it.next(fields, values))
+            assertArrayEquals(arrayOf("13", null, null), values)
+
+            assertTrue(it.next(fields, values))
+            assertArrayEquals(arrayOf<String?>(null, null, null), values)
+
+            assertFalse(it.next(fields, values))
+            assertFalse(it.next(fields, values))
+        }
+    }
+
+    @Test
+    fun readField() {
+        assertEquals(listOf("1", "2"),
+            reader("""{"results":[{"id":1},{"id":null},{"id":"2"}],"count":3}""").readField("id"))
+        assertEquals(emptyList<String>(), reader("""{"results": []}""").readField("id"))
+        assertEquals(emptyList<String>(), reader("""{"detail": "Not found."}""").readField("id"))
+        assertEquals(emptyList<String>(), reader("""{}""").readField("id"))
+    }
+
+    @Test( expected = IOException::class )
+    fun invalidJson() {
+        reader("""{"results": [{"id": 1}""").readField("id")
+    }
+}
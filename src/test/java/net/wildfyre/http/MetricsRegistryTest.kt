@@ -0,0 +1,95 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http
+
+import org.junit.Assert.*
+import org.junit.Test
+import java.util.concurrent.TimeUnit
+
+class MetricsRegistryTest {
+
+    @Test
+    fun templates() {
+        assertEquals("/areas/fun/12/", EndpointTemplate.expand("/areas/{area}/{post}/", arrayOf("fun", 12L)))
+        assertEquals("/areas/a%20b/?limit=5",
+            EndpointTemplate.expand("/areas/{area}/?limit={limit}", arrayOf("a b", 5)))
+        assertEquals("/users/{id}/", EndpointTemplate.of("/users/42/"))
+        assertEquals("/areas/fun/drafts/{id}", EndpointTemplate.of("/areas/fun/drafts/7?limit=2"))
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun missingParameter() {
+        EndpointTemplate.expand("/areas/{area}/{post}/", arrayOf("fun"))
+    }
+
+    @Test
+    fun histogramBuckets() {
+        var previous = -1
+        for (micros in listOf(0L, 1, 15, 16, 17, 31, 32, 1_000, 123_456, Long.MAX_VALUE / 2)) {
+            val index = LatencyHistogram.indexOf(micros)
+            assertTrue("Buckets should be ordered", index >= previous)
+            assertTrue("$micros should be in its bucket", LatencyHistogram.upperBoundOf(index) >= micros)
+            assertTrue("The bucket of $micros is too wide",
+                LatencyHistogram.upperBoundOf(index) - micros <= micros / 16 + 1)
+            previous = index
+        }
+    }
+
+    @Test
+    fun percentiles() {
+        val histogram = LatencyHistogram()
+        for (millis in 1L..100L)
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(millis))
+
+        val snapshot = histogram.snapshot()
+        assertEquals(100L, snapshot.count)
+        assertEquals(100_000L, snapshot.maxMicros)
+        assertEquals(50_500L, snapshot.meanMicros)
+        assertEquals(50_000.0, snapshot.p50Micros.toDouble(), 50_000 * 0.07)
+        assertEquals(90_000.0, snapshot.p90Micros.toDouble(), 90_000 * 0.07)
+        assertEquals(99_000.0, snapshot.p99Micros.toDouble(), 99_000 * 0.07)
+        assertTrue(snapshot.p50Micros >= 50_000)
+    }
+
+    @Test
+    fun groupsByEndpoint() {
+        val registry = MetricsRegistry()
+        registry.recordResponse("GET /users/{user}/", 200, 1_000_000, 0)
+        registry.recordResponse("GET /users/{user}/", 404, 2_000_000, 0)
+        registry.recordFailure("GET /users/{user}/", 3_000_000)
+        registry.recordResponse("POST /areas/{area}/", 201, 1_000_000, 120)
+        registry.recordBytesReceived("GET /users/{user}/", 300)
+
+        val users = registry.snapshot("GET /users/{user}/")!!
+        assertEquals(3L, users.requests)
+        assertEquals(1L, users.failures)
+        assertEquals(mapOf(404 to 1L), users.errorsByStatus)
+        assertEquals(2L, users.errors)
+        assertEquals(300L, users.bytesReceived)
+        assertEquals(3L, users.latency.count)
+
+        assertEquals(120L, registry.snapshot("POST /areas/{area}/")!!.bytesSent)
+        assertEquals(listOf("GET /users/{user}/", "POST /areas/{area}/"), registry.snapshot().keys.toList())
+
+        val json = registry.toJson().get("GET /users/{user}/").asObject()
+        assertEquals(1, json.get("errors").asObject().getInt("404", 0))
+        assertEquals(3.0, json.get("latency").asObject().getDouble("max", 0.0), 0.001)
+
+        registry.reset()
+        assertTrue(registry.snapshot().isEmpty())
+    }
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http
+
+import com.eclipsesource.json.JsonArray
+import com.eclipsesource.json.JsonObject
+import com.sun.net.httpserver.HttpServer
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Test
+import java.io.ByteArrayOutputStream
+import java.io.File
+import java.io.IOException
+import java.net.InetSocketAddress
+import java.net.SocketTimeoutException
+import java.net.URL
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.zip.GZIPOutputStream
+
+class PooledTransportTest {
+
+    private lateinit var server: HttpServer
+    private lateinit var transport: PooledTransport
+    private val received = AtomicInteger()
+    private val executor = Executors.newCachedThreadPool()
+
+    @Before
+    fun before() {
+        server = HttpServer.create(InetSocketAddress("localhost", 0), 0)
+        server.createContext("/fixed/") { exchange ->
+            val body = "{\"data\": 2}".toByteArray(Request.CHARSET)
+            exchange.sendResponseHeaders(200, body.size.toLong())
+            exchange.responseBody.use { it.write(body) }
+        }
+        server.createContext("/chunked/") { exchange ->
+            exchange.requestBody.readBytes()
+            exchange.sendResponseHeaders(201, 0) // 0 means chunked
+            exchange.responseBody.use { it.write(exchange.requestMethod.toByteArray(Request.CHARSET)) }
+        }
+        server.createContext("/echo/") { exchange ->
+            val body = exchange.requestBody.readBytes()
+            exchange.responseHeaders.add("X-Content-Length", exchange.requestHeaders.getFirst("Content-Length"))
+            exchange.sendResponseHeaders(200, body.size.toLong())
+            exchange.responseBody.use { it.write(body) }
+        }
+        server.createContext("/gzip/") { exchange ->
+            val json = JsonArray().apply { repeat(100) { add(JsonObject().add("id", it).add("text", "Compressed")) } }
+            val body = ByteArrayOutputStream()
+                .also { out -> GZIPOutputStream(out).use { it.write(json.toString().toByteArray(Request.CHARSET)) } }
+                .toByteArray()
+            exchange.responseHeaders.add("Content-Encoding",
+                if (exchange.requestHeaders.getFirst("Accept-Encoding")?.contains("gzip") == true) "gzip" else "none")
+            exchange.sendResponseHeaders(200, body.size.toLong())
+            exchange.responseBody.use { it.write(body) }
+        }
+        server.createContext("/counted/") { exchange ->
+            received.incrementAndGet()
+            Thread.sleep(500)
+            exchange.sendResponseHeaders(204, -1)
+            exchange.close()
+        }
+        server.createContext("/slow/") { exchange ->
+            Thread.sleep(500)
+            exchange.sendResponseHeaders(204, -1)
+            exchange.close()
+        }
+        server.executor = executor
+        server.start()
+
+        transport = PooledTransport(maxConnectionsPerHost = 2, idleTimeoutMillis = 10_000, leaseTimeoutMillis = 200)
+    }
+
+    @After
+    fun after() {
+        transport.close()
+        server.stop(0)
+        executor.shutdownNow()
+    }
+
+    private fun url(path: String) = URL("http://localhost:${server.address.port}$path")
+
+    private fun get(path: String) = transport.send(RawRequest(Method.GET, url(path), emptyMap(), null))
+
+    @Test( timeout = 5000L )
+    fun reusesConnections() {
+        repeat(5) {
+            val response = get("/fixed/")
+            assertEquals(200, response.status)
+            assertEquals(JsonObject().add("data", 2), Request.readJson(response.body))
+        }
+
+        val stats = transport.stats()
+        assertEquals(1L, stats.created)
+        assertEquals(4L, stats.reused)
+        assertEquals(0, stats.leased)
+        assertEquals(1, stats.idle)
+    }
+
+    @Test( timeout = 5000L )
+    fun warmsUpConnections() {
+        assertEquals(2, transport.warmUp(url("/"), 5, Timeouts.DEFAULT)) // At most 2 connections per host
+        assertEquals(2, transport.stats().idle)
+        assertEquals("Open connections are not opened again", 0, transport.warmUp(url("/"), 2, Timeouts.DEFAULT))
+
+        get("/fixed/").close()
+        val stats = transport.stats()
+        assertEquals(2L, stats.created)
+        assertEquals(0, stats.leased)
+    }
+
+    @Test( timeout = 5000L )
+    fun decompressesResponses() {
+        repeat(2) {
+            val response = get("/gzip/")
+            assertEquals("gzip", response.header("Content-Encoding"))
+
+            val json = Request.readJson(response.body).asArray()
+            assertEquals(100, json.size())
+            assertEquals("Compressed", json[99].asObject().getString("text", null))
+
+            val stats = response.transferStats
+            assertEquals(response.header("Content-Length")!!.toLong(), stats.compressedBytes)
+            assertEquals(json.toString().length.toLong(), stats.uncompressedBytes)
+            assertTrue(stats.compressionRatio > 1)
+        }
+
+        assertEquals(1L, transport.stats().created) // The connection was released after the end of the gzip data
+    }
+
+    @Test( timeout = 5000L )
+    fun readTimeout() {
+        val request = RawRequest(Method.GET, url("/slow/"), emptyMap(), null, Timeouts(readMillis = 50))
+
+        try {
+            transport.send(request)
+            fail("The server answers after the timeout")
+        } catch (e: SocketTimeoutException) {
+            assertEquals(0, transport.stats().leased)
+        }
+    }
+
+    @Test( timeout = 5000L )
+    fun doesNotResendAfterTimeout() {
+        get("/fixed/").close() // So the next request reuses a connection
+
+        val request = RawRequest(Method.POST, url("/counted/"), emptyMap(), JsonBody(JsonObject()),
+            Timeouts(readMillis = 50))
+        try {
+            transport.send(request)
+            fail("The server answers after the timeout")
+        } catch (e: SocketTimeoutException) {
+            assertEquals("The request should not be sent twice", 1, received.get())
+        }
+    }
+
+    @Test( timeout = 5000L )
+    fun chunkedResponses() {
+        repeat(3) {
+            val request = RawRequest(Method.PATCH, url("/chunked/"), emptyMap(), JsonBody(JsonObject()))
+            val response = transport.send(request)
+            assertEquals(201, response.status)
+            assertEquals("PUT", response.body.readBytes().toString(Request.CHARSET))
+        }
+
+        assertEquals(1L, transport.stats().created)
+    }
+
+    @Test( timeout = 5000L )
+    fun limitsConnectionsPerHost() {
+        val first = get("/fixed/")
+        val second = get("/fixed/")
+        assertEquals(2, transport.stats().leased)
+
+        try {
+            get("/fixed/")
+            fail("Only two connections should be leased at the same time.")
+        } catch (e: IOException) {
+            // expected
+        }
+
+        first.close()
+        second.close()
+        assertEquals(0, transport.stats().leased)
+        assertEquals(2, transport.stats().idle)
+
+        get("/fixed/").close()
+        assertEquals(2L, transport.stats().created)
+    }
+
+    @Test( timeout = 5000L )
+    fun sendsAsynchronously() {
+        val responses = (1..20).map {
+            transport.sendAsync(RawRequest(Method.GET, url("/fixed/"), emptyMap(), null))
+                .thenApply { Request.readJson(it.body) }
+        }
+
+        responses.forEach { assertEquals(JsonObject().add("data", 2), it.get()) }
+        assertTrue(transport.stats().created <= 2)
+
+        server.stop(0)
+        transport.evictIdle()
+        val failed = transport.sendAsync(RawRequest(Method.GET, url("/fixed/"), emptyMap(), null))
+        try {
+            failed.get()
+            fail("The server is stopped, the request should have failed.")
+        } catch (e: ExecutionException) {
+            assertTrue(e.cause.toString(), e.cause is IOException)
+        }
+    }
+
+    @Test( timeout = 5000L )
+    fun uploadsMultipart() {
+        val file = File("src/test/resources/wf.png")
+        val body = MultipartBody(JsonObject().add("bio", "test").add("tags", JsonArray().add(1)), "avatar", file)
+        val reports = ArrayList<UploadProgress>()
+
+        val response = transport.send(RawRequest(Method.PATCH, url("/echo/"), emptyMap(),
+            ProgressBody(body, UploadListener { reports.add(it) })))
+        val echo = response.body.readBytes()
+
+        assertEquals(body.contentLength, echo.size.toLong())
+        assertEquals(body.contentLength.toString(), response.header("X-Content-Length"))
+
+        val text = echo.toString(Charsets.ISO_8859_1)
+        assertTrue(text, text.contains("name=\"avatar\"; filename=\"wf.png\"\r\nContent-Type: image/png\r\n\r\n"))
+        assertTrue(text, text.contains("\r\n\r\n[1]\r\n"))
+        assertTrue(text.contains(file.readBytes().toString(Charsets.ISO_8859_1)))
+
+        val last = reports.last()
+        assertTrue(last.isDone)
+        assertEquals(body.contentLength, last.sent())
+        assertEquals(1.0, last.fraction(), 0.0)
+    }
+
+    @Test( timeout = 5000L )
+    fun evictsIdleConnections() {
+        val shortLived = PooledTransport(idleTimeoutMillis = 0)
+        shortLived.send(RawRequest(Method.GET, url("/fixed/"), emptyMap(), null)).close()
+        assertEquals(1, shortLived.stats().idle)
+
+        shortLived.evictIdle()
+        assertEquals(0, shortLived.stats().idle)
+        shortLived.close()
+    }
+}
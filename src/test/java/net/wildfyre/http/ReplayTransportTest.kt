@@ -0,0 +1,103 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http
+
+import org.junit.Assert.*
+import org.junit.Test
+import java.io.ByteArrayInputStream
+import java.io.File
+import java.io.IOException
+import java.net.SocketTimeoutException
+import java.net.URL
+
+class ReplayTransportTest {
+
+    private val file = File.createTempFile("exchanges", ".wfrr").apply { deleteOnExit() }
+
+    private class Server : Transport {
+        var sent = 0
+
+        override fun send(request: RawRequest): RawResponse {
+            sent++
+            Thread.sleep(20)
+            val body = "{\"path\":\"${request.url.file}\",\"count\":$sent}".toByteArray()
+            return RawResponse(
+                200,
+                mapOf("Content-Type" to listOf("application/json"), "Content-Length" to listOf("${body.size}")),
+                ByteArrayInputStream(body)
+            )
+        }
+    }
+
+    private fun request(path: String, timeouts: Timeouts = Timeouts.DEFAULT) =
+        RawRequest(Method.GET, URL("http://localhost:8000$path"), emptyMap(), null, timeouts)
+
+    private fun RawResponse.text() = body.use { String(it.readBytes()) }
+
+    private fun record() {
+        RecordingTransport(Server(), file).use {
+            assertEquals("{\"path\":\"/users/1/\",\"count\":1}", it.send(request("/users/1/")).text())
+            it.send(request("/users/1/")).text()
+            it.send(request("/areas/?limit=10")).text()
+            assertEquals(3, it.recorded)
+        }
+    }
+
+    @Test
+    fun replay() {
+        record()
+
+        val replay = ReplayTransport(file)
+        assertEquals(3, replay.size)
+
+        assertEquals("{\"path\":\"/users/1/\",\"count\":1}", replay.send(request("/users/1/")).text())
+        assertEquals("{\"path\":\"/users/1/\",\"count\":2}", replay.send(request("/users/1/")).text())
+        assertEquals("The last response is repeated",
+            "{\"path\":\"/users/1/\",\"count\":2}", replay.send(request("/users/1/")).text())
+
+        val response = replay.send(request("/areas/?limit=10"))
+        assertEquals("application/json", response.header("content-type"))
+        assertNull("Transfer headers are not recorded", response.header("Content-Length"))
+
+        replay.rewind()
+        assertEquals("{\"path\":\"/users/1/\",\"count\":1}", replay.send(request("/users/1/")).text())
+
+        try {
+            replay.send(request("/users/2/"))
+            fail("Requests that were not recorded should fail")
+        } catch (e: IOException) {
+            // Expected
+        }
+    }
+
+    @Test
+    fun simulatedLatency() {
+        record()
+
+        val replay = ReplayTransport(file, 1.0)
+        val start = System.nanoTime()
+        replay.send(request("/users/1/")).close()
+        assertTrue((System.nanoTime() - start) / 1_000_000 >= 15)
+
+        try {
+            replay.send(request("/areas/?limit=10", Timeouts(readMillis = 5)))
+            fail("The simulated latency should exceed the timeout")
+        } catch (e: SocketTimeoutException) {
+            // Expected
+        }
+    }
+}
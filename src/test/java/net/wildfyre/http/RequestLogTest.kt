@@ -0,0 +1,77 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http
+
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Test
+import java.util.*
+
+class RequestLogTest {
+
+    private val oldLevel = RequestLog.level
+    private val oldSink = RequestLog.sink
+
+    @After
+    fun after() {
+        RequestLog.level = oldLevel
+        RequestLog.sink = oldSink
+    }
+
+    @Test
+    fun levels() {
+        val events = ArrayList<LogEvent>()
+        RequestLog.sink = object : LogSink {
+            override fun accept(event: LogEvent) { events.add(event) }
+        }
+
+        var built = 0
+        RequestLog.level = LogLevel.OFF
+        RequestLog.error(1) { built++; "error" }
+        assertEquals(0, built)
+
+        RequestLog.level = LogLevel.INFO
+        RequestLog.debug(2) { built++; "debug" }
+        RequestLog.info(3) { built++; "info" }
+        RequestLog.warn(4) { built++; "warn" }
+        assertEquals(2, built)
+        assertEquals(listOf("info", "warn"), events.map { it.message })
+        assertEquals(listOf(LogLevel.INFO, LogLevel.WARN), events.map { it.level })
+        assertEquals(3, events[0].requestId)
+    }
+
+    @Test
+    fun redaction() {
+        assertEquals("<redacted>", RequestLog.redact("Authorization", "token 123"))
+        assertEquals("<redacted>", RequestLog.redact("cookie", "a=b"))
+        assertEquals("lib-java", RequestLog.redact("From", "lib-java"))
+    }
+
+    @Test( timeout = 5000L )
+    fun asyncSink() {
+        val events = Collections.synchronizedList(ArrayList<LogEvent>())
+        val sink = AsyncLogSink(object : LogSink {
+            override fun accept(event: LogEvent) { events.add(event) }
+        }, capacity = 16)
+
+        repeat(10) { sink.accept(LogEvent(0, LogLevel.INFO, it, "test", "event $it")) }
+        sink.close()
+
+        assertEquals(10, events.size + sink.dropped)
+        assertEquals((0 until events.size).toList(), events.map { it.requestId })
+    }
+}
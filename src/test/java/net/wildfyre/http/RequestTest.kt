@@ -27,6 +27,7 @@ import org.junit.Test
 import java.io.ByteArrayInputStream
 import java.io.File
 import java.util.*
+import java.util.concurrent.ExecutionException
 
 class RequestTest {
 
@@ -63,6 +64,29 @@ class RequestTest {
         assertFalse(j.getBoolean("banned", true))
     }
 
+    @Test
+    fun getOwnPageAsync() {
+        val j = Request(GET, "/users/")
+            .addToken(token)
+            .getJsonObjectAsync()
+            .get()
+
+        assertEquals("user", j.getString("name", "not found"))
+    }
+
+    @Test
+    fun refusedAsync() {
+        try {
+            Request(GET, "/users/-1/")
+                .addToken(token)
+                .getJsonAsync()
+                .get()
+            fail("The server should have refused this request.")
+        } catch (e: ExecutionException) {
+            assertTrue(e.cause.toString(), e.cause is IssueInTransferException)
+        }
+    }
+
     @Test
     fun testJSON() {
         val input = ByteArrayInputStream("{\"data\": 2}".toByteArray(Request.CHARSET))
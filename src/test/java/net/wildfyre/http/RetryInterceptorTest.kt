@@ -0,0 +1,124 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http
+
+import org.junit.Assert.*
+import org.junit.Test
+import java.io.IOException
+import java.net.URL
+
+class RetryInterceptorTest {
+
+    /**
+     * Answers with the given statuses, in order; `null` means the server cannot be reached.
+     */
+    private class FakeTransport(private vararg val statuses: Int?) : Transport {
+        @Volatile
+        var sent = 0
+
+        override fun send(request: RawRequest): RawResponse {
+            val status = statuses[sent++] ?: throw IOException("Connection refused")
+            return RawResponse(status, emptyMap(), null)
+        }
+
+        override fun close() {}
+    }
+
+    private val url = URL("http://localhost:8000/users/")
+    private val fast = RetryPolicy(maxAttempts = 3, baseDelayMillis = 1, maxDelayMillis = 1)
+
+    private var retries = 0
+
+    private fun send(
+        transport: Transport,
+        request: RawRequest,
+        policy: RetryPolicy = fast,
+        breakers: CircuitBreakers = CircuitBreakers()
+    ) = InterceptorChain.execute(
+        listOf(
+            "retry" to RetryInterceptor(policy) { attempt, _, _ -> retries = attempt },
+            "circuit-breaker" to CircuitBreakerInterceptor(breakers),
+            "transport" to TransportInterceptor(transport)
+        ),
+        request,
+        StageTimings()
+    )
+
+    @Test( timeout = 5000L )
+    fun retriesIdempotentRequests() {
+        val transport = FakeTransport(null, 503, 200)
+
+        assertEquals(200, send(transport, RawRequest(Method.GET, url, emptyMap(), null)).status)
+        assertEquals(3, transport.sent)
+        assertEquals(2, retries)
+        assertEquals(2L, fast.retries)
+    }
+
+    @Test( timeout = 5000L )
+    fun givesUp() {
+        val transport = FakeTransport(503, 503, 503, 200)
+
+        assertEquals(503, send(transport, RawRequest(Method.GET, url, emptyMap(), null)).status)
+        assertEquals(3, transport.sent)
+    }
+
+    @Test( timeout = 5000L )
+    fun doesNotRetryPost() {
+        val transport = FakeTransport(null, 200)
+
+        try {
+            send(transport, RawRequest(Method.POST, url, emptyMap(), null))
+            fail("The request should not have been retried")
+        } catch (e: IOException) {
+            assertEquals(1, transport.sent)
+        }
+    }
+
+    @Test( timeout = 5000L )
+    fun circuitBreaker() {
+        val breakers = CircuitBreakers(failureThreshold = 2, openMillis = 100)
+        val breaker = breakers.of(url.host)
+        val transport = FakeTransport(null, null, 200)
+        val request = RawRequest(Method.GET, url, emptyMap(), null)
+
+        repeat(2) {
+            try {
+                send(transport, request, RetryPolicy.NEVER, breakers)
+                fail("The server cannot be reached")
+            } catch (e: IOException) {
+                assertFalse(e is CircuitOpenException)
+            }
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state)
+
+        try {
+            send(transport, request, fast, breakers)
+            fail("The breaker is open")
+        } catch (e: CircuitOpenException) {
+            assertEquals(url.host, e.host) // and it was not retried
+        }
+        assertEquals(2, transport.sent)
+        assertEquals(1L, breaker.rejected)
+
+        Thread.sleep(150)
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state)
+
+        assertEquals(200, send(transport, request, RetryPolicy.NEVER, breakers).status)
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state)
+        assertEquals(0, breaker.consecutiveFailures)
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http
+
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Test
+import java.io.ByteArrayInputStream
+
+class RevalidationTest {
+
+    /**
+     * Answers with the given responses, in order, and remembers the requests it received.
+     */
+    internal class FakeServer(private vararg val responses: () -> RawResponse) : Transport {
+        val received = ArrayList<RawRequest>()
+
+        @Synchronized
+        override fun send(request: RawRequest): RawResponse {
+            received += request
+            return responses[received.size - 1]()
+        }
+
+        override fun close() {}
+
+        companion object {
+            fun json(body: String, vararg headers: Pair<String, String>) = {
+                RawResponse(200, headers.associate { it.first to listOf(it.second) },
+                    ByteArrayInputStream(body.toByteArray(Request.CHARSET)))
+            }
+
+            fun notModified(vararg headers: Pair<String, String>) = {
+                RawResponse(304, headers.associate { it.first to listOf(it.second) }, null)
+            }
+        }
+    }
+
+    private val previous = Request.transport
+
+    @After
+    fun after() {
+        Request.transport = previous
+    }
+
+    private fun request(validators: CacheValidators?) =
+        Request(Method.GET, "/users/{user}/", 1).revalidate(validators).getJsonIfModified()
+
+    @Test
+    fun readsValidators() {
+        Request.transport = FakeServer(
+            FakeServer.json("{\"user\": 1}", "ETag" to "\"v1\"", "Last-Modified" to "Tue, 15 Oct 2019 10:00:00 GMT")
+        )
+
+        val response = request(null)
+        assertTrue(response.isModified)
+        assertEquals(1, response.json!!.asObject().getInt("user", -1))
+        assertEquals(CacheValidators("\"v1\"", "Tue, 15 Oct 2019 10:00:00 GMT"), response.validators)
+    }
+
+    @Test
+    fun withoutValidators() {
+        val server = FakeServer(FakeServer.json("{\"user\": 1}"))
+        Request.transport = server
+
+        val response = request(null)
+        assertTrue(response.isModified)
+        assertNull("The server sent no validators", response.validators)
+
+        val headers = server.received.single().headers
+        assertFalse(headers.containsKey("If-None-Match"))
+        assertFalse(headers.containsKey("If-Modified-Since"))
+    }
+
+    @Test
+    fun sendsValidatorsBack() {
+        val server = FakeServer(FakeServer.notModified("ETag" to "\"v1\""))
+        Request.transport = server
+
+        val response = request(CacheValidators("\"v1\"", "Tue, 15 Oct 2019 10:00:00 GMT"))
+        assertFalse(response.isModified)
+        assertNull(response.json)
+
+        val headers = server.received.single().headers
+        assertEquals("\"v1\"", headers["If-None-Match"])
+        assertEquals("Tue, 15 Oct 2019 10:00:00 GMT", headers["If-Modified-Since"])
+    }
+
+    @Test
+    fun modified() {
+        Request.transport = FakeServer(FakeServer.json("{\"user\": 1}", "ETag" to "\"v2\""))
+
+        val response = request(CacheValidators("\"v1\"", null))
+        assertTrue(response.isModified)
+        assertEquals(CacheValidators("\"v2\"", null), response.validators)
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http
+
+import org.junit.Assert.*
+import org.junit.Test
+import java.io.IOException
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executor
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+class SingleFlightTest {
+
+    @Test( timeout = 5000L )
+    fun mergesConcurrentCalls() {
+        val flight = SingleFlight<String>()
+        val calls = AtomicInteger()
+        val release = CountDownLatch(1)
+        val threads = Executors.newFixedThreadPool(5)
+
+        val results = (1..5).map {
+            threads.submit<String> {
+                flight.execute("GET /users/2/") {
+                    calls.incrementAndGet()
+                    release.await()
+                    "user 2"
+                }
+            }
+        }
+
+        // Wait for every thread to either run or join the call
+        while (flight.executed + flight.coalesced < 5)
+            Thread.sleep(1)
+        release.countDown()
+
+        results.forEach { assertEquals("user 2", it.get()) }
+        assertEquals(1, calls.get())
+        assertEquals(1L, flight.executed)
+        assertEquals(4L, flight.coalesced)
+
+        // The call is over, the next one is executed again
+        assertEquals("again", flight.execute("GET /users/2/") { "again" })
+        assertEquals(2L, flight.executed)
+
+        threads.shutdown()
+        threads.awaitTermination(1, TimeUnit.SECONDS)
+    }
+
+    @Test( timeout = 5000L )
+    fun sharesFailures() {
+        val flight = SingleFlight<String>()
+        val release = CountDownLatch(1)
+
+        val leader = flight.executeAsync("key") {
+            TransportExecutor.supply { release.await(); throw IOException("refused") }
+        }
+        val follower = flight.executeAsync<String>("key") { fail("Should not be called"); throw AssertionError() }
+        release.countDown()
+
+        for (future in listOf(leader, follower)) {
+            try {
+                future.get()
+                fail()
+            } catch (e: ExecutionException) {
+                assertTrue(e.cause.toString(), e.cause is IOException)
+            }
+        }
+        assertEquals(1L, flight.coalesced)
+    }
+
+    private fun <T> Executor.supply(action: () -> T) =
+        CompletableFuture<T>().also { future ->
+            execute {
+                try {
+                    future.complete(action())
+                } catch (e: Exception) {
+                    future.completeExceptionally(e)
+                }
+            }
+        }
+}
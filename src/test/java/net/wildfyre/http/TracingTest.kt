@@ -0,0 +1,150 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http
+
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Test
+import java.io.ByteArrayInputStream
+import java.io.File
+import java.net.URL
+import java.util.concurrent.CopyOnWriteArrayList
+
+class TracingTest {
+
+    private val request = RawRequest(Method.GET, URL("http://localhost:8000/users/1/"), emptyMap(), null)
+    private val spans = CopyOnWriteArrayList<Span>()
+
+    private class Answer : Interceptor {
+        var traceparent: String? = null
+
+        override fun intercept(chain: Interceptor.Chain): RawResponse {
+            traceparent = chain.request.headers[TracingInterceptor.TRACEPARENT]
+            return RawResponse(200, emptyMap(), ByteArrayInputStream(ByteArray(10)))
+        }
+    }
+
+    private fun send(answer: Interceptor) = InterceptorChain.execute(
+        listOf("tracing" to TracingInterceptor("/users/{user}/", StageTimings()), "answer" to answer),
+        request,
+        StageTimings()
+    )
+
+    @Before
+    fun setUp() {
+        Tracing.setExporter(object : SpanExporter {
+            override fun export(span: Span) {
+                spans.add(span)
+            }
+        })
+    }
+
+    @After
+    fun tearDown() {
+        Tracing.setExporter(null)
+    }
+
+    @Test
+    fun requestsAreTraced() {
+        val answer = Answer()
+        val response = send(answer)
+        assertTrue("The span ends once the response is read", spans.isEmpty())
+
+        response.body.use { it.readBytes() }
+        assertEquals(1, spans.size)
+
+        val span = spans[0]
+        assertEquals("GET /users/{user}/", span.name)
+        assertEquals(32, span.traceId.length)
+        assertEquals(16, span.spanId.length)
+        assertNull(span.parentSpanId)
+        assertNull(span.error)
+        assertEquals(200, span.attributes()["http.status"])
+        assertEquals("00-${span.traceId}-${span.spanId}-01", answer.traceparent)
+    }
+
+    @Test
+    fun childSpans() {
+        val answer = Answer()
+
+        val parent = Tracing.inSpan("parent", TracedAction<Span, RuntimeException> {
+            send(answer).close()
+            Tracing.current()
+        })
+
+        assertEquals(2, spans.size)
+        assertSame("The parent ends last", parent, spans[1])
+        assertEquals(parent.traceId, spans[0].traceId)
+        assertEquals(parent.spanId, spans[0].parentSpanId)
+        assertNull(Tracing.current())
+    }
+
+    @Test
+    fun failuresAreRecorded() {
+        val failure = object : Interceptor {
+            override fun intercept(chain: Interceptor.Chain): RawResponse = throw java.io.IOException("refused")
+        }
+
+        try {
+            send(failure)
+            fail("The failure should be thrown")
+        } catch (e: java.io.IOException) {
+            assertEquals(1, spans.size)
+            assertEquals(e.toString(), spans[0].error)
+        }
+    }
+
+    @Test
+    fun exporterFailuresAreLoggedOnce() {
+        val oldLevel = RequestLog.level
+        val oldSink = RequestLog.sink
+        val events = CopyOnWriteArrayList<LogEvent>()
+        RequestLog.level = LogLevel.WARN
+        RequestLog.sink = object : LogSink {
+            override fun accept(event: LogEvent) { events.add(event) }
+        }
+
+        try {
+            Tracing.setExporter(object : SpanExporter {
+                override fun export(span: Span) = throw IllegalStateException("broken")
+            })
+            repeat(3) { send(Answer()).close() }
+
+            assertEquals(1, events.size)
+            assertTrue(events[0].message, events[0].message.contains("broken"))
+        } finally {
+            RequestLog.level = oldLevel
+            RequestLog.sink = oldSink
+        }
+    }
+
+    @Test
+    fun fileExporter() {
+        val file = File.createTempFile("spans", ".jsonl")
+        file.deleteOnExit()
+
+        FileSpanExporter(file).use {
+            Tracing.setExporter(it)
+            repeat(3) { send(Answer()).close() }
+        }
+
+        val lines = file.readLines()
+        assertEquals(3, lines.size)
+        assertTrue(lines.all { it.contains("\"name\":\"GET /users/{user}/\"") })
+    }
+}
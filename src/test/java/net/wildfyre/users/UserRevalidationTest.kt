@@ -0,0 +1,72 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.users
+
+import net.wildfyre.http.Request
+import net.wildfyre.http.RevalidationTest.FakeServer
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Test
+import java.util.function.IntFunction
+
+class UserRevalidationTest {
+
+    private val previous = Request.transport
+
+    @After
+    fun after() {
+        Request.transport = previous
+        Users.users.remove(ID)
+    }
+
+    private fun user(name: String) = "{\"user\": $ID, \"name\": \"$name\", \"avatar\": null, \"bio\": \"\"}"
+
+    @Test
+    fun notModified() {
+        val server = FakeServer(
+            FakeServer.json(user("first"), "ETag" to "\"v1\""),
+            FakeServer.notModified("ETag" to "\"v1\""),
+            FakeServer.json(user("second"), "ETag" to "\"v2\""),
+            FakeServer.notModified("ETag" to "\"v2\"")
+        )
+        Request.transport = server
+
+        val user = Users.users.computeIfAbsent(ID, IntFunction { User.create(it) })
+        user.update()
+        assertEquals("first", user.name())
+        assertNull("The first request is not conditional", server.received[0].headers["If-None-Match"])
+
+        val expiresAt = user.expiresAt()
+        Thread.sleep(5)
+        user.update()
+        assertEquals("\"v1\"", server.received[1].headers["If-None-Match"])
+        assertEquals("The cached data is kept", "first", user.name())
+        assertTrue("The user is marked as used", user.expiresAt() > expiresAt)
+
+        user.update()
+        assertEquals("\"v1\"", server.received[2].headers["If-None-Match"])
+        assertEquals("second", user.name())
+
+        user.update()
+        assertEquals("The new validators are used", "\"v2\"", server.received[3].headers["If-None-Match"])
+        assertEquals("second", user.name())
+    }
+
+    companion object {
+        private const val ID = 1_000_001
+    }
+}
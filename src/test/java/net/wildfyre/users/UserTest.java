@@ -24,6 +24,9 @@ import net.wildfyre.utils.InvalidCredentialsException;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.Arrays;
+import java.util.List;
+
 import static junit.framework.TestCase.assertEquals;
 import static org.junit.Assert.*;
 
@@ -58,6 +61,20 @@ public class UserTest {
         assertEquals("", me.bio());
     }
 
+    @Test(timeout = 2000L)
+    public void getAll() {
+        Internal.setNoSuchEntityHandler(e -> {
+            throw new RuntimeException("An exception was thrown.", e);
+        });
+
+        int me = Users.myID().orElseThrow(RuntimeException::new);
+        List<User> users = Users.getAll(Arrays.asList(20051561, me, 20051562, me), 2);
+
+        assertEquals("Users that do not exist are skipped", 2, users.size());
+        assertEquals(me, users.get(0).getID());
+        assertSame(users.get(0), users.get(1));
+    }
+
     @Test(timeout = 1000L)
     public void testNonExistingUser() {
         Internal.setNoSuchEntityHandler(e -> {
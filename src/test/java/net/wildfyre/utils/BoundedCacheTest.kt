@@ -0,0 +1,131 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.utils
+
+import org.junit.Assert.*
+import org.junit.Test
+
+class BoundedCacheTest {
+
+    @Test
+    fun staysBounded() {
+        val cache = BoundedCache<Int, String>(100)
+        for (i in 0 until 1000)
+            cache[i] = "$i"
+
+        assertEquals(100, cache.size)
+        assertEquals(100L, cache.weight())
+        assertEquals(900L, cache.evictionCount())
+    }
+
+    @Test
+    fun resistsScans() {
+        val cache = BoundedCache<Int, String>(100)
+
+        // A working set of 50 popular entries
+        repeat(5) { for (i in 0 until 50) { cache[i] ?: cache.put(i, "$i") } }
+
+        // A scan of many entries used once
+        for (i in 1000 until 11_000)
+            cache[i] = "$i"
+
+        val kept = (0 until 50).count { cache.containsKey(it) }
+        assertTrue("Popular entries should survive a scan, kept $kept", kept >= 45)
+    }
+
+    @Test
+    fun weights() {
+        var maximum = 100L
+        val cache = BoundedCache<Int, String>({ maximum }, { it.length })
+
+        cache[1] = "x".repeat(60)
+        cache[2] = "y".repeat(30)
+        assertEquals(90L, cache.weight())
+
+        cache[3] = "z".repeat(500) // Heavier than the whole cache
+        assertFalse(cache.containsKey(3))
+        assertTrue(cache.weight() <= maximum)
+
+        maximum = 50 // The maximum can change
+        cache[4] = "w"
+        assertTrue(cache.weight() <= maximum)
+    }
+
+    @Test
+    fun pinnedEntriesAreKept() {
+        val loading = HashSet<String>()
+        val cache = BoundedCache<Int, String>({ 100 }, { 1 }, null, { it in loading })
+
+        // Popular entries, that a new entry would not be admitted against
+        repeat(5) { for (i in 0 until 100) { cache[i] ?: cache.put(i, "$i") } }
+
+        loading += "new"
+        cache[1000] = "new"
+        cache[1001] = "other"
+        for (i in 2000 until 2010)
+            cache[i] = "$i"
+
+        assertTrue("A pinned entry should not be evicted", cache.containsKey(1000))
+        assertFalse("An entry used once should not be admitted", cache.containsKey(1001))
+        assertTrue(cache.weight() <= 100)
+    }
+
+    @Test
+    fun mapInterface() {
+        val cache = BoundedCache<Int, String>(Long.MAX_VALUE)
+        for (i in 0 until 10)
+            cache[i] = "$i"
+
+        cache.values.removeIf { it.toInt() % 2 == 0 }
+        assertEquals(setOf(1, 3, 5, 7, 9), cache.keys)
+
+        assertEquals("1", cache.remove(1))
+        assertNull(cache[1])
+        assertEquals(1L, cache.missCount())
+        assertEquals(0L, cache.hitCount())
+
+        cache.clear()
+        assertTrue(cache.isEmpty())
+        assertEquals(0L, cache.weight())
+    }
+    @Test
+    fun expires() {
+        val expiry = HashMap<String, Long>()
+        val cache = BoundedCache<Int, String>({ Long.MAX_VALUE }, { 1 }, { expiry.getValue(it) })
+        val start = System.currentTimeMillis()
+
+        expiry["short"] = start + 1_000
+        expiry["long"] = start + 60_000
+        expiry["extended"] = start + 1_000
+        cache[1] = "short"
+        cache[2] = "long"
+        cache[3] = "extended"
+
+        expiry["extended"] = start + 120_000 // Used in the meantime
+
+        assertEquals(1, cache.expire(start + 2_100))
+        assertEquals(setOf(2, 3), cache.keys)
+
+        assertEquals(1, cache.expire(start + 61_100))
+        assertEquals(setOf(3), cache.keys)
+
+        cache.remove(3)
+        assertEquals(0, cache.expire(start + 200_000))
+        assertEquals(2L, cache.expirationCount())
+    }
+
+}
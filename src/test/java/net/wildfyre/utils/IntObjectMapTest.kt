@@ -0,0 +1,74 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.utils
+
+import org.junit.Assert.*
+import org.junit.Test
+import java.util.*
+
+class IntObjectMapTest {
+
+    @Test
+    fun isLazy() {
+        val map = IntObjectMap<String>()
+        assertTrue(map.isEmpty())
+        assertNull(map[1])
+        assertNull(map.remove(1))
+        assertEquals(emptySet<Int>(), map.keys)
+    }
+
+    @Test
+    fun behavesLikeHashMap() {
+        val random = Random(42)
+        val map = IntObjectMap<String>()
+        val expected = HashMap<Int, String>()
+
+        repeat(100_000) {
+            val key = random.nextInt(2000) - 1000
+            when (random.nextInt(3)) {
+                0, 1 -> assertEquals(expected.put(key, "$it"), map.put(key, "$it"))
+                2 -> assertEquals(expected.remove(key), map.remove(key))
+            }
+        }
+
+        assertEquals(expected.size, map.size)
+        assertEquals(expected, map)
+        for ((key, value) in expected)
+            assertEquals(value, map[key])
+    }
+
+    @Test
+    fun removesWhileIterating() {
+        val map = IntObjectMap<String>()
+        for (i in 0 until 1000)
+            map[i] = "$i"
+
+        map.entries.removeIf { it.key % 3 == 0 }
+        assertEquals(666, map.size)
+        assertFalse(map.containsKey(3))
+        assertEquals("4", map[4])
+
+        map.clear()
+        assertTrue(map.isEmpty())
+    }
+
+    @Test(expected = NullPointerException::class)
+    fun rejectsNull() {
+        IntObjectMap<String?>().put(1, null)
+    }
+
+}
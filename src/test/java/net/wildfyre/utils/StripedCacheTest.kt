@@ -0,0 +1,124 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.utils
+
+import org.junit.Assert.*
+import org.junit.Test
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.function.IntFunction
+import java.util.function.LongFunction
+
+class StripedCacheTest {
+
+    @Test
+    fun staysBounded() {
+        val cache = StripedCache<Int, String>(8, { 1000 }, { 1 }, null)
+        for (i in 0 until 10_000)
+            cache[i] = "$i"
+
+        assertEquals(8, cache.concurrency())
+        assertTrue("Too many entries: ${cache.size}", cache.size <= 1000)
+        assertTrue("Too few entries: ${cache.size}", cache.size >= 900)
+        assertEquals(10_000L - cache.size, cache.evictionCount())
+    }
+
+    @Test
+    fun iteratesEverySegment() {
+        val cache = StripedCache<Int, String>(Long.MAX_VALUE)
+        for (i in 0 until 100)
+            cache[i] = "$i"
+
+        assertEquals((0 until 100).toSet(), cache.keys)
+
+        cache.entries.removeIf { it.key % 2 == 0 }
+        assertEquals(50, cache.size)
+        assertFalse(cache.containsKey(42))
+        assertTrue(cache.containsKey(43))
+    }
+
+    @Test
+    fun primitiveKeys() {
+        val ints = StripedCache.withIntKeys<String>(4, { Long.MAX_VALUE }, { 1 }, null, null)
+        val longs = StripedCache.withLongKeys<String>(4, { Long.MAX_VALUE }, { 1 }, null, null)
+        for (i in 0 until 100) {
+            ints.computeIfAbsent(i, IntFunction { "$it" })
+            longs.computeIfAbsent(i * 1_000_000_007L, LongFunction { "$it" })
+        }
+
+        // The primitive methods find the same segments as the Map methods
+        for (i in 0 until 100) {
+            assertEquals("$i", ints.get(i))
+            assertEquals("$i", ints[Integer.valueOf(i)])
+            assertEquals("${i * 1_000_000_007L}", longs.get(i * 1_000_000_007L))
+        }
+        assertEquals("Existing values are not created again", "42", ints.computeIfAbsent(42, IntFunction { "new" }))
+
+        assertEquals("7", ints.remove(7))
+        assertNull(ints.get(7))
+        assertFalse(ints.containsKey(7))
+        assertEquals("0", longs.remove(0L))
+        assertEquals(99, longs.size)
+    }
+
+    @Test
+    fun createsOnce() {
+        val cache = StripedCache<Int, Any>(Long.MAX_VALUE)
+        val created = AtomicInteger()
+        val threads = 8
+        val start = CountDownLatch(1)
+        val executor = Executors.newFixedThreadPool(threads)
+
+        val results = (0 until threads).map {
+            executor.submit<List<Any>> {
+                start.await()
+                (0 until 1000).map { key -> cache.computeIfAbsent(key) { created.incrementAndGet(); Any() } }
+            }
+        }
+        start.countDown()
+        val values = results.map { it.get(10, TimeUnit.SECONDS) }
+        executor.shutdown()
+
+        assertEquals(1000, created.get())
+        for (i in 0 until 1000)
+            assertTrue(values.all { it[i] === values[0][i] })
+    }
+
+    @Test
+    fun concurrentWritesAndRemovals() {
+        val cache = StripedCache<Int, String>(500)
+        val executor = Executors.newFixedThreadPool(8)
+
+        val tasks = (0 until 8).map { thread ->
+            executor.submit {
+                for (i in 0 until 20_000) {
+                    val key = (i * 31 + thread) % 2000
+                    if (i % 3 == 0) cache.remove(key) else cache.computeIfAbsent(key) { "$it" }
+                }
+            }
+        }
+        tasks.forEach { it.get(30, TimeUnit.SECONDS) }
+        executor.shutdown()
+
+        assertTrue(cache.size <= 500)
+        assertEquals(cache.size, cache.keys.size)
+        cache.forEach { (k, v) -> assertEquals("$k", v) }
+    }
+
+}
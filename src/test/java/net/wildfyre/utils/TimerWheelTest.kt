@@ -0,0 +1,80 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.utils
+
+import org.junit.Assert.*
+import org.junit.Test
+
+class TimerWheelTest {
+
+    private fun TimerWheel<Int>.advanceTo(now: Long): List<Int> {
+        val expired = ArrayList<Int>()
+        advance(now) { expired.add(it.item()) }
+        return expired
+    }
+
+    @Test
+    fun expiresInOrder() {
+        val wheel = TimerWheel<Int>(0)
+        val times = longArrayOf(500, 3_000, 90_000, 2 * 3_600_000, 3 * 86_400_000L, 30 * 86_400_000L)
+        times.forEachIndexed { i, time -> wheel.schedule(i, time) }
+        assertEquals(times.size, wheel.size())
+
+        times.forEachIndexed { i, time ->
+            assertEquals("Nothing should expire before $time", emptyList<Int>(), wheel.advanceTo(time - 1))
+            assertEquals(listOf(i), wheel.advanceTo(time + 1_100))
+        }
+        assertEquals(0, wheel.size())
+    }
+
+    @Test
+    fun visitsOnlyWhatExpires() {
+        val wheel = TimerWheel<Int>(0)
+        for (i in 0 until 10_000)
+            wheel.schedule(i, 3_600_000L + i)
+
+        // Advancing a second at a time does not touch the items that are far away
+        var visited = 0
+        for (now in 1_000L..60_000L step 1_000)
+            wheel.advance(now) { visited++ }
+        assertEquals(0, visited)
+
+        assertEquals(10_000, wheel.advanceTo(3_600_000L + 20_000).size)
+    }
+
+    @Test
+    fun rescheduleAndCancel() {
+        val wheel = TimerWheel<Int>(0)
+        val a = wheel.schedule(1, 1_000)
+        val b = wheel.schedule(2, 1_000)
+
+        wheel.reschedule(a, 10_000)
+        wheel.cancel(b)
+        assertEquals(1, wheel.size())
+
+        assertEquals(emptyList<Int>(), wheel.advanceTo(5_000))
+        assertEquals(listOf(1), wheel.advanceTo(11_000))
+    }
+
+    @Test
+    fun lateItemsExpireAtNextAdvance() {
+        val wheel = TimerWheel<Int>(100_000)
+        wheel.schedule(1, 50_000) // Already late
+        assertEquals(listOf(1), wheel.advanceTo(101_100))
+    }
+
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2019 Wildfyre.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.wildfyre.http;
+
+import com.sun.net.httpserver.HttpServer;
+import org.jetbrains.annotations.NotNull;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Collections;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.*;
+
+public class HttpClientTransportTest {
+
+    private HttpServer server;
+    private HttpClientTransport transport;
+
+    @Before
+    public void before() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/echo/", exchange -> {
+            byte[] body = exchange.getRequestBody().readAllBytes();
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(body);
+            }
+        });
+        server.start();
+        transport = new HttpClientTransport();
+    }
+
+    @After
+    public void after() {
+        transport.close();
+        server.stop(0);
+    }
+
+    private RawRequest post(Body body) throws IOException {
+        URL url = new URL("http", "localhost", server.getAddress().getPort(), "/echo/");
+        return new RawRequest(Method.POST, url, Collections.emptyMap(), body);
+    }
+
+    /**
+     * A body of {@code size} bytes, that fails after {@code written} bytes.
+     */
+    private static Body failingBody(long size, int written) {
+        return new Body() {
+            @NotNull
+            @Override
+            public String getContentType() {
+                return "application/octet-stream";
+            }
+
+            @Override
+            public long getContentLength() {
+                return size;
+            }
+
+            @Override
+            public void writeTo(@NotNull OutputStream output) throws IOException {
+                output.write(new byte[written]);
+                throw new IOException("The file was shortened while it was being uploaded.");
+            }
+        };
+    }
+
+    @Test(timeout = 10_000L)
+    public void largeBody() throws IOException {
+        byte[] bytes = new byte[200_000];
+        bytes[bytes.length - 1] = 42;
+
+        Body body = new Body() {
+            @NotNull
+            @Override
+            public String getContentType() {
+                return "application/octet-stream";
+            }
+
+            @Override
+            public long getContentLength() {
+                return -1;
+            }
+
+            @Override
+            public void writeTo(@NotNull OutputStream output) throws IOException {
+                output.write(bytes);
+            }
+        };
+
+        RawResponse response = transport.send(post(body));
+        assertEquals(200, response.getStatus());
+        try (InputStream input = response.getBody()) {
+            assertArrayEquals(bytes, input.readAllBytes());
+        }
+    }
+
+    @Test(timeout = 10_000L)
+    public void failingBodyOfUnknownLength() throws IOException {
+        try {
+            transport.send(post(failingBody(-1, 100_000)));
+            fail("The request should fail, instead of sending the first part of the body");
+        } catch (IOException e) {
+            assertEquals("The file was shortened while it was being uploaded.", e.getMessage());
+        }
+    }
+
+    @Test(timeout = 10_000L)
+    public void failingBodyOfKnownLength() throws IOException {
+        try {
+            transport.send(post(failingBody(200_000, 100_000)));
+            fail("The request should fail");
+        } catch (IOException e) {
+            assertEquals("The file was shortened while it was being uploaded.", e.getMessage());
+        }
+    }
+
+    @Test(timeout = 10_000L)
+    public void failingBodyAsync() throws IOException, InterruptedException {
+        try {
+            transport.sendAsync(post(failingBody(-1, 100_000))).get();
+            fail("The request should fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+            assertEquals("The file was shortened while it was being uploaded.", e.getCause().getMessage());
+        }
+    }
+}